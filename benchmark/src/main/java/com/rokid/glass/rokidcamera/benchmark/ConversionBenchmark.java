@@ -0,0 +1,140 @@
+package com.rokid.glass.rokidcamera.benchmark;
+
+import com.rokid.glass.rokidcamera.utils.RokidCameraFormatConversionUtils;
+import com.rokid.glass.rokidcamera.utils.RokidCameraParallelConverter;
+import com.rokid.glass.rokidcamera.utils.RokidCameraRotationUtils;
+import com.rokid.glass.rokidcamera.utils.RokidCameraScaleUtils;
+import com.rokid.glass.rokidcamera.utils.RokidCameraSize;
+import com.rokid.glass.rokidcamera.utils.RokidCameraTensorConverter;
+import com.rokid.glass.rokidcamera.utils.RokidCameraYuvPlanes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame conversion per operation, for every {@link RokidCameraSize} and every
+ * {@link SyntheticYuvFrame.Layout}.
+ * <p>
+ * Output buffers are allocated once in {@link #setUp()}, so the bytes allocated per operation
+ * reported by {@code -prof gc} are what the conversion itself allocates and should stay at 0.
+ * The exception is {@link #nv21Parallel()} on frames split into bands, which allocates a latch,
+ * the executor queue nodes and the band buffer duplicates for every frame.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class ConversionBenchmark {
+
+    private static final int TENSOR_SIZE = 224;
+
+    @Param
+    public RokidCameraSize size;
+
+    @Param
+    public SyntheticYuvFrame.Layout layout;
+
+    private RokidCameraYuvPlanes mPlanes;
+    private byte[] mYuv;
+    private ByteBuffer mDirectYuv;
+    private int[] mArgb;
+    private byte[] mScaled;
+    private RokidCameraParallelConverter mParallelConverter;
+    private RokidCameraTensorConverter mTensorConverter;
+    private FloatBuffer mTensor;
+
+    @Setup
+    public void setUp() {
+        int width = size.getSize().getWidth();
+        int height = size.getSize().getHeight();
+        mPlanes = new SyntheticYuvFrame(width, height, layout).getPlanes();
+        mYuv = new byte[RokidCameraFormatConversionUtils.getNV21Size(width, height)];
+        mDirectYuv = ByteBuffer.allocateDirect(mYuv.length);
+        mArgb = new int[width * height];
+        mScaled = new byte[RokidCameraScaleUtils.getOutputSize(width / 2, height / 2)];
+        mParallelConverter = new RokidCameraParallelConverter(Runtime.getRuntime().availableProcessors(), 0);
+        mTensorConverter = new RokidCameraTensorConverter(TENSOR_SIZE, TENSOR_SIZE)
+                .setNormalization(new float[]{0.485f, 0.456f, 0.406f}, new float[]{0.229f, 0.224f, 0.225f});
+        mTensor = mTensorConverter.createOutputBuffer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mParallelConverter.shutdown();
+    }
+
+    @Benchmark
+    public byte[] nv21() {
+        RokidCameraFormatConversionUtils.YUV_420_888toNV21(mPlanes, mYuv, 0);
+        return mYuv;
+    }
+
+    @Benchmark
+    public ByteBuffer nv21DirectBuffer() {
+        mDirectYuv.clear();
+        RokidCameraFormatConversionUtils.YUV_420_888toNV21(mPlanes, mDirectYuv);
+        return mDirectYuv;
+    }
+
+    @Benchmark
+    public byte[] nv21Parallel() {
+        mParallelConverter.YUV_420_888toNV21(mPlanes, mYuv, 0);
+        return mYuv;
+    }
+
+    @Benchmark
+    public byte[] i420() {
+        RokidCameraFormatConversionUtils.YUV_420_888toI420(mPlanes, mYuv, 0);
+        return mYuv;
+    }
+
+    @Benchmark
+    public byte[] nv12() {
+        RokidCameraFormatConversionUtils.YUV_420_888toNV12(mPlanes, mYuv, 0);
+        return mYuv;
+    }
+
+    @Benchmark
+    public byte[] luma() {
+        RokidCameraFormatConversionUtils.YUV_420_888toY(mPlanes, mYuv, 0);
+        return mYuv;
+    }
+
+    @Benchmark
+    public int[] argb() {
+        RokidCameraFormatConversionUtils.YUV_420_888toARGB(mPlanes, mArgb, 0);
+        return mArgb;
+    }
+
+    @Benchmark
+    public byte[] halfSizeBoxNv21() {
+        int width = mPlanes.getWidth();
+        int height = mPlanes.getHeight();
+        RokidCameraScaleUtils.YUV_420_888toScaled(mPlanes, width / 2, height / 2, RokidCameraScaleUtils.SCALE_MODE_BOX,
+                RokidCameraScaleUtils.OUTPUT_FORMAT_NV21, mScaled, 0);
+        return mScaled;
+    }
+
+    @Benchmark
+    public byte[] rotated90Nv21() {
+        RokidCameraRotationUtils.YUV_420_888toNV21(mPlanes, RokidCameraRotationUtils.ROTATION_90, false, mYuv, 0);
+        return mYuv;
+    }
+
+    @Benchmark
+    public FloatBuffer tensor() {
+        mTensorConverter.convert(mPlanes, mTensor);
+        return mTensor;
+    }
+}
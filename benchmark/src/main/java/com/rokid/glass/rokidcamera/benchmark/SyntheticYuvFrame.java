@@ -0,0 +1,110 @@
+package com.rokid.glass.rokidcamera.benchmark;
+
+import com.rokid.glass.rokidcamera.utils.RokidCameraYuvPlanes;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Synthetic YUV_420_888 frame standing in for {@link android.media.Image} in benchmarks.
+ * <p>
+ * The planes are direct buffers laid out the way camera HALs deliver them, with the row padding
+ * and pixelStride of {@link Layout}. Sample values are random so that no conversion path gets a
+ * free ride from uniform data.
+ */
+public class SyntheticYuvFrame {
+
+    /**
+     * Plane layouts seen on devices.
+     */
+    public enum Layout {
+        /** Separate U and V planes, pixelStride 1, no row padding (I420-like). */
+        PLANAR(false, false, true, 1),
+        /** Separate U and V planes, pixelStride 1, rows padded to 64 bytes. */
+        PLANAR_PADDED(false, false, true, 64),
+        /** V and U views of the same VUVU... memory, pixelStride 2, no row padding (most HALs). */
+        SEMI_PLANAR_VU(true, true, true, 1),
+        /** V and U views of the same VUVU... memory, pixelStride 2, rows padded to 256 bytes. */
+        SEMI_PLANAR_VU_PADDED(true, true, true, 256),
+        /** U and V views of the same UVUV... memory, pixelStride 2, no row padding. */
+        SEMI_PLANAR_UV(true, false, true, 1),
+        /** pixelStride 2 with U and V in unrelated buffers, the generic fallback path. */
+        SEMI_PLANAR_SEPARATE(true, true, false, 1);
+
+        final boolean mSemiPlanar;
+        final boolean mVFirst;
+        final boolean mShared;
+        final int mRowAlignment;
+
+        Layout(boolean semiPlanar, boolean vFirst, boolean shared, int rowAlignment) {
+            mSemiPlanar = semiPlanar;
+            mVFirst = vFirst;
+            mShared = shared;
+            mRowAlignment = rowAlignment;
+        }
+    }
+
+    private final RokidCameraYuvPlanes mPlanes = new RokidCameraYuvPlanes();
+
+    /**
+     * @param width  : frame width, even
+     * @param height : frame height, even
+     * @param layout : plane layout
+     */
+    public SyntheticYuvFrame(int width, int height, Layout layout) {
+        Random random = new Random(width * 31L + height);
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+
+        int yRowStride = align(width, layout.mRowAlignment);
+        mPlanes.setPlane(RokidCameraYuvPlanes.PLANE_Y, fill(yRowStride * (height - 1) + width, random), yRowStride, 1);
+
+        if (!layout.mSemiPlanar) {
+            int rowStride = align(chromaWidth, layout.mRowAlignment);
+            int length = rowStride * (chromaHeight - 1) + chromaWidth;
+            mPlanes.setPlane(RokidCameraYuvPlanes.PLANE_U, fill(length, random), rowStride, 1);
+            mPlanes.setPlane(RokidCameraYuvPlanes.PLANE_V, fill(length, random), rowStride, 1);
+        } else {
+            int rowStride = align(chromaWidth * 2, layout.mRowAlignment);
+            // the last row ends on the last sample, like on devices
+            int length = rowStride * (chromaHeight - 1) + chromaWidth * 2 - 1;
+            ByteBuffer uBuffer;
+            ByteBuffer vBuffer;
+            if (layout.mShared) {
+                ByteBuffer shared = fill(length + 1, random);
+                ByteBuffer first = shared.duplicate();
+                first.limit(length);
+                ByteBuffer second = shared.duplicate();
+                second.position(1);
+                vBuffer = layout.mVFirst ? first.slice() : second.slice();
+                uBuffer = layout.mVFirst ? second.slice() : first.slice();
+            } else {
+                uBuffer = fill(length, random);
+                vBuffer = fill(length, random);
+            }
+            mPlanes.setPlane(RokidCameraYuvPlanes.PLANE_U, uBuffer, rowStride, 2);
+            mPlanes.setPlane(RokidCameraYuvPlanes.PLANE_V, vBuffer, rowStride, 2);
+        }
+        mPlanes.setCrop(0, 0, width, height);
+    }
+
+    /**
+     * Planes of the full frame. The same object is returned on every call.
+     */
+    public RokidCameraYuvPlanes getPlanes() {
+        return mPlanes;
+    }
+
+    private static int align(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    private static ByteBuffer fill(int length, Random random) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(data);
+        buffer.clear();
+        return buffer;
+    }
+}
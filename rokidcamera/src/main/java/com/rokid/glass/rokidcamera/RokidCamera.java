@@ -5,6 +5,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
@@ -14,6 +15,7 @@ import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
@@ -25,29 +27,48 @@ import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
+import android.util.Range;
 import android.util.SparseIntArray;
 import android.view.Surface;
 import android.view.TextureView;
 import android.widget.Toast;
 
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraBurstListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraCaptureListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraIOListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraMetricsListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnImageAvailableListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnLumaAvailableListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnUprightFrameAvailableListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraStateListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraVideoRecordingListener;
 import com.rokid.glass.rokidcamera.utils.CameraDeviceUtils;
+import com.rokid.glass.rokidcamera.utils.RokidCameraBufferPool;
+import com.rokid.glass.rokidcamera.utils.RokidCameraFormatConversionUtils;
 import com.rokid.glass.rokidcamera.utils.RokidCameraParameters;
+import com.rokid.glass.rokidcamera.utils.RokidCameraRotationUtils;
 import com.rokid.glass.rokidcamera.utils.RokidCameraSize;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.hardware.camera2.CaptureRequest.CONTROL_AE_MODE;
 import static android.hardware.camera2.CaptureRequest.CONTROL_AF_MODE;
@@ -70,10 +91,57 @@ public class RokidCamera {
     private RokidCameraIOListener mRokidCameraIOListener;
     private RokidCameraVideoRecordingListener mRokidCameraRecordingListener;
     private RokidCameraOnImageAvailableListener mRokidCameraOnImageAvailableListener;
+    private RokidCameraOnLumaAvailableListener mRokidCameraOnLumaAvailableListener;
+    // luma view handed to mRokidCameraOnLumaAvailableListener, reused for every frame
+    private final RokidCameraLumaFrame mLumaFrame = new RokidCameraLumaFrame(RokidCameraBufferPool.getDefault());
+    private RokidCameraOnUprightFrameAvailableListener mRokidCameraOnUprightFrameAvailableListener;
+    private boolean mUprightFrameMirrored;
+    // which frames the Image, luma and upright listeners receive in continuous mode
+    private RokidCameraFrameRateLimiter mImageListenerRateLimiter;
+    // lowest supported AE fps range reaching the target fps of the only consumer, null to keep the default
+    private boolean mSensorFrameRateLimited;
+    private Range<Integer> mAETargetFpsRange;
+    private RokidCameraOnImageAvailableListener mRokidCameraOnStreamImageAvailableListener;
+    // fan-out to RokidCameraFrameConsumers, each with its own queue and thread
+    private final RokidCameraFrameDispatcher mFrameDispatcher = new RokidCameraFrameDispatcher();
+    // per-stage frame latency, recorded without allocation
+    private final RokidCameraLatencyMetrics mLatencyMetrics = new RokidCameraLatencyMetrics();
+    // throughput counters, optionally reported every mMetricsPeriodMillis
+    private final RokidCameraMetrics mMetrics = new RokidCameraMetrics();
+    private RokidCameraMetricsListener mRokidCameraMetricsListener;
+    private long mMetricsPeriodMillis;
+    // timer on the camera control thread, hands each report to the I/O threads
+    private final Runnable mMetricsReporter = new Runnable() {
+        @Override
+        public void run() {
+            if (mIOExecutor != null && !mIOExecutor.tryExecute(mMetricsReport)) {
+                Log.w("RokidCamera", "I/O threads busy, skipping metrics report");
+            }
+            if (mCameraHandler != null) {
+                mCameraHandler.postDelayed(this, mMetricsPeriodMillis);
+            }
+        }
+    };
+    // runs the listener off the camera control thread, so a slow listener cannot delay captures
+    private final Runnable mMetricsReport = new Runnable() {
+        @Override
+        public void run() {
+            mRokidCameraMetricsListener.onRokidCameraMetrics(getMetricsSnapshot());
+        }
+    };
+    // frames whose Image is still open, at most mMaxImages
+    private RokidCameraFrameTracker mFrameTracker;
+    // capture results of the latest frames, matched to Images by sensor timestamp
+    private final RokidCameraCaptureMetadataTable mCaptureMetadataTable =
+            new RokidCameraCaptureMetadataTable(CAPTURE_METADATA_TABLE_CAPACITY);
     // flags
     private boolean mPreviewEnabled;
     private int mImageFormat;
     private int mMaxImages;
+    // most shots of one takeBurst(), the still ImageReader holds at least this many Images
+    private int mMaxBurstSize;
+    // most recent full resolution frames for zero shutter lag, null when disabled
+    private RokidCameraZslRing mZslRing;
     private int mImageReaderCallbackMode;
 
 
@@ -81,6 +149,7 @@ public class RokidCamera {
     private RokidCameraSize mSizePreview;
     private RokidCameraSize mSizeVideoRecorder;
     private RokidCameraSize mSizeImageReader;
+    private RokidCameraSize mSizeStream;
 
     // camera parameters
     private RokidCameraParameters mRokidCameraParamAEMode;
@@ -97,6 +166,16 @@ public class RokidCamera {
     /** CONTINUOUS photo with Image callback to Activity. So user can process the Image. */
     public static int STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK = 2;
 
+    /** Camera control thread, see {@link #getQueueTimeStats(int)}. */
+    public static final int EXECUTOR_CAMERA_CONTROL = 0;
+    /**
+     * Frame dispatch thread, see {@link #getQueueTimeStats(int)}. Frames delivered right in the
+     * ImageReader callback, continuous and stream frames, count the time from the callback to delivery.
+     */
+    public static final int EXECUTOR_FRAME_DISPATCH = 1;
+    /** File I/O threads, see {@link #getQueueTimeStats(int)}. */
+    public static final int EXECUTOR_IO = 2;
+
     // preview texture
     private TextureView   mTextureView;
     private TextureView.SurfaceTextureListener mSurfaceTextureListener = new TextureView.SurfaceTextureListener() {
@@ -153,45 +232,63 @@ public class RokidCamera {
         }
     };
 
+    // records the capture result of every repeating request frame, for RokidCameraFrame#getCaptureMetadata()
+    private final CameraCaptureSession.CaptureCallback mRepeatingCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            recordCaptureMetadata(result);
+            // 3A converges over the repeating frames after a trigger
+            processCaptureSequence(result);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+            mMetrics.mCaptureFailures.increment();
+        }
+    };
+
     // preview callback
     private CameraCaptureSession mPreviewCaptureSession;
+    // callback of the 3A trigger requests
     private CameraCaptureSession.CaptureCallback mPreviewCaptureCallback = new CameraCaptureSession.CaptureCallback() {
 
-        private void process(CaptureResult captureResult) {
-            switch (mCaptureState) {
-                case STATE_PREVIEW:
-                    // do nothing
-                    break;
-                case STATE_WAIT_LOCK:
-                    mCaptureState = STATE_PREVIEW;
-                    Integer afState = captureResult.get(CaptureResult.CONTROL_AF_STATE);
-                    if (afState != null && (afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
-                            afState == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED)) {
-                        if (mActivity != null) {
-                            Toast.makeText(mActivity, "AF Locked!", Toast.LENGTH_SHORT).show();
-                        }
-                        sendStillCaptureRequest();
-                    }
-                    break;
-            }
-        }
-
         @Override
         public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
             super.onCaptureCompleted(session, request, result);
 
-            process(result);
+            processCaptureSequence(result);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+            mMetrics.mCaptureFailures.increment();
         }
     };
 
     // camera parameter
     private String mCameraId;
     private int mTotalRotation;
-
-    // auto-focus lock
-    private static final int STATE_PREVIEW = 0;
-    private static final int STATE_WAIT_LOCK = 1;
-    private int mCaptureState = STATE_PREVIEW;
+    // sensor timestamps use SystemClock.elapsedRealtimeNanos(), otherwise an unknown clock
+    private boolean mSensorTimestampRealtime;
+
+    // auto-focus lock and auto-exposure precapture before still captures, only used on the camera control thread
+    private RokidCameraCaptureSequence mCaptureSequence;
+    // captures waiting for the 3A sequence, only used on the camera control thread
+    private final List<RokidCameraCaptureTicket> mFocusPendingTickets = new ArrayList<>();
+    // burst shots waiting for their time, only used on the camera control thread
+    private final List<RokidCameraCaptureTicket> mScheduledBurstTickets = new ArrayList<>();
+    // captures sent to the camera until their Image is saved
+    private final RokidCameraCaptureTicketTable mCaptureTicketTable = new RokidCameraCaptureTicketTable();
+    private final AtomicInteger mNextCaptureTag = new AtomicInteger();
+    // how long the I/O thread waits for the capture of an Image to start
+    private static final long CAPTURE_TICKET_TIMEOUT_MILLIS = 1000;
+
+    // how long onStop() waits for images still being saved
+    private static final long IO_SHUTDOWN_TIMEOUT_MILLIS = 2000;
+    // capture results kept for matching, about half a second of frames at 30 fps
+    private static final int CAPTURE_METADATA_TABLE_CAPACITY = 16;
+    // sensor latencies above this are treated as coming from another clock
+    private static final long MAX_SENSOR_LATENCY_NANOS = 10000000000L;
     private boolean mAutoFocusSupported;
 
     // orientation calculate
@@ -207,6 +304,8 @@ public class RokidCamera {
     private final ImageReader.OnImageAvailableListener mOnImageAvailableListener = new ImageReader.OnImageAvailableListener() {
         @Override
         public void onImageAvailable(ImageReader imageReader) {
+            long availableNanos = System.nanoTime();
+            mMetrics.mFramesProduced.increment();
 
             if (mImageReaderCallbackMode == STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK) {
                 // use case: algorithm
@@ -217,82 +316,321 @@ public class RokidCamera {
 
 
 //                long startTime = System.nanoTime();
-                Image image = imageReader.acquireLatestImage();
+                Image image = acquireFrameImage(imageReader, true);
 //                long estimatedTime = System.nanoTime() - startTime;
 //                Log.i("testtest", "acquireLatestImage time in nano: " + estimatedTime);
                 if (image != null) {
-                    mBackgroundHandler.post(new ImageCallback(image));
+                    long timestamp = image.getTimestamp();
+                    recordSensorLatency(RokidCameraLatencyMetrics.STAGE_SENSOR_TO_IMAGE_AVAILABLE, timestamp);
+                    boolean toListeners = hasImageListeners() && mImageListenerRateLimiter.accept(timestamp);
+                    boolean toConsumers = mFrameDispatcher.select(timestamp);
+                    if (toListeners || toConsumers) {
+                        // already on the frame thread, deliver without another handler hop
+                        mQueueTimeStats[EXECUTOR_FRAME_DISPATCH].record(System.nanoTime() - availableNanos);
+                        deliverFrame(newFrame(image, availableNanos), availableNanos, toListeners, toConsumers);
+                    } else {
+                        // skipped by every rate limit, give the buffer back before any conversion
+                        if (mImageListenerRateLimiter.isLimited() || mFrameDispatcher.hasConsumers()) {
+                            mMetrics.mFramesSkippedByRate.increment();
+                        }
+                        image.close();
+                    }
                 }
 
             } else {
                 // use background thread to save the image
-                // use `acquireLatestImage()` here because we only need one image
-                Image image = imageReader.acquireLatestImage();
-
+                // use `acquireNextImage()` here because only still captures reach this ImageReader,
+                // and every shot of a burst is wanted
                 if (mImageReaderCallbackMode == STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK) {
+                    Image image = acquireFrameImage(imageReader, false);
                     if (image != null) {
-                        mBackgroundHandler.post(new ImageCallback(image));
+                        recordSensorLatency(RokidCameraLatencyMetrics.STAGE_SENSOR_TO_IMAGE_AVAILABLE, image.getTimestamp());
+                        mFrameDispatchExecutor.execute(new ImageCallback(newFrame(image, availableNanos), availableNanos));
                     }
-                } else if (mImageReaderCallbackMode == STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
-                    // save to SD card
+                } else if (mImageReaderCallbackMode == STILL_PHOTO_MODE_SINGLE_NO_CALLBACK && mZslRing != null) {
+                    // zero shutter lag: keep the latest frames of the stream, a shutter press saves one of them
+                    Image image = acquireFrameImage(imageReader, false);
                     if (image != null) {
-                        mBackgroundHandler.post(new ImageSaver(image));
+                        mZslRing.add(newFrame(image, availableNanos));
+                    }
+                } else if (mImageReaderCallbackMode == STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
+                    // save to SD card on the I/O thread, so the write does not delay the next frames
+                    Image image = acquireImage(imageReader, false);
+                    if (image != null && !mIOExecutor.tryExecute(new ImageSaver(image))) {
+                        Log.w("RokidCamera", "Too many images waiting to be saved, dropping image");
+                        // the capture of this Image is over, nothing else would complete its ticket
+                        RokidCameraCaptureTicket ticket = mCaptureTicketTable.take(image.getTimestamp());
+                        if (ticket != null) {
+                            ticket.complete(false);
+                        }
+                        image.close();
                     }
                 }
             }
         }
     };
 
-    // request builder for still photo and video
+    /**
+     * {@link ImageReader#acquireLatestImage()} or {@link ImageReader#acquireNextImage()}, or null when every
+     * Image buffer is still held by RokidCameraFrameConsumers. The frame is then dropped instead of crashing the callback.
+     *
+     * @param latest : true to skip to the latest Image
+     */
+    private Image acquireImage(ImageReader imageReader, boolean latest) {
+        Image image;
+        try {
+            image = latest ? imageReader.acquireLatestImage() : imageReader.acquireNextImage();
+        } catch (IllegalStateException e) {
+            Log.w("RokidCamera", "All Images are still in use, dropping frame");
+            mMetrics.mFramesDroppedNoBuffer.increment();
+            return null;
+        }
+        if (image == null) {
+            // the Image of this callback was already skipped by an earlier acquireLatestImage()
+            mMetrics.mFramesDroppedByAcquireLatest.increment();
+        } else {
+            mMetrics.mFramesAcquired.increment();
+        }
+        return image;
+    }
+
+    /**
+     * Like {@link #acquireImage(ImageReader, boolean)}, for Images handed out as {@link RokidCameraFrame}s.
+     * Leaked frames are reclaimed first, and no Image is acquired while all mMaxImages are held.
+     */
+    private Image acquireFrameImage(ImageReader imageReader, boolean latest) {
+        mFrameTracker.checkLeaks();
+        if (mFrameTracker.isExhausted()) {
+            Log.w("RokidCamera", "All " + mFrameTracker.getMaxImages() + " frames are still held, dropping frame");
+            mMetrics.mFramesDroppedNoBuffer.increment();
+            return null;
+        }
+        return acquireImage(imageReader, latest);
+    }
+
+    /**
+     * Wrap a new Image in a tracked frame, closed when its last reference is released.
+     *
+     * @param availableNanos : System.nanoTime() when the ImageReader callback started, the capture time
+     *                       of the frame if the sensor clock is not comparable to ours
+     */
+    private RokidCameraFrame newFrame(final Image image, long availableNanos) {
+        RokidCameraFrame frame = new RokidCameraFrame(image, image.getTimestamp(), new Runnable() {
+            @Override
+            public void run() {
+                image.close();
+            }
+        }, mFrameTracker, mCaptureMetadataTable);
+        long sensorAge = getSensorAgeNanos(image.getTimestamp());
+        frame.setCaptureNanos(sensorAge >= 0 ? System.nanoTime() - sensorAge : availableNanos);
+        return frame;
+    }
+
+    private void recordCaptureMetadata(TotalCaptureResult result) {
+        RokidCameraCaptureMetadata metadata = RokidCameraCaptureMetadata.fromCaptureResult(result);
+        if (metadata != null) {
+            mCaptureMetadataTable.put(metadata);
+        }
+    }
+
+    // optional low-resolution stream fed by the repeating request in still photo modes
+    private ImageReader mStreamImageReader;
+    private final ImageReader.OnImageAvailableListener mOnStreamImageAvailableListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader imageReader) {
+            long availableNanos = System.nanoTime();
+            Image image = imageReader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            // already on the frame thread, call back without another handler hop
+            mQueueTimeStats[EXECUTOR_FRAME_DISPATCH].record(System.nanoTime() - availableNanos);
+            try {
+                mRokidCameraOnStreamImageAvailableListener.onRokidCameraImageAvailable(image);
+            } finally {
+                image.close();
+            }
+        }
+    };
+
+    // request builder for the repeating request of the preview session
     private CaptureRequest.Builder mCaptureRequestBuilder;
+    // requests built once per session, the camera parameters do not change while it runs
+    private CaptureRequest mPreviewRequest;
+    private CaptureRequest mAFTriggerRequest;
+    private CaptureRequest mAFCancelRequest;
+    private CaptureRequest mAEPrecaptureRequest;
+    // still capture settings, only the tag changes per shot
+    private CaptureRequest.Builder mStillRequestBuilder;
     // media recorder for video recorder
     private MediaRecorder mMediaRecorder;
 
     private class ImageCallback implements Runnable {
 
-        private final Image mImage;
+        // holds the reference of this callback until it is delivered
+        private final RokidCameraFrame mFrame;
+        private final long mAvailableNanos;
 
-        ImageCallback(Image image) {
-            mImage = image;
+        ImageCallback(RokidCameraFrame frame, long availableNanos) {
+            mFrame = frame;
+            mAvailableNanos = availableNanos;
         }
 
         @Override
         public void run() {
+            // still captures are rare, only the consumers' own limits apply
+            deliverFrame(mFrame, mAvailableNanos, true, mFrameDispatcher.select(mFrame.getTimestamp()));
+        }
+    }
 
-            try {
-                mRokidCameraOnImageAvailableListener.onRokidCameraImageAvailable(mImage);
-            } finally {
-                mImage.close();
+    private boolean hasImageListeners() {
+        return mRokidCameraOnImageAvailableListener != null || mRokidCameraOnLumaAvailableListener != null
+                || mRokidCameraOnUprightFrameAvailableListener != null;
+    }
+
+    /**
+     * Hand a new frame to the Image listeners and the frame consumers, then give back the caller's reference.
+     *
+     * @param availableNanos : System.nanoTime() when the ImageReader callback started
+     * @param toListeners    : false if the Image listeners skip this frame
+     * @param toConsumers    : result of {@link RokidCameraFrameDispatcher#select(long)} for this frame
+     */
+    private void deliverFrame(RokidCameraFrame frame, long availableNanos, boolean toListeners, boolean toConsumers) {
+        Image image = frame.getImage();
+        // resolve now if the result already arrived, before it can be evicted while the frame is queued
+        frame.getCaptureMetadata();
+        long callbackNanos = System.nanoTime();
+        mLatencyMetrics.record(RokidCameraLatencyMetrics.STAGE_IMAGE_AVAILABLE_TO_DISPATCH, callbackNanos - availableNanos);
+        long conversionNanos = 0;
+        boolean dispatched = false;
+        try {
+            if (toListeners && mRokidCameraOnImageAvailableListener != null) {
+                mRokidCameraOnImageAvailableListener.onRokidCameraImageAvailable(image);
+            }
+            if (toListeners && mRokidCameraOnLumaAvailableListener != null) {
+                mLumaFrame.wrap(image);
+                try {
+                    mRokidCameraOnLumaAvailableListener.onRokidCameraLumaAvailable(mLumaFrame);
+                } finally {
+                    // the view must not outlive the Image
+                    mLumaFrame.release();
+                }
+            }
+            if (toListeners && mRokidCameraOnUprightFrameAvailableListener != null) {
+                conversionNanos = sendUprightFrame(image);
+            }
+            if (toListeners && hasImageListeners()) {
+                mLatencyMetrics.record(RokidCameraLatencyMetrics.STAGE_CALLBACK,
+                        System.nanoTime() - callbackNanos - conversionNanos);
+                recordSensorLatency(RokidCameraLatencyMetrics.STAGE_SENSOR_TO_CALLBACK_RETURN, frame.getTimestamp());
             }
+            if (toConsumers) {
+                // from here the Image is closed by the last consumer that releases the frame
+                dispatched = true;
+                mFrameDispatcher.dispatchSelected(frame);
+            }
+        } finally {
+            if (!dispatched) {
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * Rotate the Image by {@link #mTotalRotation} into a pooled NV21 array and send it to
+     * {@link #mRokidCameraOnUprightFrameAvailableListener}.
+     *
+     * @return : time spent converting, in nanoseconds
+     */
+    private long sendUprightFrame(Image image) {
+        int width = image.getCropRect().width();
+        int height = image.getCropRect().height();
+        RokidCameraBufferPool bufferPool = RokidCameraBufferPool.getDefault();
+        byte[] nv21 = bufferPool.acquire(RokidCameraFormatConversionUtils.getNV21Size(width, height));
+        try {
+            long startNanos = System.nanoTime();
+            RokidCameraRotationUtils.YUV_420_888toNV21(image, mTotalRotation, mUprightFrameMirrored, nv21);
+            long conversionNanos = System.nanoTime() - startNanos;
+            mLatencyMetrics.record(RokidCameraLatencyMetrics.STAGE_CONVERSION, conversionNanos);
+            mRokidCameraOnUprightFrameAvailableListener.onRokidCameraUprightFrameAvailable(nv21,
+                    RokidCameraRotationUtils.getRotatedWidth(width, height, mTotalRotation),
+                    RokidCameraRotationUtils.getRotatedHeight(width, height, mTotalRotation),
+                    image.getTimestamp());
+            return conversionNanos;
+        } finally {
+            bufferPool.release(nv21);
+        }
+    }
 
+    /**
+     * Record the time since a sensor timestamp. Skipped when the sensor clock is not comparable to ours.
+     */
+    private void recordSensorLatency(int stage, long sensorTimestamp) {
+        long latency = getSensorAgeNanos(sensorTimestamp);
+        if (latency >= 0) {
+            mLatencyMetrics.record(stage, latency);
         }
     }
 
+    /**
+     * @return : time since a sensor timestamp, or -1 when the sensor clock is not comparable to ours
+     */
+    private long getSensorAgeNanos(long sensorTimestamp) {
+        long now = mSensorTimestampRealtime ? SystemClock.elapsedRealtimeNanos() : System.nanoTime();
+        long age = now - sensorTimestamp;
+        // timestamps of an unknown source may use another clock, only trust plausible values
+        return age >= 0 && age < MAX_SENSOR_LATENCY_NANOS ? age : -1;
+    }
+
     private class ImageSaver implements Runnable {
 
         private final Image mImage;
+        // set when saving a frame of the zero shutter lag ring
+        private final RokidCameraFrame mFrame;
+        private final RokidCameraCaptureTicket mTicket;
+
         ImageSaver(Image image) {
             mImage = image;
+            mFrame = null;
+            mTicket = null;
+        }
+
+        /**
+         * @param frame  : frame with a reference for this saver
+         * @param ticket : capture the frame was picked for
+         */
+        ImageSaver(RokidCameraFrame frame, RokidCameraCaptureTicket ticket) {
+            mImage = frame.getImage();
+            mFrame = frame;
+            mTicket = ticket;
         }
 
         @Override
         public void run() {
 
             FileOutputStream fileOutputStream = null;
+            RokidCameraCaptureTicket ticket = mTicket;
             try {
-                // use File to save
-                if (mImageFileName != null) {
+                if (ticket == null) {
+                    // the capture this Image belongs to, and with it the file to save to
+                    ticket = mCaptureTicketTable.await(mImage.getTimestamp(), CAPTURE_TICKET_TIMEOUT_MILLIS);
+                }
+                if (ticket == null) {
+                    Log.w("RokidCamera", "No still capture for Image " + mImage.getTimestamp() + ", dropping image");
+                } else {
                     ByteBuffer byteBuffer = mImage.getPlanes()[0].getBuffer();
-                    byte[] bytes = new byte[byteBuffer.remaining()];
-                    byteBuffer.get(bytes);
+                    int length = byteBuffer.remaining();
 
-                    fileOutputStream = new FileOutputStream(mImageFileName);
-                    fileOutputStream.write(bytes);
+                    // write straight from the Image buffer, no copy per shot
+                    fileOutputStream = new FileOutputStream(ticket.getFile());
+                    FileChannel channel = fileOutputStream.getChannel();
+                    while (byteBuffer.hasRemaining()) {
+                        channel.write(byteBuffer);
+                    }
+                    mMetrics.mIOBytesWritten.add(length);
                     Log.i("testtest", "thread finished ");
 
-                    // reset to null for the next incoming Image
-                    mImageFileName = null;
-
+                    ticket.complete(true);
                     // callback to user
                     if (mRokidCameraIOListener != null) {
                         mRokidCameraIOListener.onRokidCameraFileSaved();
@@ -302,7 +640,7 @@ public class RokidCamera {
                     // send global notification for new photo taken
                     // so that the gallery app can view new photo
                     final Intent scanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
-                    final Uri contentUri = Uri.fromFile(mImageFileTest.getAbsoluteFile());
+                    final Uri contentUri = Uri.fromFile(ticket.getFile().getAbsoluteFile());
                     scanIntent.setData(contentUri);
                     mActivity.sendBroadcast(scanIntent);
 
@@ -323,7 +661,15 @@ public class RokidCamera {
             } catch (Exception e) {
                 e.printStackTrace();
             } finally {
-                mImage.close();
+                if (ticket != null) {
+                    // no-op if it was saved
+                    ticket.complete(false);
+                }
+                if (mFrame != null) {
+                    mFrame.release();
+                } else {
+                    mImage.close();
+                }
                 if (fileOutputStream != null) {
                     try {
                         fileOutputStream.close();
@@ -335,9 +681,23 @@ public class RokidCamera {
         }
     }
 
-    // background thread for camera API actions and saving image to SD card
-    private HandlerThread mBackgroundHandlerThread;
-    private Handler mBackgroundHandler;
+    // camera control thread: CameraDevice, session and capture callbacks, 3A
+    private HandlerThread mCameraHandlerThread;
+    private Handler mCameraHandler;
+    private RokidCameraExecutor mCameraControlExecutor;
+    private int mCameraControlThreadPriority;
+    // frame thread: ImageReader callbacks and frame delivery
+    private HandlerThread mFrameHandlerThread;
+    private Handler mFrameHandler;
+    private RokidCameraExecutor mFrameDispatchExecutor;
+    private int mFrameDispatchThreadPriority;
+    // bounded file I/O threads: saving images to SD card
+    private RokidCameraExecutor mIOExecutor;
+    private int mIOThreadCount;
+    private int mIOQueueCapacity;
+    // queue time of every thread, kept across onStop() and onStart()
+    private final RokidCameraQueueTimeStats[] mQueueTimeStats = {
+            new RokidCameraQueueTimeStats(), new RokidCameraQueueTimeStats(), new RokidCameraQueueTimeStats()};
 
     // destination folder
     private File mVideoFolder;
@@ -345,8 +705,6 @@ public class RokidCamera {
     private File mVideoFileTest;
 
     private File mImageFolder;
-    private String mImageFileName;
-    private File mImageFileTest;
 
     /**
      * User RokidCameraBuilder to create an instance of RokidCamera
@@ -359,10 +717,36 @@ public class RokidCamera {
         this.mRokidCameraIOListener = rokidCameraBuilder.getRokidCameraIOListener();
         this.mRokidCameraRecordingListener = rokidCameraBuilder.getRokidCameraRecordingListener();
         this.mRokidCameraOnImageAvailableListener = rokidCameraBuilder.getRokidCameraOnImageAvailableListener();
+        this.mRokidCameraOnLumaAvailableListener = rokidCameraBuilder.getRokidCameraOnLumaAvailableListener();
+        this.mRokidCameraOnUprightFrameAvailableListener = rokidCameraBuilder.getRokidCameraOnUprightFrameAvailableListener();
+        this.mUprightFrameMirrored = rokidCameraBuilder.isUprightFrameMirrored();
+        this.mImageListenerRateLimiter = new RokidCameraFrameRateLimiter(rokidCameraBuilder.getImageListenerTargetFps(),
+                rokidCameraBuilder.getImageListenerFrameInterval());
+        this.mSensorFrameRateLimited = rokidCameraBuilder.isSensorFrameRateLimited();
+        this.mRokidCameraOnStreamImageAvailableListener = rokidCameraBuilder.getRokidCameraOnStreamImageAvailableListener();
+        this.mSizeStream = rokidCameraBuilder.getRokidCameraSizeStream();
+        mFrameDispatcher.setLatencyMetrics(mLatencyMetrics);
+        for (int i = 0; i < rokidCameraBuilder.getRokidCameraFrameConsumers().size(); i++) {
+            mFrameDispatcher.addConsumer(rokidCameraBuilder.getRokidCameraFrameConsumers().get(i),
+                    rokidCameraBuilder.getRokidCameraFrameConsumerConfigs().get(i));
+        }
+        mFrameDispatcher.setLoadSheddingListener(rokidCameraBuilder.getRokidCameraLoadSheddingListener());
         this.mImageReaderCallbackMode = rokidCameraBuilder.getImageReaderCallbackMode();
         this.mPreviewEnabled = rokidCameraBuilder.isPreviewEnabled();
         this.mImageFormat = rokidCameraBuilder.getImageFormat();
         this.mMaxImages = rokidCameraBuilder.getMaxImages();
+        this.mMaxBurstSize = rokidCameraBuilder.getMaxBurstSize();
+        this.mCaptureSequence = new RokidCameraCaptureSequence(
+                TimeUnit.MILLISECONDS.toNanos(rokidCameraBuilder.getFocusTimeoutMillis()),
+                TimeUnit.MILLISECONDS.toNanos(rokidCameraBuilder.getExposureTimeoutMillis()));
+        if (rokidCameraBuilder.getZslRingSize() > 0) {
+            this.mZslRing = new RokidCameraZslRing(rokidCameraBuilder.getZslRingSize());
+        }
+        this.mFrameTracker = new RokidCameraFrameTracker(getImageReaderMaxImages());
+        if (rokidCameraBuilder.getRokidCameraFrameLeakListener() != null) {
+            mFrameTracker.setLeakListener(rokidCameraBuilder.getRokidCameraFrameLeakListener(),
+                    rokidCameraBuilder.getFrameLeakThresholdMillis());
+        }
         this.mSizePreview = rokidCameraBuilder.getRokidCameraSizePreview();
         this.mSizeImageReader = rokidCameraBuilder.getRokidCameraSizeImageReader();
         this.mSizeVideoRecorder = rokidCameraBuilder.getRokidCameraSizeVideoRecorder();
@@ -370,6 +754,13 @@ public class RokidCamera {
         this.mRokidCameraParamAEMode = rokidCameraBuilder.getRokidCameraParamAEMode();
         this.mRokidCameraParamAWBMode = rokidCameraBuilder.getRokidCameraParamAWBMode();
         this.mRokidCameraParamCameraId = rokidCameraBuilder.getRokidCameraParamCameraId();
+        this.mCameraControlThreadPriority = rokidCameraBuilder.getCameraControlThreadPriority();
+        this.mFrameDispatchThreadPriority = rokidCameraBuilder.getFrameDispatchThreadPriority();
+        this.mIOThreadCount = rokidCameraBuilder.getIOThreadCount();
+        // a whole burst may wait to be saved
+        this.mIOQueueCapacity = Math.max(rokidCameraBuilder.getIOQueueCapacity(), mMaxBurstSize);
+        this.mRokidCameraMetricsListener = rokidCameraBuilder.getRokidCameraMetricsListener();
+        this.mMetricsPeriodMillis = rokidCameraBuilder.getMetricsPeriodMillis();
     }
 
     /**
@@ -412,15 +803,65 @@ public class RokidCamera {
 
         // TODO: look for background thread finish
         stopBackgroundThread();
+        // consumers release their queued frames and pending images are saved before the readers go away
+        mFrameDispatcher.stop();
+        if (!mIOExecutor.shutdown(IO_SHUTDOWN_TIMEOUT_MILLIS)) {
+            Log.w("RokidCamera", "Images still being saved after " + IO_SHUTDOWN_TIMEOUT_MILLIS + " ms");
+        }
+        if (mZslRing != null) {
+            mZslRing.clear();
+        }
+        closeImageReaders();
+        mCaptureMetadataTable.clear();
+        // the control thread is gone, captures still waiting will never finish
+        mCaptureSequence.reset();
+        for (RokidCameraCaptureTicket ticket : mFocusPendingTickets) {
+            ticket.complete(false);
+        }
+        mFocusPendingTickets.clear();
+        // quitting the control thread dropped the shots not due yet
+        for (RokidCameraCaptureTicket ticket : mScheduledBurstTickets) {
+            ticket.complete(false);
+        }
+        mScheduledBurstTickets.clear();
+        mCaptureTicketTable.failAll();
     }
 
     /**
-     * Start background thread
+     * Start background threads: camera control, frame dispatch and file I/O
      */
     private void startBackgroundThread() {
-        mBackgroundHandlerThread = new HandlerThread("Camera2VideoImage");
-        mBackgroundHandlerThread.start();
-        mBackgroundHandler = new Handler(mBackgroundHandlerThread.getLooper());
+        mCameraHandlerThread = new HandlerThread("RokidCameraControl", mCameraControlThreadPriority);
+        mCameraHandlerThread.start();
+        mCameraHandler = new Handler(mCameraHandlerThread.getLooper());
+        mCameraControlExecutor = newHandlerExecutor("RokidCameraControl", mCameraHandler,
+                mQueueTimeStats[EXECUTOR_CAMERA_CONTROL]);
+
+        mFrameHandlerThread = new HandlerThread("RokidCameraFrame", mFrameDispatchThreadPriority);
+        mFrameHandlerThread.start();
+        mFrameHandler = new Handler(mFrameHandlerThread.getLooper());
+        mFrameDispatchExecutor = newHandlerExecutor("RokidCameraFrame", mFrameHandler,
+                mQueueTimeStats[EXECUTOR_FRAME_DISPATCH]);
+
+        mIOExecutor = RokidCameraExecutor.newBounded("RokidCameraIO", mIOThreadCount, mIOQueueCapacity,
+                mQueueTimeStats[EXECUTOR_IO]);
+        mFrameDispatcher.start();
+
+        if (mRokidCameraMetricsListener != null) {
+            mCameraHandler.postDelayed(mMetricsReporter, mMetricsPeriodMillis);
+        }
+    }
+
+    private static RokidCameraExecutor newHandlerExecutor(final String name, final Handler handler,
+                                                          RokidCameraQueueTimeStats queueTimeStats) {
+        return new RokidCameraExecutor(name, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                if (!handler.post(runnable)) {
+                    throw new RejectedExecutionException(name + " thread has quit");
+                }
+            }
+        }, queueTimeStats);
     }
 
     /**
@@ -458,9 +899,23 @@ public class RokidCamera {
                 }
                 int deviceOrientation = mActivity.getWindowManager().getDefaultDisplay().getRotation();
                 mTotalRotation = CameraDeviceUtils.sensorToDeviceRotation(cameraCharacteristics, deviceOrientation, ORIENTATIONS);
+                Integer timestampSource = cameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+                mSensorTimestampRealtime = timestampSource != null
+                        && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+                if (mSensorFrameRateLimited) {
+                    mAETargetFpsRange = chooseAETargetFpsRange(
+                            cameraCharacteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES),
+                            mFrameDispatcher.getTargetFps(0));
+                }
 
-                mImageReader = ImageReader.newInstance(mSizeImageReader.getSize().getWidth(), mSizeImageReader.getSize().getHeight(), mImageFormat, mMaxImages);
-                mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mBackgroundHandler);
+                mImageReader = ImageReader.newInstance(mSizeImageReader.getSize().getWidth(), mSizeImageReader.getSize().getHeight(), mImageFormat, getImageReaderMaxImages());
+                mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mFrameHandler);
+
+                if (mRokidCameraOnStreamImageAvailableListener != null) {
+                    mStreamImageReader = ImageReader.newInstance(mSizeStream.getSize().getWidth(), mSizeStream.getSize().getHeight(),
+                            ImageFormat.YUV_420_888, mMaxImages);
+                    mStreamImageReader.setOnImageAvailableListener(mOnStreamImageAvailableListener, mFrameHandler);
+                }
 
                 // Check if auto focus is supported
                 int[] afAvailableModes = cameraCharacteristics.get(
@@ -481,6 +936,133 @@ public class RokidCamera {
         }
     }
 
+    /**
+     * Slowest AE target fps range that still reaches targetFps. Among ranges with the same maximum the
+     * fixed one is preferred, so the consumer sees an even frame cadence.
+     *
+     * @return : range, or null if the camera reports none that reaches targetFps
+     */
+    private static Range<Integer> chooseAETargetFpsRange(Range<Integer>[] ranges, float targetFps) {
+        if (ranges == null) {
+            return null;
+        }
+        Range<Integer> chosen = null;
+        for (Range<Integer> range : ranges) {
+            if (range.getUpper() < targetFps) {
+                continue;
+            }
+            if (chosen == null || range.getUpper() < chosen.getUpper()
+                    || (range.getUpper().equals(chosen.getUpper()) && range.getLower() > chosen.getLower())) {
+                chosen = range;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Buffers of the main ImageReader, enough for {@link #mMaxBurstSize} shots.
+     */
+    private int getImageReaderMaxImages() {
+        // the ring, one frame being saved and one being acquired
+        int zslImages = mZslRing != null ? mZslRing.getCapacity() + 2 : 0;
+        return Math.max(Math.max(mMaxImages, mMaxBurstSize), zslImages);
+    }
+
+    /**
+     * Clockwise rotation in degrees that makes camera frames upright for the current device orientation.
+     * Used for JPEG orientation, video orientation hint and {@link RokidCameraOnUprightFrameAvailableListener}.
+     */
+    public int getTotalRotation() {
+        return mTotalRotation;
+    }
+
+    /**
+     * Number of {@link RokidCameraFrame}s whose Image is not closed yet, at most {@link RokidCameraBuilder#setMaximumImages(int)}.
+     */
+    public int getOutstandingFrameCount() {
+        return mFrameTracker.getOutstandingCount();
+    }
+
+    /**
+     * Number of {@link RokidCameraFrame}s reported as leaked so far.
+     */
+    public long getLeakedFrameCount() {
+        return mFrameTracker.getLeakedCount();
+    }
+
+    /**
+     * Frames waiting in the queue of a {@link RokidCameraFrameConsumer}.
+     *
+     * @param consumerIndex : index in the order the consumers were added to the builder
+     */
+    public int getFrameConsumerQueueDepth(int consumerIndex) {
+        return mFrameDispatcher.getQueuedCount(consumerIndex);
+    }
+
+    /**
+     * Frames dropped by the policy of a {@link RokidCameraFrameConsumer}.
+     */
+    public long getFrameConsumerDroppedCount(int consumerIndex) {
+        return mFrameDispatcher.getDroppedCount(consumerIndex);
+    }
+
+    /**
+     * Frames a {@link RokidCameraFrameConsumer} never received because they were older than its maximum frame age.
+     */
+    public long getFrameConsumerExpiredCount(int consumerIndex) {
+        return mFrameDispatcher.getExpiredCount(consumerIndex);
+    }
+
+    /**
+     * Times the threads of a {@link RokidCameraFrameConsumer} raced for the same frame.
+     */
+    public long getFrameConsumerContentionCount(int consumerIndex) {
+        return mFrameDispatcher.getContentionCount(consumerIndex);
+    }
+
+    /**
+     * Capture settings and 3A state of an Image, e.g. one received by {@link RokidCameraOnImageAvailableListener}.
+     * Only the latest frames are kept.
+     *
+     * @param timestamp : {@link Image#getTimestamp()}
+     * @return : the metadata, or null if the capture result has not arrived yet or was evicted
+     */
+    public RokidCameraCaptureMetadata getCaptureMetadata(long timestamp) {
+        return mCaptureMetadataTable.get(timestamp);
+    }
+
+    /**
+     * Capture results dropped because no Image asked for them, e.g. because the frame was dropped.
+     */
+    public long getEvictedCaptureMetadataCount() {
+        return mCaptureMetadataTable.getEvictedCount();
+    }
+
+    /**
+     * Current throughput counters: frames produced, acquired and dropped, per consumer delivery and queue
+     * depth, outstanding Images, capture failures and bytes written. Safe to call from any thread.
+     */
+    public RokidCameraMetricsSnapshot getMetricsSnapshot() {
+        return mMetrics.snapshot(mFrameDispatcher, mFrameTracker);
+    }
+
+    /**
+     * Latency of every frame stage, from the sensor timestamp to the listeners and consumers.
+     * Call {@link RokidCameraLatencyMetrics#reset()} to start a new measurement.
+     */
+    public RokidCameraLatencyMetrics getLatencyMetrics() {
+        return mLatencyMetrics;
+    }
+
+    /**
+     * How long tasks waited before running on one of the RokidCamera threads.
+     *
+     * @param executor : {@link #EXECUTOR_CAMERA_CONTROL}, {@link #EXECUTOR_FRAME_DISPATCH} or {@link #EXECUTOR_IO}
+     */
+    public RokidCameraQueueTimeStats getQueueTimeStats(int executor) {
+        return mQueueTimeStats[executor];
+    }
+
     public int getSensorOrientation() {
         CameraCharacteristics cameraCharacteristics = null;
         try {
@@ -507,7 +1089,7 @@ public class RokidCamera {
                     PackageManager.PERMISSION_GRANTED) {
                 // connect the camera
                 // TODO: add comments
-                cameraManager.openCamera(mCameraId, mCameraDevicesStateCallback, mBackgroundHandler);
+                cameraManager.openCamera(mCameraId, mCameraDevicesStateCallback, mCameraHandler);
             }
         } catch (CameraAccessException e) {
             e.printStackTrace();
@@ -536,14 +1118,43 @@ public class RokidCamera {
              */
             mCaptureRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             configureCameraParameters(mCaptureRequestBuilder, mRokidCameraParamAEMode, mRokidCameraParamAFMode, mRokidCameraParamAWBMode);
+            if (mAETargetFpsRange != null) {
+                mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, mAETargetFpsRange);
+            }
+
+            List<Surface> sessionSurfaces = new ArrayList<>(Arrays.asList(previewSurface, mImageReader.getSurface()));
+            boolean hasRepeatingTarget = false;
 
             if (mPreviewEnabled) {
                 mCaptureRequestBuilder.addTarget(previewSurface);
+                hasRepeatingTarget = true;
             }
 
-            mCaptureRequestBuilder.addTarget(mImageReader.getSurface());
+            if (mImageReaderCallbackMode == STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK || mZslRing != null) {
+                // algorithm and zero shutter lag use cases: every frame goes to the ImageReader
+                mCaptureRequestBuilder.addTarget(mImageReader.getSurface());
+                hasRepeatingTarget = true;
+            }
+            // in still photo modes the ImageReader is only targeted by still capture requests,
+            // so the ISP does not produce a full resolution image for every preview frame
+
+            if (mStreamImageReader != null) {
+                sessionSurfaces.add(mStreamImageReader.getSurface());
+                mCaptureRequestBuilder.addTarget(mStreamImageReader.getSurface());
+                hasRepeatingTarget = true;
+            }
 
-            mCameraDevice.createCaptureSession(Arrays.asList(previewSurface, mImageReader.getSurface()), new CameraCaptureSession.StateCallback() {
+            if (!hasRepeatingTarget) {
+                // keep the sensor and 3A running for still capture, the hidden preview surface is the cheapest target
+                mCaptureRequestBuilder.addTarget(previewSurface);
+            }
+            if (mZslRing != null) {
+                // zero shutter lag photos are JPEGs of the repeating request, rotate them like still captures
+                mCaptureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, mTotalRotation);
+            }
+            buildSessionRequests();
+
+            mCameraDevice.createCaptureSession(sessionSurfaces, new CameraCaptureSession.StateCallback() {
                 @Override
                 public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
 
@@ -551,8 +1162,9 @@ public class RokidCamera {
 
                     // preview is a video, so we set a repeating request
                     try {
-                        mPreviewCaptureSession.setRepeatingRequest(mCaptureRequestBuilder.build(), null, mBackgroundHandler);
+                        mPreviewCaptureSession.setRepeatingRequest(mPreviewRequest, mRepeatingCaptureCallback, mCameraHandler);
                     } catch (CameraAccessException e) {
+                        mMetrics.mCaptureFailures.increment();
                         e.printStackTrace();
                     }
                 }
@@ -561,79 +1173,385 @@ public class RokidCamera {
                 public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
                     Toast.makeText(mActivity, "Unable to setup camera preview", Toast.LENGTH_SHORT).show();
                 }
-            }, null);
+            }, mCameraHandler);
         } catch (CameraAccessException e) {
             e.printStackTrace();
         }
     }
 
-    public void takeStillPicture() {
+    /**
+     * Build the requests of the preview session once, so the shutter path neither creates a request
+     * from a template nor changes the repeating request builder.
+     *
+     * @throws CameraAccessException : camera disconnected while creating the still request
+     */
+    private void buildSessionRequests() throws CameraAccessException {
+        mPreviewRequest = mCaptureRequestBuilder.build();
+
+        // same settings and targets as the preview, so 3A keeps its state while focusing
+        mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
+        mAFTriggerRequest = mCaptureRequestBuilder.build();
+        mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+        mAFCancelRequest = mCaptureRequestBuilder.build();
+        mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+        mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+        mAEPrecaptureRequest = mCaptureRequestBuilder.build();
+        mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+
+        if (mZslRing != null) {
+            // zero shutter lag saves frames of the repeating request
+            mStillRequestBuilder = null;
+            return;
+        }
+        // create request for STILL PICTURE type
+        /**
+         * Create a request suitable for still image capture. Specifically, this
+         * means prioritizing image quality over frame rate. These requests would
+         * commonly be used with the {@link CameraCaptureSession#capture} method.
+         * This template is guaranteed to be supported on all camera devices except
+         * {@link CameraMetadata#REQUEST_AVAILABLE_CAPABILITIES_DEPTH_OUTPUT DEPTH_OUTPUT} devices
+         * that are not {@link CameraMetadata#REQUEST_AVAILABLE_CAPABILITIES_BACKWARD_COMPATIBLE
+         * BACKWARD_COMPATIBLE}.
+         * @see #createCaptureRequest
+         */
+        // own builder, so the repeating request keeps its template and targets
+        mStillRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        configureCameraParameters(mStillRequestBuilder, mRokidCameraParamAEMode, mRokidCameraParamAFMode, mRokidCameraParamAWBMode);
+        mStillRequestBuilder.addTarget(mImageReader.getSurface());
+
+        // TODO: update diagram
+
+        // not sure why we need to add 180 rotation here
+        // the original image was 180 degree off
+        mStillRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, mTotalRotation);
+    }
+
+    public RokidCameraCaptureTicket takeStillPicture() {
+        return takeStillPicture(null);
+    }
+
+    /**
+     * Take a still picture. Can be called again before the previous picture is saved, every capture
+     * has its own ticket and file.
+     *
+     * @param rokidCameraCaptureListener : called when this capture is done, or null
+     * @return : ticket of this capture
+     */
+    public RokidCameraCaptureTicket takeStillPicture(RokidCameraCaptureListener rokidCameraCaptureListener) {
+        int tag = mNextCaptureTag.getAndIncrement();
+        File file = mImageReaderCallbackMode == STILL_PHOTO_MODE_SINGLE_NO_CALLBACK
+                ? createImageFile(mImageFolder, tag) : null;
+        final RokidCameraCaptureTicket ticket = new RokidCameraCaptureTicket(tag, file, rokidCameraCaptureListener);
+        if (mZslRing != null) {
+            saveZslFrame(ticket);
+            return ticket;
+        }
+        // 3A state is only touched on the camera control thread
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                mFocusPendingTickets.add(ticket);
+                if (mCaptureSequence.isIdle()) {
+                    // captures requested meanwhile wait for the same sequence
+                    startCaptureSequence();
+                }
+            }
+        };
+        if (mCameraControlExecutor == null || !mCameraControlExecutor.tryExecute(task)) {
+            Log.w("RokidCamera", "Camera is not started, capture failed");
+            ticket.complete(false);
+        }
+        return ticket;
+    }
+
+    /**
+     * Start the 3A sequence: lock auto-focus if supported, then check auto-exposure on the next results.
+     */
+    private void startCaptureSequence() {
+        mCaptureSequence.start(System.nanoTime(), mAutoFocusSupported);
         if (mAutoFocusSupported) {
-            // try to auto focus
             lockFocus();
-        } else {
-            // capture right now if auto-focus not supported
-            sendStillCaptureRequest();
         }
+        scheduleCaptureSequenceTimeout();
     }
 
     /**
      * Auto-focus lock
      */
     private void lockFocus() {
-        mCaptureState = STATE_WAIT_LOCK;
         try {
-            mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
-            mPreviewCaptureSession.capture(mCaptureRequestBuilder.build(), mPreviewCaptureCallback, mBackgroundHandler);
+            mPreviewCaptureSession.capture(mAFTriggerRequest, mPreviewCaptureCallback, mCameraHandler);
         } catch (CameraAccessException e) {
+            mMetrics.mCaptureFailures.increment();
             e.printStackTrace();
         }
     }
 
     /**
-     * Capture still photo
+     * Release the auto-focus lock after the capture, so continuous focus resumes
      */
-    private void sendStillCaptureRequest() {
+    private void unlockFocus() {
         try {
-            // create request for STILL PICTURE type
-            /**
-             * Create a request suitable for still image capture. Specifically, this
-             * means prioritizing image quality over frame rate. These requests would
-             * commonly be used with the {@link CameraCaptureSession#capture} method.
-             * This template is guaranteed to be supported on all camera devices except
-             * {@link CameraMetadata#REQUEST_AVAILABLE_CAPABILITIES_DEPTH_OUTPUT DEPTH_OUTPUT} devices
-             * that are not {@link CameraMetadata#REQUEST_AVAILABLE_CAPABILITIES_BACKWARD_COMPATIBLE
-             * BACKWARD_COMPATIBLE}.
-             * @see #createCaptureRequest
-             */
-            mCaptureRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            configureCameraParameters(mCaptureRequestBuilder, mRokidCameraParamAEMode, mRokidCameraParamAFMode, mRokidCameraParamAWBMode);
-            mCaptureRequestBuilder.addTarget(mImageReader.getSurface());
+            mPreviewCaptureSession.capture(mAFCancelRequest, null, mCameraHandler);
+        } catch (CameraAccessException e) {
+            mMetrics.mCaptureFailures.increment();
+            e.printStackTrace();
+        }
+    }
 
-            // TODO: update diagram
+    /**
+     * Auto-exposure precapture metering, e.g. for low light
+     */
+    private void runPrecapture() {
+        try {
+            mPreviewCaptureSession.capture(mAEPrecaptureRequest, mPreviewCaptureCallback, mCameraHandler);
+        } catch (CameraAccessException e) {
+            mMetrics.mCaptureFailures.increment();
+            e.printStackTrace();
+        }
+    }
 
-            // not sure why we need to add 180 rotation here
-            // the original image was 180 degree off
-            mCaptureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, mTotalRotation);
+    /**
+     * Advance the 3A sequence with a capture result, on the camera control thread.
+     */
+    private void processCaptureSequence(CaptureResult captureResult) {
+        if (mCaptureSequence.isIdle()) {
+            return;
+        }
+        onCaptureSequenceAction(mCaptureSequence.onResult(captureResult.get(CaptureResult.CONTROL_AF_STATE),
+                captureResult.get(CaptureResult.CONTROL_AE_STATE), System.nanoTime()));
+    }
+
+    private void onCaptureSequenceAction(int action) {
+        if (action == RokidCameraCaptureSequence.ACTION_PRECAPTURE) {
+            runPrecapture();
+            // the exposure wait has its own bound
+            scheduleCaptureSequenceTimeout();
+        } else if (action == RokidCameraCaptureSequence.ACTION_CAPTURE) {
+            mCameraHandler.removeCallbacks(mCaptureSequenceTimeout);
+            if (mCaptureSequence.isTimedOut()) {
+                Log.w("RokidCamera", "3A did not settle in time, capturing anyway");
+            }
+            for (RokidCameraCaptureTicket ticket : mFocusPendingTickets) {
+                ticket.setPrecaptureTimings(mCaptureSequence.getFocusNanos(), mCaptureSequence.getExposureNanos(),
+                        mCaptureSequence.isTimedOut());
+            }
+            sendStillCaptureRequests();
+            if (mAutoFocusSupported) {
+                // queued after the still requests, so they are taken with the lock
+                unlockFocus();
+            }
+        }
+    }
 
-            CameraCaptureSession.CaptureCallback stillCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+    private void scheduleCaptureSequenceTimeout() {
+        mCameraHandler.removeCallbacks(mCaptureSequenceTimeout);
+        long remainingNanos = mCaptureSequence.getRemainingNanos(System.nanoTime());
+        // round up, so the wait has run out when the timeout fires
+        mCameraHandler.postDelayed(mCaptureSequenceTimeout, TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1);
+    }
+
+    // bounds the 3A waits when no capture result arrives
+    private final Runnable mCaptureSequenceTimeout = new Runnable() {
+        @Override
+        public void run() {
+            int action = mCaptureSequence.onTimeout(System.nanoTime());
+            if (action == RokidCameraCaptureSequence.ACTION_NONE && !mCaptureSequence.isIdle()) {
+                scheduleCaptureSequenceTimeout();
+            } else {
+                onCaptureSequenceAction(action);
+            }
+        }
+    };
+
+    /**
+     * Zero shutter lag: save the best recent frame of the ring instead of sending a capture request.
+     */
+    private void saveZslFrame(RokidCameraCaptureTicket ticket) {
+        RokidCameraFrame frame = mZslRing.acquireBest();
+        if (frame == null) {
+            Log.w("RokidCamera", "No frame in the zero shutter lag ring yet");
+            ticket.complete(false);
+            return;
+        }
+        ticket.setTimestamp(frame.getTimestamp());
+        if (!mIOExecutor.tryExecute(new ImageSaver(frame, ticket))) {
+            Log.w("RokidCamera", "Too many images waiting to be saved, dropping image");
+            frame.release();
+            ticket.complete(false);
+        }
+    }
+
+    /**
+     * Frames in the zero shutter lag ring, 0 when disabled.
+     */
+    public int getZslFrameCount() {
+        return mZslRing != null ? mZslRing.size() : 0;
+    }
+
+    /**
+     * Take several full resolution shots at once, without waiting for an auto-focus lock.
+     * <ul>
+     *     <li>With intervalMillis 0 all shots go to the camera as one
+     *     {@link CameraCaptureSession#captureBurst(List, CameraCaptureSession.CaptureCallback, Handler)},
+     *     so the sensor takes them back to back.
+     *     <li>Otherwise one shot is requested every intervalMillis.
+     *     <li>Shots are saved by the I/O threads in parallel, see {@link RokidCameraBuilder#setIOExecutor(int, int)}.
+     * </ul>
+     *
+     * @param count : number of shots, at most {@link RokidCameraBuilder#setMaximumBurstSize(int)}
+     * @param intervalMillis : time between two shots, 0 for as fast as the sensor can
+     * @param rokidCameraBurstListener : called once when every shot is done, or null
+     * @return : burst with one ticket per shot
+     */
+    public RokidCameraBurst takeBurst(int count, long intervalMillis, RokidCameraBurstListener rokidCameraBurstListener) {
+        if (count < 1 || count > mMaxBurstSize) {
+            throw new IllegalArgumentException("Burst must have between 1 and " + mMaxBurstSize + " shots: " + count);
+        }
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Burst interval must not be negative: " + intervalMillis);
+        }
+        int firstTag = mNextCaptureTag.getAndAdd(count);
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = mImageReaderCallbackMode == STILL_PHOTO_MODE_SINGLE_NO_CALLBACK
+                    ? createImageFile(mImageFolder, firstTag + i) : null;
+        }
+        final RokidCameraBurst burst = new RokidCameraBurst(firstTag, files, rokidCameraBurstListener);
+        final List<RokidCameraCaptureTicket> tickets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tickets.add(burst.getTicket(i));
+        }
+        Runnable task;
+        if (intervalMillis == 0) {
+            task = new Runnable() {
                 @Override
-                public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, long timestamp, long frameNumber) {
-                    super.onCaptureStarted(session, request, timestamp, frameNumber);
-                    // create image when it's in focus
-                    try {
-                        mImageFileTest = createImageFile(mImageFolder);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                public void run() {
+                    sendStillCaptureRequests(tickets);
+                }
+            };
+        } else {
+            task = new Runnable() {
+                @Override
+                public void run() {
+                    long startMillis = SystemClock.uptimeMillis();
+                    for (int i = 0; i < tickets.size(); i++) {
+                        scheduleBurstShot(tickets.get(i), startMillis + i * intervalMillis);
                     }
                 }
             };
-            mPreviewCaptureSession.capture(mCaptureRequestBuilder.build(), stillCaptureCallback, null);
+        }
+        if (mCameraControlExecutor == null || !mCameraControlExecutor.tryExecute(task)) {
+            Log.w("RokidCamera", "Camera is not started, burst failed");
+            for (RokidCameraCaptureTicket ticket : tickets) {
+                ticket.complete(false);
+            }
+        }
+        return burst;
+    }
+
+    /**
+     * Capture one shot of a burst at the given time, on the camera control thread. Shots still waiting
+     * when the camera stops are failed by {@link #onStop()}.
+     *
+     * @param uptimeMillis : SystemClock.uptimeMillis() of the shot
+     */
+    private void scheduleBurstShot(final RokidCameraCaptureTicket ticket, long uptimeMillis) {
+        mScheduledBurstTickets.add(ticket);
+        final Runnable shot = new Runnable() {
+            @Override
+            public void run() {
+                if (mScheduledBurstTickets.remove(ticket)) {
+                    sendStillCaptureRequests(Collections.singletonList(ticket));
+                }
+            }
+        };
+        // the Handler only keeps the time, the shot itself goes through the control executor
+        mCameraHandler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                mCameraControlExecutor.tryExecute(shot);
+            }
+        }, uptimeMillis);
+    }
+
+    /**
+     * Capture a still photo for every ticket waiting for focus
+     */
+    private void sendStillCaptureRequests() {
+        sendStillCaptureRequests(mFocusPendingTickets);
+        mFocusPendingTickets.clear();
+    }
+
+    /**
+     * Capture still photos, back to back if there are several
+     */
+    private void sendStillCaptureRequests(List<RokidCameraCaptureTicket> tickets) {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        if (mStillRequestBuilder == null) {
+            Log.w("RokidCamera", "No preview session to capture in yet");
+            for (RokidCameraCaptureTicket ticket : tickets) {
+                ticket.complete(false);
+            }
+            return;
+        }
+        try {
+            // the session builder has the settings already, build() only copies them with the tag
+            List<CaptureRequest> requests = new ArrayList<>(tickets.size());
+            long sentNanos = System.nanoTime();
+            for (RokidCameraCaptureTicket ticket : tickets) {
+                ticket.setCaptureSentNanos(sentNanos);
+                // the callbacks find the ticket of their request through the tag
+                mStillRequestBuilder.setTag(ticket);
+                requests.add(mStillRequestBuilder.build());
+                mCaptureTicketTable.add(ticket);
+            }
+            if (requests.size() == 1) {
+                mPreviewCaptureSession.capture(requests.get(0), mStillCaptureCallback, mCameraHandler);
+            } else {
+                mPreviewCaptureSession.captureBurst(requests, mStillCaptureCallback, mCameraHandler);
+            }
         } catch (CameraAccessException e) {
+            mMetrics.mCaptureFailures.increment();
             e.printStackTrace();
+            for (RokidCameraCaptureTicket ticket : tickets) {
+                mCaptureTicketTable.remove(ticket);
+                ticket.complete(false);
+            }
         }
     }
 
+    private final CameraCaptureSession.CaptureCallback mStillCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, long timestamp, long frameNumber) {
+            super.onCaptureStarted(session, request, timestamp, frameNumber);
+            // from now on the Image of this capture can be matched to its ticket
+            mCaptureTicketTable.bind((RokidCameraCaptureTicket) request.getTag(), timestamp);
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            super.onCaptureCompleted(session, request, result);
+            recordCaptureMetadata(result);
+            if (mImageReaderCallbackMode != STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
+                // nothing to save, the Image goes to the listeners
+                RokidCameraCaptureTicket ticket = (RokidCameraCaptureTicket) request.getTag();
+                mCaptureTicketTable.remove(ticket);
+                ticket.complete(true);
+            }
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+            mMetrics.mCaptureFailures.increment();
+            RokidCameraCaptureTicket ticket = (RokidCameraCaptureTicket) request.getTag();
+            mCaptureTicketTable.remove(ticket);
+            ticket.complete(false);
+        }
+    };
+
     /**
      * Check for permissions and start video recording.
      */
@@ -706,24 +1624,27 @@ public class RokidCamera {
              *
              * @see #createCaptureRequest
              */
-            mCaptureRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-            configureCameraParameters(mCaptureRequestBuilder, mRokidCameraParamAEMode, mRokidCameraParamAFMode, mRokidCameraParamAWBMode);
+            CaptureRequest.Builder recordRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            configureCameraParameters(recordRequestBuilder, mRokidCameraParamAEMode, mRokidCameraParamAFMode, mRokidCameraParamAWBMode);
 
             if (mPreviewEnabled) {
                 // add Preview surface to target
-                mCaptureRequestBuilder.addTarget(previewSurface);
+                recordRequestBuilder.addTarget(previewSurface);
             }
 
             // add Record surface to target
             Surface recordSurface = mMediaRecorder.getSurface();
-            mCaptureRequestBuilder.addTarget(recordSurface);
+            recordRequestBuilder.addTarget(recordSurface);
+            // built once for the recording session, the recorder surface is new for every recording
+            final CaptureRequest recordRequest = recordRequestBuilder.build();
 
             mCameraDevice.createCaptureSession(Arrays.asList(previewSurface, recordSurface), new CameraCaptureSession.StateCallback() {
                 @Override
                 public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
                     try {
-                        cameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilder.build(), null, null);
+                        cameraCaptureSession.setRepeatingRequest(recordRequest, null, mCameraHandler);
                     } catch (CameraAccessException e) {
+                        mMetrics.mCaptureFailures.increment();
                         e.printStackTrace();
                     }
                 }
@@ -732,7 +1653,7 @@ public class RokidCamera {
                 public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
 
                 }
-            }, null);
+            }, mCameraHandler);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -778,14 +1699,21 @@ public class RokidCamera {
     }
 
     /**
-     * Stop background thread
+     * Stop camera control and frame dispatch threads, after they handled their pending callbacks.
+     * The I/O threads are stopped separately in onStop().
      */
     private void stopBackgroundThread() {
-        mBackgroundHandlerThread.quitSafely();
+        mCameraHandler.removeCallbacks(mMetricsReporter);
+        mCameraHandler.removeCallbacks(mCaptureSequenceTimeout);
+        mCameraHandlerThread.quitSafely();
+        mFrameHandlerThread.quitSafely();
         try {
-            mBackgroundHandlerThread.join();
-            mBackgroundHandlerThread = null;
-            mBackgroundHandler = null;
+            mCameraHandlerThread.join();
+            mFrameHandlerThread.join();
+            mCameraHandlerThread = null;
+            mCameraHandler = null;
+            mFrameHandlerThread = null;
+            mFrameHandler = null;
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -801,6 +1729,21 @@ public class RokidCamera {
         }
     }
 
+    /**
+     * Close ImageReaders. Must be called after the background thread has handled every pending Image.
+     * Readers are created again in setupCamera().
+     */
+    private void closeImageReaders() {
+        if (mImageReader != null) {
+            mImageReader.close();
+            mImageReader = null;
+        }
+        if (mStreamImageReader != null) {
+            mStreamImageReader.close();
+            mStreamImageReader = null;
+        }
+    }
+
     /**
      * Configures the necessary {@link android.graphics.Matrix} transformation to `mTextureView`.
      * This method should be called after the camera preview size is determined in
@@ -879,11 +1822,16 @@ public class RokidCamera {
     }
 
     public File createImageFile(File mImageFolder) throws IOException {
+        return createImageFile(mImageFolder, mNextCaptureTag.getAndIncrement());
+    }
+
+    /**
+     * @param tag : capture tag, keeps the names of captures within the same second apart
+     */
+    private File createImageFile(File mImageFolder, int tag) {
         String timeStamp = new SimpleDateFormat("yyyyHHdd_HHmmss").format(new Date());
-        String prepend = "ROKIDIMAGE_" + timeStamp;
+        String prepend = "ROKIDIMAGE_" + timeStamp + "_" + tag;
 //        File imageFile = File.createTempFile("ROKIDTEST", ".jpg", mImageFolder);
-        File imageFile = new File(mImageFolder, prepend + ".jpg");
-        mImageFileName = imageFile.getAbsolutePath();
-        return imageFile;
+        return new File(mImageFolder, prepend + ".jpg");
     }
 }
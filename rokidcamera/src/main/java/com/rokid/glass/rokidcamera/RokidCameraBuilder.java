@@ -2,11 +2,18 @@ package com.rokid.glass.rokidcamera;
 
 import android.app.Activity;
 import android.graphics.ImageFormat;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.view.TextureView;
 
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameLeakListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraIOListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraLoadSheddingListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraMetricsListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnImageAvailableListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnLumaAvailableListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnUprightFrameAvailableListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraStateListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraVideoRecordingListener;
 import com.rokid.glass.rokidcamera.rokidcamerabuilder.RokidCameraBuilderPlan;
@@ -14,6 +21,9 @@ import com.rokid.glass.rokidcamera.utils.RokidCameraBuilderValidator;
 import com.rokid.glass.rokidcamera.utils.RokidCameraParameters;
 import com.rokid.glass.rokidcamera.utils.RokidCameraSize;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * Created by yihan on 7/26/18.
@@ -25,7 +35,16 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
     private boolean previewEnabled;
     private int mImageFormat;
     private int mMaxImages;
+    private int mMaxBurstSize;
+    private int mZslRingSize;
+    private long mFocusTimeoutMillis;
+    private long mExposureTimeoutMillis;
     private int mImageReaderCallbackMode;
+    // threads
+    private int mCameraControlThreadPriority;
+    private int mFrameDispatchThreadPriority;
+    private int mIOThreadCount;
+    private int mIOQueueCapacity;
 
     // activity and activity callbacks
     private Activity mActivity;
@@ -36,10 +55,25 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
     private RokidCameraIOListener mRokidCameraIOListener;
     private RokidCameraVideoRecordingListener mRokidCameraRecordingListener;
     private RokidCameraOnImageAvailableListener mRokidCameraOnImageAvailableListener;
+    private RokidCameraOnLumaAvailableListener mRokidCameraOnLumaAvailableListener;
+    private RokidCameraOnUprightFrameAvailableListener mRokidCameraOnUprightFrameAvailableListener;
+    private boolean mUprightFrameMirrored;
+    private float mImageListenerTargetFps;
+    private int mImageListenerFrameInterval;
+    private boolean mSensorFrameRateLimited;
+    private RokidCameraOnImageAvailableListener mRokidCameraOnStreamImageAvailableListener;
+    private final List<RokidCameraFrameConsumer> mRokidCameraFrameConsumers = new ArrayList<>();
+    private final List<RokidCameraFrameConsumerConfig> mRokidCameraFrameConsumerConfigs = new ArrayList<>();
+    private RokidCameraFrameLeakListener mRokidCameraFrameLeakListener;
+    private long mFrameLeakThresholdMillis;
+    private RokidCameraLoadSheddingListener mRokidCameraLoadSheddingListener;
+    private RokidCameraMetricsListener mRokidCameraMetricsListener;
+    private long mMetricsPeriodMillis;
     // resolution sizes
     private RokidCameraSize mRokidCameraSizePreview;
     private RokidCameraSize mRokidCameraSizeImageReader;
     private RokidCameraSize mRokidCameraSizeVideoRecorder;
+    private RokidCameraSize mRokidCameraSizeStream;
     // camera parameters
     private RokidCameraParameters mRokidCameraParamAEMode;
     private RokidCameraParameters mRokidCameraParamAFMode;
@@ -52,14 +86,30 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
         this.previewEnabled = false;
         this.mImageFormat = ImageFormat.JPEG;
         this.mMaxImages = 2;
+        this.mMaxBurstSize = 0;
+        this.mZslRingSize = 0;
+        this.mFocusTimeoutMillis = 1000;
+        this.mExposureTimeoutMillis = 1000;
         this.mImageReaderCallbackMode = RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK;
+        this.mCameraControlThreadPriority = Process.THREAD_PRIORITY_DEFAULT;
+        this.mFrameDispatchThreadPriority = Process.THREAD_PRIORITY_DEFAULT;
+        this.mIOThreadCount = 1;
+        this.mIOQueueCapacity = 4;
         this.mRokidCameraStateListener = null;
         this.mRokidCameraIOListener = null;
         this.mRokidCameraRecordingListener = null;
         this.mRokidCameraOnImageAvailableListener = null;
+        this.mRokidCameraOnLumaAvailableListener = null;
+        this.mRokidCameraOnUprightFrameAvailableListener = null;
+        this.mUprightFrameMirrored = false;
+        this.mImageListenerTargetFps = 0;
+        this.mImageListenerFrameInterval = 1;
+        this.mSensorFrameRateLimited = false;
+        this.mRokidCameraOnStreamImageAvailableListener = null;
         this.mRokidCameraSizePreview = RokidCameraSize.SIZE_PREVIEW;
         this.mRokidCameraSizeImageReader = RokidCameraSize.SIZE_IMAGE_READER_STILL_PHOTO;
         this.mRokidCameraSizeVideoRecorder = RokidCameraSize.SIZE_VIDEO_RECORDING;
+        this.mRokidCameraSizeStream = null;
         this.mRokidCameraParamAEMode = RokidCameraParameters.ROKID_CAMERA_PARAM_AE_MODE_ON;
         this.mRokidCameraParamAFMode = RokidCameraParameters.ROKID_CAMERA_PARAM_AF_MODE_PICTURE;
         this.mRokidCameraParamAWBMode = RokidCameraParameters.ROKID_CAMERA_PARAM_AWB_MODE_AUTO;
@@ -93,6 +143,71 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
         return this;
     }
 
+    @Override
+    public RokidCameraBuilder setRokidCameraOnLumaAvailableListener(@NonNull RokidCameraOnLumaAvailableListener rokidCameraOnLumaAvailableListener) {
+        this.mRokidCameraOnLumaAvailableListener = rokidCameraOnLumaAvailableListener;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setRokidCameraOnUprightFrameAvailableListener(@NonNull RokidCameraOnUprightFrameAvailableListener rokidCameraOnUprightFrameAvailableListener,
+                                                                            boolean mirrored) {
+        this.mRokidCameraOnUprightFrameAvailableListener = rokidCameraOnUprightFrameAvailableListener;
+        this.mUprightFrameMirrored = mirrored;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setRokidCameraOnStreamImageAvailableListener(@NonNull RokidCameraSize rokidCameraSizeStream,
+                                                                           @NonNull RokidCameraOnImageAvailableListener rokidCameraOnStreamImageAvailableListener) {
+        this.mRokidCameraSizeStream = rokidCameraSizeStream;
+        this.mRokidCameraOnStreamImageAvailableListener = rokidCameraOnStreamImageAvailableListener;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder addRokidCameraFrameConsumer(@NonNull RokidCameraFrameConsumer rokidCameraFrameConsumer,
+                                                          @NonNull RokidCameraFrameConsumerConfig rokidCameraFrameConsumerConfig) {
+        this.mRokidCameraFrameConsumers.add(rokidCameraFrameConsumer);
+        this.mRokidCameraFrameConsumerConfigs.add(rokidCameraFrameConsumerConfig);
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setRokidCameraFrameLeakListener(@NonNull RokidCameraFrameLeakListener rokidCameraFrameLeakListener,
+                                                              long leakThresholdMillis) {
+        this.mRokidCameraFrameLeakListener = rokidCameraFrameLeakListener;
+        this.mFrameLeakThresholdMillis = leakThresholdMillis;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setRokidCameraLoadSheddingListener(@NonNull RokidCameraLoadSheddingListener rokidCameraLoadSheddingListener) {
+        this.mRokidCameraLoadSheddingListener = rokidCameraLoadSheddingListener;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setRokidCameraMetricsListener(@NonNull RokidCameraMetricsListener rokidCameraMetricsListener,
+                                                            long periodMillis) {
+        this.mRokidCameraMetricsListener = rokidCameraMetricsListener;
+        this.mMetricsPeriodMillis = periodMillis;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setImageListenerFrameRate(float targetFps, int frameInterval) {
+        this.mImageListenerTargetFps = targetFps;
+        this.mImageListenerFrameInterval = frameInterval;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setSensorFrameRateLimited(boolean sensorFrameRateLimited) {
+        this.mSensorFrameRateLimited = sensorFrameRateLimited;
+        return this;
+    }
+
     @Override
     public RokidCameraBuilder setPreviewEnabled(boolean previewEnabled) {
         this.previewEnabled = previewEnabled;
@@ -111,6 +226,44 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
         return this;
     }
 
+    @Override
+    public RokidCameraBuilder setMaximumBurstSize(int maxBurstSize) {
+        this.mMaxBurstSize = maxBurstSize;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setZeroShutterLag(int ringSize) {
+        this.mZslRingSize = ringSize;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setPrecaptureTimeout(long focusTimeoutMillis, long exposureTimeoutMillis) {
+        this.mFocusTimeoutMillis = focusTimeoutMillis;
+        this.mExposureTimeoutMillis = exposureTimeoutMillis;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setCameraControlThreadPriority(int priority) {
+        this.mCameraControlThreadPriority = priority;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setFrameDispatchThreadPriority(int priority) {
+        this.mFrameDispatchThreadPriority = priority;
+        return this;
+    }
+
+    @Override
+    public RokidCameraBuilder setIOExecutor(int threadCount, int queueCapacity) {
+        this.mIOThreadCount = threadCount;
+        this.mIOQueueCapacity = queueCapacity;
+        return this;
+    }
+
     @Override
     public RokidCameraBuilder setSizePreview(RokidCameraSize rokidCameraSize) {
         this.mRokidCameraSizePreview = rokidCameraSize;
@@ -157,6 +310,38 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
         return mMaxImages;
     }
 
+    public int getMaxBurstSize() {
+        return mMaxBurstSize;
+    }
+
+    public int getZslRingSize() {
+        return mZslRingSize;
+    }
+
+    public long getFocusTimeoutMillis() {
+        return mFocusTimeoutMillis;
+    }
+
+    public long getExposureTimeoutMillis() {
+        return mExposureTimeoutMillis;
+    }
+
+    public int getCameraControlThreadPriority() {
+        return mCameraControlThreadPriority;
+    }
+
+    public int getFrameDispatchThreadPriority() {
+        return mFrameDispatchThreadPriority;
+    }
+
+    public int getIOThreadCount() {
+        return mIOThreadCount;
+    }
+
+    public int getIOQueueCapacity() {
+        return mIOQueueCapacity;
+    }
+
     public int getImageFormat() {
         return mImageFormat;
     }
@@ -193,6 +378,62 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
         return mRokidCameraOnImageAvailableListener;
     }
 
+    public RokidCameraOnLumaAvailableListener getRokidCameraOnLumaAvailableListener() {
+        return mRokidCameraOnLumaAvailableListener;
+    }
+
+    public RokidCameraOnUprightFrameAvailableListener getRokidCameraOnUprightFrameAvailableListener() {
+        return mRokidCameraOnUprightFrameAvailableListener;
+    }
+
+    public boolean isUprightFrameMirrored() {
+        return mUprightFrameMirrored;
+    }
+
+    public float getImageListenerTargetFps() {
+        return mImageListenerTargetFps;
+    }
+
+    public int getImageListenerFrameInterval() {
+        return mImageListenerFrameInterval;
+    }
+
+    public boolean isSensorFrameRateLimited() {
+        return mSensorFrameRateLimited;
+    }
+
+    public RokidCameraOnImageAvailableListener getRokidCameraOnStreamImageAvailableListener() {
+        return mRokidCameraOnStreamImageAvailableListener;
+    }
+
+    public List<RokidCameraFrameConsumer> getRokidCameraFrameConsumers() {
+        return mRokidCameraFrameConsumers;
+    }
+
+    public List<RokidCameraFrameConsumerConfig> getRokidCameraFrameConsumerConfigs() {
+        return mRokidCameraFrameConsumerConfigs;
+    }
+
+    public RokidCameraFrameLeakListener getRokidCameraFrameLeakListener() {
+        return mRokidCameraFrameLeakListener;
+    }
+
+    public long getFrameLeakThresholdMillis() {
+        return mFrameLeakThresholdMillis;
+    }
+
+    public RokidCameraLoadSheddingListener getRokidCameraLoadSheddingListener() {
+        return mRokidCameraLoadSheddingListener;
+    }
+
+    public RokidCameraMetricsListener getRokidCameraMetricsListener() {
+        return mRokidCameraMetricsListener;
+    }
+
+    public long getMetricsPeriodMillis() {
+        return mMetricsPeriodMillis;
+    }
+
     public RokidCameraSize getRokidCameraSizePreview() {
         return mRokidCameraSizePreview;
     }
@@ -205,6 +446,10 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
         return mRokidCameraSizeVideoRecorder;
     }
 
+    public RokidCameraSize getRokidCameraSizeStream() {
+        return mRokidCameraSizeStream;
+    }
+
     public RokidCameraParameters getRokidCameraParamAEMode() {
         return mRokidCameraParamAEMode;
     }
@@ -229,7 +474,18 @@ public class RokidCameraBuilder implements RokidCameraBuilderPlan {
     private void validateBuilder(RokidCameraBuilder rokidCameraBuilder) {
         RokidCameraBuilderValidator.validateImageFormat(this);
         RokidCameraBuilderValidator.validateMaxImageBuffer(this);
+        RokidCameraBuilderValidator.validateMaxBurstSize(this);
+        RokidCameraBuilderValidator.validateZeroShutterLag(this);
+        RokidCameraBuilderValidator.validatePrecaptureTimeout(this);
         RokidCameraBuilderValidator.validateImageReaderCallbackMode(this);
+        RokidCameraBuilderValidator.validateLumaListener(this);
+        RokidCameraBuilderValidator.validateUprightFrameListener(this);
+        RokidCameraBuilderValidator.validateStreamImageReader(this);
+        RokidCameraBuilderValidator.validateFrameConsumers(this);
+        RokidCameraBuilderValidator.validateFrameRate(this);
+        RokidCameraBuilderValidator.validateFrameLeakListener(this);
+        RokidCameraBuilderValidator.validateMetricsListener(this);
+        RokidCameraBuilderValidator.validateThreads(this);
         RokidCameraBuilderValidator.validateSizePreview(this);
         RokidCameraBuilderValidator.validateSizeImageReader(this);
         RokidCameraBuilderValidator.validateSizeVideoRecorder(this);
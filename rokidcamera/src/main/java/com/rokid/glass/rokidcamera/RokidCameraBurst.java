@@ -0,0 +1,123 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraBurstListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraCaptureListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shots of one {@link RokidCamera#takeBurst(int, long, RokidCameraBurstListener)}, one
+ * {@link RokidCameraCaptureTicket} each. Done when every shot is saved or failed.
+ */
+public class RokidCameraBurst {
+
+    private final RokidCameraCaptureTicket[] mTickets;
+    private final RokidCameraBurstListener mListener;
+    private final CountDownLatch mRemaining;
+    // decides which shot reports the burst, the latch alone cannot
+    private final AtomicInteger mPending;
+    private final long mStartNanos = System.nanoTime();
+
+    /**
+     * @param firstTag  : tag of the first shot, the others follow
+     * @param files     : target file of every shot, null entries in Image callback modes
+     * @param listener  : called once when every shot is done, or null
+     */
+    RokidCameraBurst(int firstTag, File[] files, RokidCameraBurstListener listener) {
+        mListener = listener;
+        mRemaining = new CountDownLatch(files.length);
+        mPending = new AtomicInteger(files.length);
+        RokidCameraCaptureListener shotListener = new RokidCameraCaptureListener() {
+            @Override
+            public void onRokidCameraCaptureCompleted(RokidCameraCaptureTicket ticket) {
+                onShotCompleted();
+            }
+        };
+        mTickets = new RokidCameraCaptureTicket[files.length];
+        for (int i = 0; i < files.length; i++) {
+            mTickets[i] = new RokidCameraCaptureTicket(firstTag + i, files[i], shotListener);
+        }
+    }
+
+    private void onShotCompleted() {
+        mRemaining.countDown();
+        if (mPending.decrementAndGet() == 0 && mListener != null) {
+            mListener.onRokidCameraBurstCompleted(this);
+        }
+    }
+
+    public int getCount() {
+        return mTickets.length;
+    }
+
+    /**
+     * @param index : shot in the order it was requested
+     */
+    public RokidCameraCaptureTicket getTicket(int index) {
+        return mTickets[index];
+    }
+
+    /**
+     * Files of the shots saved so far, in the order they were requested.
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<>();
+        for (RokidCameraCaptureTicket ticket : mTickets) {
+            if (ticket.isSuccessful() && ticket.getFile() != null) {
+                files.add(ticket.getFile());
+            }
+        }
+        return files;
+    }
+
+    public int getSucceededCount() {
+        int count = 0;
+        for (RokidCameraCaptureTicket ticket : mTickets) {
+            if (ticket.isSuccessful()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * System.nanoTime() when the burst was requested. Shot timings are
+     * {@link RokidCameraCaptureTicket#getCompletedNanos()} minus this.
+     */
+    public long getStartNanos() {
+        return mStartNanos;
+    }
+
+    /**
+     * Time from request until the last shot was done, 0 while shots are pending.
+     */
+    public long getDurationNanos() {
+        if (!isDone()) {
+            return 0;
+        }
+        long last = mStartNanos;
+        for (RokidCameraCaptureTicket ticket : mTickets) {
+            last = Math.max(last, ticket.getCompletedNanos());
+        }
+        return last - mStartNanos;
+    }
+
+    public boolean isDone() {
+        return mRemaining.getCount() == 0;
+    }
+
+    /**
+     * Wait until every shot is done.
+     *
+     * @param timeoutMillis : maximum time to wait
+     * @return : true if every shot is done
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        return mRemaining.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
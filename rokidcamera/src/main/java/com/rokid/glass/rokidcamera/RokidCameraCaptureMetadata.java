@@ -0,0 +1,119 @@
+package com.rokid.glass.rokidcamera;
+
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+
+/**
+ * Capture settings and 3A state of one frame, taken from the {@link TotalCaptureResult} of the
+ * request that produced it. Matched to the Image by sensor timestamp, see
+ * {@link RokidCameraFrame#getCaptureMetadata()}.
+ */
+public class RokidCameraCaptureMetadata {
+
+    /** Value of fields the camera did not report. */
+    public static final int UNKNOWN = -1;
+
+    private final long mTimestamp;
+    private final long mFrameNumber;
+    private final long mExposureTimeNanos;
+    private final long mFrameDurationNanos;
+    private final int mSensitivity;
+    private final int mAfState;
+    private final int mAeState;
+    private final int mAwbState;
+
+    RokidCameraCaptureMetadata(long timestamp, long frameNumber, long exposureTimeNanos, long frameDurationNanos,
+                               int sensitivity, int afState, int aeState, int awbState) {
+        mTimestamp = timestamp;
+        mFrameNumber = frameNumber;
+        mExposureTimeNanos = exposureTimeNanos;
+        mFrameDurationNanos = frameDurationNanos;
+        mSensitivity = sensitivity;
+        mAfState = afState;
+        mAeState = aeState;
+        mAwbState = awbState;
+    }
+
+    /**
+     * @return : metadata of the result, or null if it has no sensor timestamp
+     */
+    static RokidCameraCaptureMetadata fromCaptureResult(TotalCaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) {
+            return null;
+        }
+        return new RokidCameraCaptureMetadata(timestamp, result.getFrameNumber(),
+                getLong(result, CaptureResult.SENSOR_EXPOSURE_TIME),
+                getLong(result, CaptureResult.SENSOR_FRAME_DURATION),
+                getInt(result, CaptureResult.SENSOR_SENSITIVITY),
+                getInt(result, CaptureResult.CONTROL_AF_STATE),
+                getInt(result, CaptureResult.CONTROL_AE_STATE),
+                getInt(result, CaptureResult.CONTROL_AWB_STATE));
+    }
+
+    private static long getLong(CaptureResult result, CaptureResult.Key<Long> key) {
+        Long value = result.get(key);
+        return value != null ? value : UNKNOWN;
+    }
+
+    private static int getInt(CaptureResult result, CaptureResult.Key<Integer> key) {
+        Integer value = result.get(key);
+        return value != null ? value : UNKNOWN;
+    }
+
+    /**
+     * Sensor timestamp in nanoseconds, equal to {@link android.media.Image#getTimestamp()}.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * See {@link CaptureResult#getFrameNumber()}.
+     */
+    public long getFrameNumber() {
+        return mFrameNumber;
+    }
+
+    /**
+     * See {@link CaptureResult#SENSOR_EXPOSURE_TIME}.
+     */
+    public long getExposureTimeNanos() {
+        return mExposureTimeNanos;
+    }
+
+    /**
+     * See {@link CaptureResult#SENSOR_FRAME_DURATION}.
+     */
+    public long getFrameDurationNanos() {
+        return mFrameDurationNanos;
+    }
+
+    /**
+     * ISO sensitivity, see {@link CaptureResult#SENSOR_SENSITIVITY}.
+     */
+    public int getSensitivity() {
+        return mSensitivity;
+    }
+
+    /**
+     * See {@link CaptureResult#CONTROL_AF_STATE}.
+     */
+    public int getAfState() {
+        return mAfState;
+    }
+
+    /**
+     * See {@link CaptureResult#CONTROL_AE_STATE}.
+     */
+    public int getAeState() {
+        return mAeState;
+    }
+
+    /**
+     * See {@link CaptureResult#CONTROL_AWB_STATE}.
+     */
+    public int getAwbState() {
+        return mAwbState;
+    }
+}
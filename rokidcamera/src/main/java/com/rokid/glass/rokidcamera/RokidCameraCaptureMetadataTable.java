@@ -0,0 +1,88 @@
+package com.rokid.glass.rokidcamera;
+
+/**
+ * Bounded lookup table of the latest {@link RokidCameraCaptureMetadata}, by sensor timestamp.
+ * <p>
+ * Capture results are added on the camera control thread and looked up on the frame threads, in
+ * either order. When the table is full the oldest result is evicted, so results whose Image was
+ * dropped never pile up.
+ */
+class RokidCameraCaptureMetadataTable {
+
+    private final RokidCameraCaptureMetadata[] mEntries;
+    private final boolean[] mMatched;
+    private int mNext;
+    private long mEvictedCount;
+
+    /**
+     * @param capacity : number of results kept
+     */
+    RokidCameraCaptureMetadataTable(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Metadata table capacity must be at least 1: " + capacity);
+        }
+        mEntries = new RokidCameraCaptureMetadata[capacity];
+        mMatched = new boolean[capacity];
+    }
+
+    /**
+     * Add the result of a new capture, evicting the oldest one when full.
+     */
+    synchronized void put(RokidCameraCaptureMetadata metadata) {
+        if (mEntries[mNext] != null && !mMatched[mNext]) {
+            mEvictedCount++;
+        }
+        mEntries[mNext] = metadata;
+        mMatched[mNext] = false;
+        mNext = (mNext + 1) % mEntries.length;
+        notifyAll();
+    }
+
+    /**
+     * @param timestamp : sensor timestamp of the Image
+     * @return : metadata of that capture, or null if its result has not arrived or was evicted
+     */
+    synchronized RokidCameraCaptureMetadata get(long timestamp) {
+        for (int i = 0; i < mEntries.length; i++) {
+            RokidCameraCaptureMetadata metadata = mEntries[i];
+            if (metadata != null && metadata.getTimestamp() == timestamp) {
+                mMatched[i] = true;
+                return metadata;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #get(long)}, but waits for the result to arrive.
+     *
+     * @param timeoutMillis : maximum time to wait
+     */
+    synchronized RokidCameraCaptureMetadata await(long timestamp, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        RokidCameraCaptureMetadata metadata;
+        while ((metadata = get(timestamp)) == null) {
+            long remainingMillis = (deadline - System.nanoTime()) / 1000000L;
+            if (remainingMillis <= 0) {
+                return null;
+            }
+            wait(remainingMillis);
+        }
+        return metadata;
+    }
+
+    /**
+     * Results evicted before any Image asked for them.
+     */
+    synchronized long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < mEntries.length; i++) {
+            mEntries[i] = null;
+            mMatched[i] = false;
+        }
+        mNext = 0;
+    }
+}
@@ -0,0 +1,188 @@
+package com.rokid.glass.rokidcamera;
+
+import android.hardware.camera2.CaptureResult;
+
+/**
+ * 3A state machine run before a still capture: auto-focus lock, auto-exposure precapture, capture.
+ * <p>
+ * {@link #start(long, boolean)} begins waiting for the focus lock. Every capture result is then passed to
+ * {@link #onResult(Integer, Integer, long)}, which answers what to send next:
+ * <ul>
+ *     <li>{@link #ACTION_PRECAPTURE} once focus is locked but exposure has not converged,
+ *     <li>{@link #ACTION_CAPTURE} once focus is locked and exposure converged.
+ * </ul>
+ * Each wait is bounded. When the focus or exposure wait runs out the sequence captures anyway, so a
+ * camera that never locks still takes the picture. {@link #onTimeout(long)} enforces the bound when
+ * capture results stop arriving. Only used on the camera control thread.
+ */
+class RokidCameraCaptureSequence {
+
+    static final int STATE_IDLE = 0;
+    static final int STATE_WAIT_FOCUS = 1;
+    // precapture trigger sent, waiting for auto-exposure to start metering
+    static final int STATE_WAIT_PRECAPTURE = 2;
+    // waiting for auto-exposure to finish metering
+    static final int STATE_WAIT_NON_PRECAPTURE = 3;
+
+    static final int ACTION_NONE = 0;
+    static final int ACTION_PRECAPTURE = 1;
+    static final int ACTION_CAPTURE = 2;
+
+    private final long mFocusTimeoutNanos;
+    private final long mExposureTimeoutNanos;
+    private int mState = STATE_IDLE;
+    private boolean mAutoFocus;
+    private long mStartNanos;
+    private long mPhaseStartNanos;
+    // timings of the last sequence
+    private long mFocusNanos;
+    private long mExposureNanos;
+    private boolean mTimedOut;
+
+    /**
+     * @param focusTimeoutNanos    : longest wait for the focus lock
+     * @param exposureTimeoutNanos : longest wait for the exposure precapture
+     */
+    RokidCameraCaptureSequence(long focusTimeoutNanos, long exposureTimeoutNanos) {
+        mFocusTimeoutNanos = focusTimeoutNanos;
+        mExposureTimeoutNanos = exposureTimeoutNanos;
+    }
+
+    /**
+     * @param nowNanos  : System.nanoTime()
+     * @param autoFocus : false if the camera has no auto-focus, then only exposure is waited for
+     */
+    void start(long nowNanos, boolean autoFocus) {
+        mState = STATE_WAIT_FOCUS;
+        mAutoFocus = autoFocus;
+        mStartNanos = nowNanos;
+        mPhaseStartNanos = nowNanos;
+        mFocusNanos = 0;
+        mExposureNanos = 0;
+        mTimedOut = false;
+    }
+
+    /**
+     * @param afState  : CONTROL_AF_STATE of the result, null if not reported
+     * @param aeState  : CONTROL_AE_STATE of the result, null if not reported
+     * @param nowNanos : System.nanoTime()
+     * @return : {@link #ACTION_NONE}, {@link #ACTION_PRECAPTURE} or {@link #ACTION_CAPTURE}
+     */
+    int onResult(Integer afState, Integer aeState, long nowNanos) {
+        switch (mState) {
+            case STATE_WAIT_FOCUS:
+                if (!isFocusLocked(afState)) {
+                    return nowNanos - mPhaseStartNanos >= mFocusTimeoutNanos ? timeOut(nowNanos) : ACTION_NONE;
+                }
+                mFocusNanos = nowNanos - mStartNanos;
+                if (isExposureConverged(aeState)) {
+                    return capture();
+                }
+                mState = STATE_WAIT_PRECAPTURE;
+                mPhaseStartNanos = nowNanos;
+                return ACTION_PRECAPTURE;
+            case STATE_WAIT_PRECAPTURE:
+                if (aeState == null || aeState == CaptureResult.CONTROL_AE_STATE_PRECAPTURE
+                        || aeState == CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED) {
+                    mState = STATE_WAIT_NON_PRECAPTURE;
+                }
+                return nowNanos - mPhaseStartNanos >= mExposureTimeoutNanos ? timeOut(nowNanos) : ACTION_NONE;
+            case STATE_WAIT_NON_PRECAPTURE:
+                if (aeState == null || aeState != CaptureResult.CONTROL_AE_STATE_PRECAPTURE) {
+                    mExposureNanos = nowNanos - mPhaseStartNanos;
+                    return capture();
+                }
+                return nowNanos - mPhaseStartNanos >= mExposureTimeoutNanos ? timeOut(nowNanos) : ACTION_NONE;
+            default:
+                return ACTION_NONE;
+        }
+    }
+
+    /**
+     * Enforce the bound of the current wait, for when no capture result arrives.
+     *
+     * @return : {@link #ACTION_CAPTURE} if the wait ran out, otherwise {@link #ACTION_NONE}
+     */
+    int onTimeout(long nowNanos) {
+        if (mState == STATE_IDLE) {
+            return ACTION_NONE;
+        }
+        long timeoutNanos = mState == STATE_WAIT_FOCUS ? mFocusTimeoutNanos : mExposureTimeoutNanos;
+        return nowNanos - mPhaseStartNanos >= timeoutNanos ? timeOut(nowNanos) : ACTION_NONE;
+    }
+
+    /**
+     * @return : how long the current wait may still take, 0 when idle
+     */
+    long getRemainingNanos(long nowNanos) {
+        if (mState == STATE_IDLE) {
+            return 0;
+        }
+        long timeoutNanos = mState == STATE_WAIT_FOCUS ? mFocusTimeoutNanos : mExposureTimeoutNanos;
+        return Math.max(0, mPhaseStartNanos + timeoutNanos - nowNanos);
+    }
+
+    void reset() {
+        mState = STATE_IDLE;
+    }
+
+    private int timeOut(long nowNanos) {
+        mTimedOut = true;
+        if (mState == STATE_WAIT_FOCUS) {
+            mFocusNanos = nowNanos - mStartNanos;
+        } else {
+            mExposureNanos = nowNanos - mPhaseStartNanos;
+        }
+        return capture();
+    }
+
+    private int capture() {
+        mState = STATE_IDLE;
+        return ACTION_CAPTURE;
+    }
+
+    private boolean isFocusLocked(Integer afState) {
+        return !mAutoFocus || afState == null
+                || afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED
+                || afState == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED;
+    }
+
+    /**
+     * Converged, locked, or not metering at all, e.g. with auto-exposure off.
+     */
+    private static boolean isExposureConverged(Integer aeState) {
+        return aeState == null
+                || aeState == CaptureResult.CONTROL_AE_STATE_CONVERGED
+                || aeState == CaptureResult.CONTROL_AE_STATE_LOCKED
+                || aeState == CaptureResult.CONTROL_AE_STATE_INACTIVE;
+    }
+
+    int getState() {
+        return mState;
+    }
+
+    boolean isIdle() {
+        return mState == STATE_IDLE;
+    }
+
+    /**
+     * Time from start until focus locked or its wait ran out, of the last sequence.
+     */
+    long getFocusNanos() {
+        return mFocusNanos;
+    }
+
+    /**
+     * Time the exposure precapture took, 0 if it was not needed, of the last sequence.
+     */
+    long getExposureNanos() {
+        return mExposureNanos;
+    }
+
+    /**
+     * True if the last sequence captured because a wait ran out.
+     */
+    boolean isTimedOut() {
+        return mTimedOut;
+    }
+}
@@ -0,0 +1,174 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraCaptureListener;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One still capture in flight, returned by {@link RokidCamera#takeStillPicture()}.
+ * <p>
+ * The ticket is the tag of its CaptureRequest and carries its own target file, so several captures can be
+ * in flight at once. Its Image is matched to it by the sensor timestamp reported when the capture starts.
+ * Wait for it with {@link #await(long)} or get called back by a {@link RokidCameraCaptureListener}.
+ */
+public class RokidCameraCaptureTicket {
+
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_SUCCEEDED = 1;
+    public static final int STATE_FAILED = 2;
+
+    public static final long UNKNOWN_TIMESTAMP = -1;
+
+    private final int mTag;
+    private final File mFile;
+    private final RokidCameraCaptureListener mListener;
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private volatile long mTimestamp = UNKNOWN_TIMESTAMP;
+    private volatile int mState = STATE_PENDING;
+    private final long mRequestNanos = System.nanoTime();
+    private volatile long mCompletedNanos;
+    // 3A phases before the capture request, set on the camera control thread
+    private volatile long mFocusNanos;
+    private volatile long mExposureNanos;
+    private volatile boolean mPrecaptureTimedOut;
+    private volatile long mCaptureSentNanos;
+
+    /**
+     * @param tag      : number of the capture, unique per RokidCamera
+     * @param file     : where the photo is saved, null in Image callback modes
+     * @param listener : called once when the capture is done, or null
+     */
+    RokidCameraCaptureTicket(int tag, File file, RokidCameraCaptureListener listener) {
+        mTag = tag;
+        mFile = file;
+        mListener = listener;
+    }
+
+    public int getTag() {
+        return mTag;
+    }
+
+    /**
+     * Target file of the photo, null in Image callback modes.
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Sensor timestamp of the capture, {@link #UNKNOWN_TIMESTAMP} until the capture started.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return : {@link #STATE_PENDING}, {@link #STATE_SUCCEEDED} or {@link #STATE_FAILED}
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * System.nanoTime() when the picture was requested.
+     */
+    public long getRequestNanos() {
+        return mRequestNanos;
+    }
+
+    /**
+     * System.nanoTime() when the capture was done, 0 while pending.
+     */
+    public long getCompletedNanos() {
+        return mCompletedNanos;
+    }
+
+    /**
+     * Time waited for the auto-focus lock, 0 without an auto-focus phase (e.g. bursts).
+     */
+    public long getFocusDurationNanos() {
+        return mFocusNanos;
+    }
+
+    /**
+     * Time the auto-exposure precapture took, 0 if it was not needed.
+     */
+    public long getExposureDurationNanos() {
+        return mExposureNanos;
+    }
+
+    /**
+     * True if focus or exposure did not settle in time and the picture was taken anyway.
+     */
+    public boolean isPrecaptureTimedOut() {
+        return mPrecaptureTimedOut;
+    }
+
+    /**
+     * Time from sending the capture request until the capture was done, 0 if it was never sent or is pending.
+     */
+    public long getCaptureDurationNanos() {
+        long sentNanos = mCaptureSentNanos;
+        long completedNanos = mCompletedNanos;
+        return sentNanos != 0 && completedNanos != 0 ? completedNanos - sentNanos : 0;
+    }
+
+    public boolean isDone() {
+        return mState != STATE_PENDING;
+    }
+
+    public boolean isSuccessful() {
+        return mState == STATE_SUCCEEDED;
+    }
+
+    /**
+     * Wait until the capture is done.
+     *
+     * @param timeoutMillis : maximum time to wait
+     * @return : true if the capture is done, check {@link #isSuccessful()}
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        return mDone.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param focusNanos    : time waited for the auto-focus lock
+     * @param exposureNanos : time the auto-exposure precapture took
+     * @param timedOut      : a wait ran out before the capture
+     */
+    void setPrecaptureTimings(long focusNanos, long exposureNanos, boolean timedOut) {
+        mFocusNanos = focusNanos;
+        mExposureNanos = exposureNanos;
+        mPrecaptureTimedOut = timedOut;
+    }
+
+    void setCaptureSentNanos(long captureSentNanos) {
+        mCaptureSentNanos = captureSentNanos;
+    }
+
+    void setTimestamp(long timestamp) {
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Finish the capture, only the first call counts.
+     *
+     * @return : true if this call finished it
+     */
+    boolean complete(boolean successful) {
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return false;
+            }
+            mCompletedNanos = System.nanoTime();
+            mState = successful ? STATE_SUCCEEDED : STATE_FAILED;
+        }
+        mDone.countDown();
+        if (mListener != null) {
+            mListener.onRokidCameraCaptureCompleted(this);
+        }
+        return true;
+    }
+}
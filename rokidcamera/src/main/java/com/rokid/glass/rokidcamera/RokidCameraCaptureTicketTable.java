@@ -0,0 +1,87 @@
+package com.rokid.glass.rokidcamera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Still captures in flight, matched to their Images by sensor timestamp.
+ * <p>
+ * The timestamp of a capture is bound on the camera control thread when it starts, and its Image is
+ * looked up on the I/O thread. The Image may arrive first, so {@link #await(long, long)} waits for the binding.
+ */
+class RokidCameraCaptureTicketTable {
+
+    private final List<RokidCameraCaptureTicket> mTickets = new ArrayList<>();
+
+    synchronized void add(RokidCameraCaptureTicket ticket) {
+        mTickets.add(ticket);
+    }
+
+    /**
+     * @param timestamp : sensor timestamp from onCaptureStarted of the ticket's request
+     */
+    synchronized void bind(RokidCameraCaptureTicket ticket, long timestamp) {
+        ticket.setTimestamp(timestamp);
+        notifyAll();
+    }
+
+    /**
+     * Remove and return the ticket of an Image.
+     *
+     * @param timestamp : sensor timestamp of the Image
+     * @return : the ticket, or null if no capture in flight started at that time
+     */
+    synchronized RokidCameraCaptureTicket take(long timestamp) {
+        for (int i = 0; i < mTickets.size(); i++) {
+            if (mTickets.get(i).getTimestamp() == timestamp) {
+                return mTickets.remove(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #take(long)}, but waits for the capture to be bound.
+     *
+     * @param timeoutMillis : maximum time to wait
+     */
+    synchronized RokidCameraCaptureTicket await(long timestamp, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        RokidCameraCaptureTicket ticket;
+        while ((ticket = take(timestamp)) == null) {
+            long remainingMillis = (deadline - System.nanoTime()) / 1000000L;
+            if (remainingMillis <= 0 || mTickets.isEmpty()) {
+                return null;
+            }
+            wait(remainingMillis);
+        }
+        return ticket;
+    }
+
+    /**
+     * @return : true if the ticket was still in flight
+     */
+    synchronized boolean remove(RokidCameraCaptureTicket ticket) {
+        return mTickets.remove(ticket);
+    }
+
+    synchronized int size() {
+        return mTickets.size();
+    }
+
+    /**
+     * Fail every capture still in flight, e.g. when the camera closes.
+     */
+    void failAll() {
+        List<RokidCameraCaptureTicket> tickets;
+        synchronized (this) {
+            tickets = new ArrayList<>(mTickets);
+            mTickets.clear();
+            notifyAll();
+        }
+        // outside the lock, listeners may take new pictures
+        for (RokidCameraCaptureTicket ticket : tickets) {
+            ticket.complete(false);
+        }
+    }
+}
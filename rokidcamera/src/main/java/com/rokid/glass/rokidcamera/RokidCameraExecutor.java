@@ -0,0 +1,110 @@
+package com.rokid.glass.rokidcamera;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One of the RokidCamera threads: camera control, frame dispatch or file I/O.
+ * Wraps the Executor doing the work and records how long every task waited in its queue.
+ */
+class RokidCameraExecutor implements Executor {
+
+    private final String mName;
+    private final Executor mDelegate;
+    private final RokidCameraQueueTimeStats mQueueTimeStats;
+
+    /**
+     * @param name           : name for logs
+     * @param delegate       : Executor running the tasks
+     * @param queueTimeStats : stats recording the queue time of every task, kept across restarts
+     */
+    RokidCameraExecutor(String name, Executor delegate, RokidCameraQueueTimeStats queueTimeStats) {
+        mName = name;
+        mDelegate = delegate;
+        mQueueTimeStats = queueTimeStats;
+    }
+
+    /**
+     * Executor with a fixed number of threads and a bounded queue. Tasks are rejected with a
+     * RejectedExecutionException while the queue is full.
+     *
+     * @param name           : thread name prefix
+     * @param threadCount    : number of threads
+     * @param queueCapacity  : tasks that may wait
+     * @param queueTimeStats : stats recording the queue time of every task
+     */
+    static RokidCameraExecutor newBounded(final String name, int threadCount, int queueCapacity,
+                                          RokidCameraQueueTimeStats queueTimeStats) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        return new RokidCameraExecutor(name, executor, queueTimeStats);
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        final long queuedAt = System.nanoTime();
+        mDelegate.execute(new Runnable() {
+            @Override
+            public void run() {
+                mQueueTimeStats.record(System.nanoTime() - queuedAt);
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * Like {@link #execute(Runnable)}, but returns false instead of throwing when the task is rejected.
+     */
+    boolean tryExecute(Runnable task) {
+        try {
+            execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stop accepting tasks and wait for the queued ones to finish. Only has an effect on executors
+     * created by {@link #newBounded(String, int, int, RokidCameraQueueTimeStats)}.
+     *
+     * @param timeoutMillis : maximum time to wait
+     * @return : true if every task finished
+     */
+    boolean shutdown(long timeoutMillis) {
+        if (!(mDelegate instanceof ExecutorService)) {
+            return true;
+        }
+        ExecutorService executorService = (ExecutorService) mDelegate;
+        executorService.shutdown();
+        try {
+            return executorService.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    RokidCameraQueueTimeStats getQueueTimeStats() {
+        return mQueueTimeStats;
+    }
+}
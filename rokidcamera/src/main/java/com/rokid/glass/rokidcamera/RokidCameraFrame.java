@@ -0,0 +1,173 @@
+package com.rokid.glass.rokidcamera;
+
+import android.media.Image;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference-counted lease on one camera frame, shared by several
+ * {@link com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer}s.
+ * <p>
+ * Every consumer that receives the frame holds one reference and must call {@link #release()} once
+ * when it is done with the Image, on any thread. To hand the frame to another thread or keep it past
+ * another owner, take an extra reference with {@link #retain()} and release it separately. The Image
+ * is closed, and its buffer given back to the ImageReader, when the last reference is released. A
+ * slow consumer therefore only keeps its own frames alive and never blocks the other consumers.
+ * <p>
+ * Frames are counted against the ImageReader maxImages by {@link RokidCameraFrameTracker}, which also
+ * reports frames that are never released.
+ * <p>
+ * The capture settings and 3A state of the frame are available from {@link #getCaptureMetadata()}.
+ */
+public class RokidCameraFrame {
+
+    private final Image mImage;
+    private final long mTimestamp;
+    private final Runnable mCloser;
+    private final AtomicInteger mReferenceCount = new AtomicInteger(1);
+    private final RokidCameraCaptureMetadataTable mMetadataTable;
+    private volatile RokidCameraCaptureMetadata mCaptureMetadata;
+    // System.nanoTime() when the frame was handed to the consumers, for latency metrics
+    private long mDispatchNanos;
+    // System.nanoTime() when the sensor captured the frame, for the maximum frame age of consumers
+    private long mCaptureNanos;
+
+    /**
+     * @param image     : frame Image, may be null in tests
+     * @param timestamp : sensor timestamp of the frame in nanoseconds
+     * @param closer    : called once when the last reference is released, closes the Image
+     */
+    RokidCameraFrame(Image image, long timestamp, Runnable closer) {
+        this(image, timestamp, closer, null);
+    }
+
+    /**
+     * @param tracker : tracker counting this frame until it is closed, or null
+     */
+    RokidCameraFrame(Image image, long timestamp, Runnable closer, RokidCameraFrameTracker tracker) {
+        this(image, timestamp, closer, tracker, null);
+    }
+
+    /**
+     * @param metadataTable : capture results to look the metadata of this frame up in, or null
+     */
+    RokidCameraFrame(Image image, long timestamp, Runnable closer, RokidCameraFrameTracker tracker,
+                     RokidCameraCaptureMetadataTable metadataTable) {
+        mImage = image;
+        mTimestamp = timestamp;
+        mCloser = tracker != null ? tracker.register(this, timestamp, closer) : closer;
+        mMetadataTable = metadataTable;
+        mCaptureNanos = timestamp;
+    }
+
+    /**
+     * The Image of this frame. Only valid until this consumer calls {@link #release()}.
+     */
+    public Image getImage() {
+        checkValid();
+        return mImage;
+    }
+
+    /**
+     * Sensor timestamp of the frame in nanoseconds, see {@link Image#getTimestamp()}.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Capture settings and 3A state of this frame.
+     *
+     * @return : the metadata, or null if the capture result has not arrived yet or was not recorded
+     */
+    public RokidCameraCaptureMetadata getCaptureMetadata() {
+        RokidCameraCaptureMetadata metadata = mCaptureMetadata;
+        if (metadata == null && mMetadataTable != null) {
+            metadata = mMetadataTable.get(mTimestamp);
+            mCaptureMetadata = metadata;
+        }
+        return metadata;
+    }
+
+    /**
+     * Like {@link #getCaptureMetadata()}, but waits for the capture result, which may arrive after the Image.
+     *
+     * @param timeoutMillis : maximum time to wait
+     * @return : the metadata, or null if it did not arrive in time
+     */
+    public RokidCameraCaptureMetadata awaitCaptureMetadata(long timeoutMillis) throws InterruptedException {
+        RokidCameraCaptureMetadata metadata = getCaptureMetadata();
+        if (metadata == null && mMetadataTable != null) {
+            metadata = mMetadataTable.await(mTimestamp, timeoutMillis);
+            mCaptureMetadata = metadata;
+        }
+        return metadata;
+    }
+
+    /**
+     * Give back this consumer's reference. The Image is closed when every reference is released.
+     */
+    public void release() {
+        int count = mReferenceCount.decrementAndGet();
+        if (count == 0) {
+            mCloser.run();
+        } else if (count < 0) {
+            mReferenceCount.incrementAndGet();
+            throw new IllegalStateException("RokidCameraFrame released more times than it was delivered!");
+        }
+    }
+
+    /**
+     * Whether every reference has been released and the Image closed.
+     */
+    public boolean isReleased() {
+        return mReferenceCount.get() <= 0;
+    }
+
+    /**
+     * Take one more reference, e.g. before handing the frame to another thread. Every call must be
+     * matched by one {@link #release()}.
+     *
+     * @return : this frame
+     */
+    public RokidCameraFrame retain() {
+        while (true) {
+            int count = mReferenceCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("RokidCameraFrame retained after its Image was closed!");
+            }
+            if (mReferenceCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    int getReferenceCount() {
+        return mReferenceCount.get();
+    }
+
+    void setDispatchNanos(long dispatchNanos) {
+        mDispatchNanos = dispatchNanos;
+    }
+
+    long getDispatchNanos() {
+        return mDispatchNanos;
+    }
+
+    /**
+     * @param captureNanos : sensor timestamp converted to System.nanoTime(), the sensor timestamp itself by default
+     */
+    void setCaptureNanos(long captureNanos) {
+        mCaptureNanos = captureNanos;
+    }
+
+    long getCaptureNanos() {
+        return mCaptureNanos;
+    }
+
+    private void checkValid() {
+        if (isReleased()) {
+            throw new IllegalStateException("RokidCameraFrame used after its Image was closed!");
+        }
+    }
+}
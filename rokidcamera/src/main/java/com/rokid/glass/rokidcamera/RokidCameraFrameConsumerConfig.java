@@ -0,0 +1,187 @@
+package com.rokid.glass.rokidcamera;
+
+/**
+ * Queueing policy of one {@link com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer}.
+ * <p>Policies are:
+ * <ul>
+ *     <li>{@link #POLICY_LATEST_ONLY} : queue of one frame, a new frame replaces the one still waiting.
+ *     For trackers that only care about the most recent frame. Default.
+ *     <li>{@link #POLICY_BOUNDED_FIFO} : frames are delivered in order, up to {@link #setQueueCapacity(int)}
+ *     waiting. New frames are dropped while the queue is full. For recorders that need contiguous frames.
+ *     <li>{@link #POLICY_EVERY_NTH} : only every Nth frame of the stream is queued, see {@link #setFrameInterval(int)}.
+ *     Then like {@link #POLICY_BOUNDED_FIFO}.
+ * </ul>
+ * Dropped frames are released at once, so they never hold an Image for the other consumers.
+ * <p>{@link #setTargetFps(float)} limits any policy to a rate measured on sensor timestamps. Frames that
+ * no consumer and no Image listener takes are closed before a RokidCameraFrame is even created.
+ * <p>{@link #setLatencyBudgetMillis(long)} lets the consumer shed load by itself: while it takes longer than
+ * the budget from dispatch to return, only every 2nd, 3rd, ... frame is delivered, and more again once it catches up.
+ * <p>{@link #setMaxFrameAgeMillis(long)} drops frames that are older than the limit, measured from the sensor
+ * timestamp, when they are dispatched or when a consumer thread gets to them. The callback is not called for them.
+ * <p>Waiting frames are kept in a lock-free ring buffer. While it is empty the consumer threads wait with
+ * {@link #WAIT_STRATEGY_PARK} (default), {@link #WAIT_STRATEGY_YIELD} or {@link #WAIT_STRATEGY_SPIN}.
+ * Spinning and yielding react faster but keep a core busy, so only use them for 30-60 fps algorithms.
+ */
+public class RokidCameraFrameConsumerConfig {
+
+    public static final int POLICY_LATEST_ONLY = 0;
+    public static final int POLICY_BOUNDED_FIFO = 1;
+    public static final int POLICY_EVERY_NTH = 2;
+
+    public static final int WAIT_STRATEGY_PARK = 0;
+    public static final int WAIT_STRATEGY_YIELD = 1;
+    public static final int WAIT_STRATEGY_SPIN = 2;
+
+    private String mName = "consumer";
+    private int mPolicy = POLICY_LATEST_ONLY;
+    private int mQueueCapacity = 1;
+    private int mFrameInterval = 1;
+    private int mWaitStrategy = WAIT_STRATEGY_PARK;
+    private int mThreadCount = 1;
+    private float mTargetFps;
+    private long mLatencyBudgetMillis;
+    private long mMaxFrameAgeMillis;
+
+    /**
+     * @param name : name of the consumer, used for its thread
+     */
+    public RokidCameraFrameConsumerConfig setName(String name) {
+        mName = name;
+        return this;
+    }
+
+    /**
+     * @param policy : {@link #POLICY_LATEST_ONLY}, {@link #POLICY_BOUNDED_FIFO} or {@link #POLICY_EVERY_NTH}
+     */
+    public RokidCameraFrameConsumerConfig setPolicy(int policy) {
+        if (policy != POLICY_LATEST_ONLY && policy != POLICY_BOUNDED_FIFO && policy != POLICY_EVERY_NTH) {
+            throw new IllegalArgumentException("Unknown consumer policy " + policy);
+        }
+        mPolicy = policy;
+        return this;
+    }
+
+    /**
+     * @param queueCapacity : frames that may wait for the consumer, ignored by {@link #POLICY_LATEST_ONLY}
+     */
+    public RokidCameraFrameConsumerConfig setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        }
+        mQueueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * @param frameInterval : N of {@link #POLICY_EVERY_NTH}, 1 takes every frame
+     */
+    public RokidCameraFrameConsumerConfig setFrameInterval(int frameInterval) {
+        if (frameInterval < 1) {
+            throw new IllegalArgumentException("Frame interval must be at least 1: " + frameInterval);
+        }
+        mFrameInterval = frameInterval;
+        return this;
+    }
+
+    /**
+     * @param waitStrategy : {@link #WAIT_STRATEGY_PARK}, {@link #WAIT_STRATEGY_YIELD} or {@link #WAIT_STRATEGY_SPIN}
+     */
+    public RokidCameraFrameConsumerConfig setWaitStrategy(int waitStrategy) {
+        if (waitStrategy != WAIT_STRATEGY_PARK && waitStrategy != WAIT_STRATEGY_YIELD && waitStrategy != WAIT_STRATEGY_SPIN) {
+            throw new IllegalArgumentException("Unknown wait strategy " + waitStrategy);
+        }
+        mWaitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * @param threadCount : threads calling the consumer, all taking frames from the same queue.
+     *                    With more than one thread frames may finish out of order.
+     */
+    public RokidCameraFrameConsumerConfig setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        mThreadCount = threadCount;
+        return this;
+    }
+
+    /**
+     * @param targetFps : highest rate of frames queued for the consumer, by sensor timestamp.
+     *                  0 takes every frame, default.
+     */
+    public RokidCameraFrameConsumerConfig setTargetFps(float targetFps) {
+        if (!(targetFps >= 0) || Float.isInfinite(targetFps)) {
+            throw new IllegalArgumentException("Target fps must not be negative: " + targetFps);
+        }
+        mTargetFps = targetFps;
+        return this;
+    }
+
+    /**
+     * @param latencyBudgetMillis : highest smoothed time from dispatch until the consumer returns before frames
+     *                            are shed, see {@link com.rokid.glass.rokidcamera.callbacks.RokidCameraLoadSheddingListener}.
+     *                            0 never sheds, default.
+     */
+    public RokidCameraFrameConsumerConfig setLatencyBudgetMillis(long latencyBudgetMillis) {
+        if (latencyBudgetMillis < 0) {
+            throw new IllegalArgumentException("Latency budget must not be negative: " + latencyBudgetMillis);
+        }
+        mLatencyBudgetMillis = latencyBudgetMillis;
+        return this;
+    }
+
+    /**
+     * @param maxFrameAgeMillis : frames older than this since capture are released without calling the consumer,
+     *                          e.g. 50 for AR. 0 delivers frames of any age, default.
+     */
+    public RokidCameraFrameConsumerConfig setMaxFrameAgeMillis(long maxFrameAgeMillis) {
+        if (maxFrameAgeMillis < 0) {
+            throw new IllegalArgumentException("Maximum frame age must not be negative: " + maxFrameAgeMillis);
+        }
+        mMaxFrameAgeMillis = maxFrameAgeMillis;
+        return this;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Frames that may wait in the queue, always 1 for {@link #POLICY_LATEST_ONLY}.
+     */
+    public int getQueueCapacity() {
+        return mPolicy == POLICY_LATEST_ONLY ? 1 : mQueueCapacity;
+    }
+
+    /**
+     * N of {@link #POLICY_EVERY_NTH}, always 1 for the other policies.
+     */
+    public int getFrameInterval() {
+        return mPolicy == POLICY_EVERY_NTH ? mFrameInterval : 1;
+    }
+
+    public int getWaitStrategy() {
+        return mWaitStrategy;
+    }
+
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    public float getTargetFps() {
+        return mTargetFps;
+    }
+
+    public long getLatencyBudgetMillis() {
+        return mLatencyBudgetMillis;
+    }
+
+    public long getMaxFrameAgeMillis() {
+        return mMaxFrameAgeMillis;
+    }
+}
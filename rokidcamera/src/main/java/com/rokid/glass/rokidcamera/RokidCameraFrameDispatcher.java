@@ -0,0 +1,359 @@
+package com.rokid.glass.rokidcamera;
+
+import android.util.Log;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraLoadSheddingListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out of one camera stream to several {@link RokidCameraFrameConsumer}s.
+ * <p>
+ * Every consumer gets its own bounded queue, drop policy and threads, configured by
+ * {@link RokidCameraFrameConsumerConfig}. {@link #dispatch(RokidCameraFrame)} never blocks: a frame is
+ * queued for the consumers whose policy accepts it, with one reference each, and dropped for the
+ * others. The Image is closed when the last consumer releases the frame.
+ * <p>
+ * The queues are {@link RokidCameraRingBuffer}s allocated by {@link #start()}, so dispatching takes no
+ * lock and allocates nothing. {@link #dispatch(RokidCameraFrame)} must always be called from the same thread.
+ */
+class RokidCameraFrameDispatcher {
+
+    // longest wait in stop() for the consumer threads to return from the frame they are handling
+    private static final long STOP_TIMEOUT_MILLIS = 2000;
+
+    private final List<ConsumerWorker> mWorkers = new ArrayList<>();
+    private boolean mStarted;
+    private RokidCameraLatencyMetrics mLatencyMetrics;
+
+    /**
+     * Record the time from dispatch until every consumer returns. Must be called before {@link #start()}.
+     */
+    void setLatencyMetrics(RokidCameraLatencyMetrics latencyMetrics) {
+        mLatencyMetrics = latencyMetrics;
+        for (ConsumerWorker worker : mWorkers) {
+            worker.mLatencyMetrics = latencyMetrics;
+        }
+    }
+
+    /**
+     * Report the load shedding decisions of every consumer with a latency budget.
+     */
+    void setLoadSheddingListener(RokidCameraLoadSheddingListener listener) {
+        for (ConsumerWorker worker : mWorkers) {
+            worker.mLoadShedder.setListener(listener);
+        }
+    }
+
+    /**
+     * Register a consumer. Must be called before {@link #start()}.
+     */
+    void addConsumer(RokidCameraFrameConsumer consumer, RokidCameraFrameConsumerConfig config) {
+        if (mStarted) {
+            throw new IllegalStateException("Consumers must be added before the dispatcher starts!");
+        }
+        ConsumerWorker worker = new ConsumerWorker(consumer, config, mWorkers.size());
+        worker.mLatencyMetrics = mLatencyMetrics;
+        mWorkers.add(worker);
+    }
+
+    boolean hasConsumers() {
+        return !mWorkers.isEmpty();
+    }
+
+    /**
+     * Start the threads of every consumer.
+     */
+    void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        for (ConsumerWorker worker : mWorkers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Decide which consumers take the frame with this sensor timestamp, by their frame interval and
+     * target fps. Called before the Image is wrapped, so a frame no consumer takes can be closed at once.
+     *
+     * @param timestamp : sensor timestamp of the next frame
+     * @return : true if any consumer takes the frame, then it must be passed to {@link #dispatchSelected}
+     */
+    boolean select(long timestamp) {
+        boolean selected = false;
+        for (int i = 0; i < mWorkers.size(); i++) {
+            selected |= mWorkers.get(i).select(timestamp);
+        }
+        return selected;
+    }
+
+    /**
+     * {@link #select(long)} the frame, then {@link #dispatchSelected(RokidCameraFrame)} it.
+     *
+     * @param frame : new frame holding exactly the caller's reference
+     */
+    void dispatch(RokidCameraFrame frame) {
+        select(frame.getTimestamp());
+        dispatchSelected(frame);
+    }
+
+    /**
+     * Hand a frame to every consumer that selected it and whose policy accepts it. The caller's reference
+     * is released before returning, so the frame is closed right away if no consumer took it.
+     *
+     * @param frame : new frame holding exactly the caller's reference
+     */
+    void dispatchSelected(RokidCameraFrame frame) {
+        // written before the frame is published to the queues
+        frame.setDispatchNanos(System.nanoTime());
+        try {
+            for (int i = 0; i < mWorkers.size(); i++) {
+                mWorkers.get(i).offer(frame);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Stop every consumer thread and release the frames still waiting. Consumers can be started again.
+     * A consumer still handling a frame after {@link #STOP_TIMEOUT_MILLIS} is not waited for any
+     * longer; it releases that frame itself when it returns.
+     */
+    void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        for (ConsumerWorker worker : mWorkers) {
+            worker.stop();
+        }
+    }
+
+    int getQueuedCount(int consumerIndex) {
+        return mWorkers.get(consumerIndex).getQueuedCount();
+    }
+
+    long getDeliveredCount(int consumerIndex) {
+        return mWorkers.get(consumerIndex).getDeliveredCount();
+    }
+
+    long getDroppedCount(int consumerIndex) {
+        return mWorkers.get(consumerIndex).getDroppedCount();
+    }
+
+    /**
+     * Frames released without calling the consumer because they were older than its maximum frame age.
+     */
+    long getExpiredCount(int consumerIndex) {
+        return mWorkers.get(consumerIndex).mExpiredCount.get();
+    }
+
+    /**
+     * Times a thread of the consumer lost a race for a frame against another of its threads, or
+     * against the dispatcher replacing a waiting frame.
+     */
+    long getContentionCount(int consumerIndex) {
+        return mWorkers.get(consumerIndex).getContentionCount();
+    }
+
+    /**
+     * Times a thread of the consumer found its queue empty and had to wait.
+     */
+    long getWaitCount(int consumerIndex) {
+        return mWorkers.get(consumerIndex).getWaitCount();
+    }
+
+    /**
+     * Frames the consumer's load shedding skipped.
+     */
+    long getShedCount(int consumerIndex) {
+        return mWorkers.get(consumerIndex).mLoadShedder.getShedCount();
+    }
+
+    /**
+     * Only every Nth frame is delivered to the consumer because of load shedding, 1 while within budget.
+     */
+    int getShedFrameInterval(int consumerIndex) {
+        return mWorkers.get(consumerIndex).mLoadShedder.getFrameInterval();
+    }
+
+    float getTargetFps(int consumerIndex) {
+        return mWorkers.get(consumerIndex).mConfig.getTargetFps();
+    }
+
+    int getConsumerCount() {
+        return mWorkers.size();
+    }
+
+    /**
+     * Queue and threads of one consumer.
+     */
+    private static class ConsumerWorker {
+
+        private final RokidCameraFrameConsumer mConsumer;
+        private final RokidCameraFrameConsumerConfig mConfig;
+        private final AtomicLong mDeliveredCount = new AtomicLong();
+        private final AtomicLong mExpiredCount = new AtomicLong();
+        private final long mMaxFrameAgeNanos;
+        // only written by the dispatching thread
+        private volatile long mDroppedCount;
+        // decimation state and decision for the next frame, only used by the dispatching thread
+        private RokidCameraFrameRateLimiter mRateLimiter;
+        private boolean mSelected;
+        private volatile RokidCameraRingBuffer<RokidCameraFrame> mQueue;
+        private Thread[] mThreads;
+        // counters of the queues of earlier starts
+        private volatile long mContentionCount;
+        private volatile long mWaitCount;
+        private RokidCameraLatencyMetrics mLatencyMetrics;
+        private final RokidCameraLoadShedder mLoadShedder;
+
+        ConsumerWorker(RokidCameraFrameConsumer consumer, RokidCameraFrameConsumerConfig config, int consumerIndex) {
+            mConsumer = consumer;
+            mConfig = config;
+            mLoadShedder = new RokidCameraLoadShedder(consumerIndex, config.getLatencyBudgetMillis() * 1000000L);
+            mMaxFrameAgeNanos = config.getMaxFrameAgeMillis() * 1000000L;
+        }
+
+        void start() {
+            final RokidCameraRingBuffer<RokidCameraFrame> queue = new RokidCameraRingBuffer<>(
+                    mConfig.getQueueCapacity(), mConfig.getThreadCount(), mConfig.getWaitStrategy());
+            mRateLimiter = new RokidCameraFrameRateLimiter(mConfig.getTargetFps(), mConfig.getFrameInterval());
+            mThreads = new Thread[mConfig.getThreadCount()];
+            for (int i = 0; i < mThreads.length; i++) {
+                final int consumerIndex = i;
+                String name = "RokidCameraConsumer-" + mConfig.getName() + (mThreads.length > 1 ? "-" + i : "");
+                mThreads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        consume(queue, consumerIndex);
+                    }
+                }, name);
+                mThreads[i].setDaemon(true);
+            }
+            mQueue = queue;
+            for (Thread thread : mThreads) {
+                thread.start();
+            }
+        }
+
+        void stop() {
+            RokidCameraRingBuffer<RokidCameraFrame> queue = mQueue;
+            mQueue = null;
+            queue.close();
+            long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+            for (Thread thread : mThreads) {
+                if (thread == Thread.currentThread()) {
+                    continue;
+                }
+                try {
+                    thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (thread.isAlive()) {
+                    Log.w("RokidCamera", "Consumer " + thread.getName() + " still busy after "
+                            + STOP_TIMEOUT_MILLIS + " ms, not waiting for it");
+                }
+            }
+            mThreads = null;
+            RokidCameraFrame frame;
+            while ((frame = queue.poll()) != null) {
+                frame.release();
+            }
+            mContentionCount += queue.getContentionCount();
+            mWaitCount += queue.getWaitCount();
+        }
+
+        boolean select(long timestamp) {
+            mSelected = mQueue != null && mRateLimiter.accept(timestamp) && mLoadShedder.admit();
+            return mSelected;
+        }
+
+        void offer(RokidCameraFrame frame) {
+            RokidCameraRingBuffer<RokidCameraFrame> queue = mQueue;
+            if (queue == null || !mSelected) {
+                // not this consumer's turn, nothing was retained
+                return;
+            }
+            mSelected = false;
+            if (isExpired(frame)) {
+                mExpiredCount.incrementAndGet();
+                return;
+            }
+            frame.retain();
+            while (!queue.offer(frame)) {
+                if (mConfig.getPolicy() != RokidCameraFrameConsumerConfig.POLICY_LATEST_ONLY || queue.isClosed()) {
+                    // full, or stopping: a closed queue never accepts the frame
+                    mDroppedCount++;
+                    frame.release();
+                    return;
+                }
+                // replace the waiting frame, unless a consumer thread takes it first
+                RokidCameraFrame replaced = queue.poll();
+                if (replaced != null) {
+                    mDroppedCount++;
+                    replaced.release();
+                }
+            }
+        }
+
+        private void consume(RokidCameraRingBuffer<RokidCameraFrame> queue, int consumerIndex) {
+            RokidCameraFrame frame;
+            while ((frame = queue.take(consumerIndex)) != null) {
+                if (isExpired(frame)) {
+                    // fresher frames are waiting or coming, this one is of no use any more
+                    mExpiredCount.incrementAndGet();
+                    frame.release();
+                    continue;
+                }
+                mDeliveredCount.incrementAndGet();
+                long dispatchNanos = frame.getDispatchNanos();
+                try {
+                    // the consumer now owns the reference and releases it
+                    mConsumer.onRokidCameraFrameAvailable(frame);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                long latencyNanos = System.nanoTime() - dispatchNanos;
+                if (mLatencyMetrics != null) {
+                    mLatencyMetrics.record(RokidCameraLatencyMetrics.STAGE_CONSUMER, latencyNanos);
+                }
+                mLoadShedder.record(latencyNanos);
+            }
+        }
+
+        private boolean isExpired(RokidCameraFrame frame) {
+            return mMaxFrameAgeNanos > 0 && System.nanoTime() - frame.getCaptureNanos() > mMaxFrameAgeNanos;
+        }
+
+        int getQueuedCount() {
+            RokidCameraRingBuffer<RokidCameraFrame> queue = mQueue;
+            return queue != null ? queue.size() : 0;
+        }
+
+        long getDeliveredCount() {
+            return mDeliveredCount.get();
+        }
+
+        long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        long getContentionCount() {
+            RokidCameraRingBuffer<RokidCameraFrame> queue = mQueue;
+            return mContentionCount + (queue != null ? queue.getContentionCount() : 0);
+        }
+
+        long getWaitCount() {
+            RokidCameraRingBuffer<RokidCameraFrame> queue = mQueue;
+            return mWaitCount + (queue != null ? queue.getWaitCount() : 0);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.rokid.glass.rokidcamera;
+
+/**
+ * Decides which frames of the stream one receiver takes, by every-Nth decimation and a target rate.
+ * <p>
+ * The rate is measured on sensor timestamps, so delivery jitter does not change which frames are taken.
+ * A frame is taken when it is less than half a stream frame earlier than due, so a 30 fps stream
+ * limited to 10 fps takes every third frame even if the sensor jitters. Only called from the frame thread.
+ */
+class RokidCameraFrameRateLimiter {
+
+    private final int mFrameInterval;
+    private final long mPeriodNanos;
+    private long mFrameCount;
+    private long mNextNanos;
+    private long mLastNanos;
+    private boolean mStarted;
+
+    /**
+     * @param targetFps     : highest rate of taken frames, 0 for no limit
+     * @param frameInterval : only every Nth frame is considered, 1 for every frame
+     */
+    RokidCameraFrameRateLimiter(float targetFps, int frameInterval) {
+        mFrameInterval = frameInterval;
+        mPeriodNanos = targetFps > 0 ? (long) (1e9 / targetFps) : 0;
+    }
+
+    /**
+     * @param timestampNanos : sensor timestamp of the frame
+     * @return : true if the frame is taken
+     */
+    boolean accept(long timestampNanos) {
+        if (mFrameCount++ % mFrameInterval != 0) {
+            return false;
+        }
+        if (mPeriodNanos == 0) {
+            return true;
+        }
+        long frameNanos = timestampNanos - mLastNanos;
+        mLastNanos = timestampNanos;
+        if (mStarted && timestampNanos < mNextNanos - Math.min(frameNanos / 2, mPeriodNanos / 4)) {
+            return false;
+        }
+        if (!mStarted || timestampNanos >= mNextNanos + mPeriodNanos) {
+            // first frame, or the stream paused: restart the schedule instead of catching up
+            mNextNanos = timestampNanos;
+            mStarted = true;
+        }
+        mNextNanos += mPeriodNanos;
+        return true;
+    }
+
+    boolean isLimited() {
+        return mFrameInterval > 1 || mPeriodNanos > 0;
+    }
+}
@@ -0,0 +1,185 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameLeakListener;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the {@link RokidCameraFrame}s whose Image is not closed yet, against the maxImages of the
+ * ImageReader, and finds the frames that are never released.
+ * <p>
+ * A frame leaks in two ways:
+ * <ul>
+ *     <li>it is garbage collected without being released. Its Image is closed here so the buffer goes
+ *     back to the ImageReader, and the leak is reported as collected.
+ *     <li>it is held longer than the leak threshold. It is reported once, and stays open.
+ * </ul>
+ * Leaks are found by {@link #checkLeaks()}, which RokidCamera calls for every new frame.
+ */
+class RokidCameraFrameTracker {
+
+    private final int mMaxImages;
+    private final ReferenceQueue<RokidCameraFrame> mCollected = new ReferenceQueue<>();
+    private final Set<Lease> mLeases = Collections.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+    private final AtomicInteger mOutstandingCount = new AtomicInteger();
+    private final AtomicLong mLeakedCount = new AtomicLong();
+    private volatile RokidCameraFrameLeakListener mLeakListener;
+    private volatile long mLeakThresholdNanos;
+
+    /**
+     * @param maxImages : maxImages of the tracked ImageReader
+     */
+    RokidCameraFrameTracker(int maxImages) {
+        if (maxImages < 1) {
+            throw new IllegalArgumentException("maxImages must be at least 1: " + maxImages);
+        }
+        mMaxImages = maxImages;
+    }
+
+    /**
+     * Report leaks to a listener. While a listener is set, the stack trace of every new frame is kept,
+     * so only set one while debugging.
+     *
+     * @param listener            : leak listener, null to stop reporting
+     * @param leakThresholdMillis : frames held longer are reported, 0 only reports collected frames
+     */
+    void setLeakListener(RokidCameraFrameLeakListener listener, long leakThresholdMillis) {
+        if (leakThresholdMillis < 0) {
+            throw new IllegalArgumentException("Leak threshold must not be negative: " + leakThresholdMillis);
+        }
+        mLeakThresholdNanos = leakThresholdMillis * 1000000L;
+        mLeakListener = listener;
+    }
+
+    /**
+     * Start tracking a new frame. Called by the frame constructor.
+     *
+     * @param frame     : new frame
+     * @param timestamp : sensor timestamp of the frame
+     * @param closer    : closes the Image of the frame
+     * @return : closer to be run by the frame instead, which also stops the tracking
+     */
+    Runnable register(RokidCameraFrame frame, long timestamp, Runnable closer) {
+        Throwable site = mLeakListener != null
+                ? new Throwable("RokidCameraFrame " + timestamp + " created here") : null;
+        Lease lease = new Lease(frame, mCollected, timestamp, System.nanoTime(), closer, site);
+        mLeases.add(lease);
+        mOutstandingCount.incrementAndGet();
+        return lease;
+    }
+
+    /**
+     * Frames whose Image is not closed yet.
+     */
+    int getOutstandingCount() {
+        return mOutstandingCount.get();
+    }
+
+    int getMaxImages() {
+        return mMaxImages;
+    }
+
+    /**
+     * Whether every Image of the ImageReader is held, so no new Image can be acquired.
+     */
+    boolean isExhausted() {
+        return mOutstandingCount.get() >= mMaxImages;
+    }
+
+    /**
+     * Frames reported as leaked so far.
+     */
+    long getLeakedCount() {
+        return mLeakedCount.get();
+    }
+
+    /**
+     * Reclaim the frames collected without release, and report the frames held too long.
+     *
+     * @return : number of leaks found by this call
+     */
+    int checkLeaks() {
+        return checkLeaks(System.nanoTime());
+    }
+
+    int checkLeaks(long nowNanos) {
+        int leaks = 0;
+        Lease lease;
+        while ((lease = (Lease) mCollected.poll()) != null) {
+            if (lease.close()) {
+                leaks++;
+                report(lease, nowNanos, true);
+            }
+        }
+        long threshold = mLeakThresholdNanos;
+        if (threshold > 0) {
+            for (Lease held : mLeases) {
+                if (nowNanos - held.mAcquiredNanos > threshold && !held.mReported) {
+                    held.mReported = true;
+                    leaks++;
+                    report(held, nowNanos, false);
+                }
+            }
+        }
+        return leaks;
+    }
+
+    private void report(Lease lease, long nowNanos, boolean collected) {
+        mLeakedCount.incrementAndGet();
+        RokidCameraFrameLeakListener listener = mLeakListener;
+        if (listener != null) {
+            listener.onRokidCameraFrameLeaked(lease.mTimestamp, nowNanos - lease.mAcquiredNanos, collected, lease.mSite);
+        }
+    }
+
+    /**
+     * Tracking state of one frame. Only weakly reachable from the tracker, so a frame nobody references
+     * any more is enqueued to {@link #mCollected}.
+     */
+    private class Lease extends WeakReference<RokidCameraFrame> implements Runnable {
+
+        private final long mTimestamp;
+        private final long mAcquiredNanos;
+        private final Runnable mCloser;
+        private final Throwable mSite;
+        private final AtomicBoolean mClosed = new AtomicBoolean();
+        private volatile boolean mReported;
+
+        Lease(RokidCameraFrame frame, ReferenceQueue<RokidCameraFrame> queue, long timestamp,
+              long acquiredNanos, Runnable closer, Throwable site) {
+            super(frame, queue);
+            mTimestamp = timestamp;
+            mAcquiredNanos = acquiredNanos;
+            mCloser = closer;
+            mSite = site;
+        }
+
+        /**
+         * Last reference of the frame released.
+         */
+        @Override
+        public void run() {
+            close();
+        }
+
+        /**
+         * @return : true if this call closed the Image
+         */
+        boolean close() {
+            if (!mClosed.compareAndSet(false, true)) {
+                return false;
+            }
+            mLeases.remove(this);
+            mOutstandingCount.decrementAndGet();
+            mCloser.run();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.rokid.glass.rokidcamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram in nanoseconds, in the style of HdrHistogram.
+ * <p>
+ * Every power of two is split into 32 linear buckets, so percentiles are precise to about 3%, from
+ * 1 ns up to 68 s. Longer values are counted in the last bucket. {@link #record(long)} is lock-free,
+ * allocates nothing and may be called from any thread.
+ */
+public class RokidCameraLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // highest bit of a recorded value, 2^36 ns is about 68 s
+    private static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * @param valueNanos : latency in nanoseconds, negative values are ignored
+     */
+    public void record(long valueNanos) {
+        if (valueNanos < 0) {
+            return;
+        }
+        mCounts.incrementAndGet(getBucketIndex(Math.min(valueNanos, MAX_VALUE)));
+        mCount.incrementAndGet();
+        mSum.addAndGet(valueNanos);
+        long max;
+        while (valueNanos > (max = mMax.get())) {
+            if (mMax.compareAndSet(max, valueNanos)) {
+                break;
+            }
+        }
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        // value >>> shift keeps the 6 highest bits, between 32 and 63
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Highest value counted in a bucket.
+     */
+    static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long mantissa = SUB_BUCKET_COUNT + (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Number of recorded values.
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Largest recorded value in nanoseconds, exact.
+     */
+    public long getMaxNanos() {
+        return mMax.get();
+    }
+
+    /**
+     * Mean of the recorded values in nanoseconds, 0 without values.
+     */
+    public long getMeanNanos() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * Value below which the given percentage of the recorded values fall, rounded up to the bucket.
+     *
+     * @param percentile : between 0 and 100
+     * @return : latency in nanoseconds, 0 without values
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += mCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                // the last bucket also holds the values above its range
+                return i == BUCKET_COUNT - 1 ? mMax.get() : Math.min(getBucketUpperBound(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    public long getP50Nanos() {
+        return getPercentileNanos(50);
+    }
+
+    public long getP99Nanos() {
+        return getPercentileNanos(99);
+    }
+
+    /**
+     * Forget every recorded value. Values recorded at the same time may be kept partly.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+}
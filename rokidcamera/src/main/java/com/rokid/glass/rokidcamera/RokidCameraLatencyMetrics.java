@@ -0,0 +1,59 @@
+package com.rokid.glass.rokidcamera;
+
+/**
+ * Latency of every stage a frame goes through, one {@link RokidCameraLatencyHistogram} per stage.
+ * <p>Stages are:
+ * <ul>
+ *     <li>{@link #STAGE_SENSOR_TO_IMAGE_AVAILABLE} : sensor timestamp until the ImageReader callback.
+ *     Only recorded when the sensor timestamp is comparable to the system clock.
+ *     <li>{@link #STAGE_IMAGE_AVAILABLE_TO_DISPATCH} : ImageReader callback until the listeners are called,
+ *     including acquiring the Image and waiting on the frame thread.
+ *     <li>{@link #STAGE_CALLBACK} : time spent in the Image, luma and upright frame listeners.
+ *     <li>{@link #STAGE_CONVERSION} : format conversion done by RokidCamera before calling a listener.
+ *     <li>{@link #STAGE_CONSUMER} : dispatch until a {@link com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer}
+ *     returns, including its queue time. Recorded once per consumer.
+ *     <li>{@link #STAGE_SENSOR_TO_CALLBACK_RETURN} : sensor timestamp until the listeners on the frame
+ *     thread returned. How stale a frame is when an overlay is drawn from it.
+ * </ul>
+ */
+public class RokidCameraLatencyMetrics {
+
+    public static final int STAGE_SENSOR_TO_IMAGE_AVAILABLE = 0;
+    public static final int STAGE_IMAGE_AVAILABLE_TO_DISPATCH = 1;
+    public static final int STAGE_CALLBACK = 2;
+    public static final int STAGE_CONVERSION = 3;
+    public static final int STAGE_CONSUMER = 4;
+    public static final int STAGE_SENSOR_TO_CALLBACK_RETURN = 5;
+    static final int STAGE_COUNT = 6;
+
+    private final RokidCameraLatencyHistogram[] mHistograms = new RokidCameraLatencyHistogram[STAGE_COUNT];
+
+    RokidCameraLatencyMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            mHistograms[i] = new RokidCameraLatencyHistogram();
+        }
+    }
+
+    /**
+     * @param stage : one of the STAGE_* constants
+     */
+    public RokidCameraLatencyHistogram getHistogram(int stage) {
+        if (stage < 0 || stage >= STAGE_COUNT) {
+            throw new IllegalArgumentException("Unknown latency stage " + stage);
+        }
+        return mHistograms[stage];
+    }
+
+    void record(int stage, long valueNanos) {
+        mHistograms[stage].record(valueNanos);
+    }
+
+    /**
+     * Reset every stage, e.g. after a warm-up or when a new measurement starts.
+     */
+    public void reset() {
+        for (RokidCameraLatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+    }
+}
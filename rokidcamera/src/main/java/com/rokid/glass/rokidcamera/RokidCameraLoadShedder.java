@@ -0,0 +1,117 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraLoadSheddingListener;
+
+/**
+ * Feedback controller that keeps the latency of one consumer under a budget by shedding frames.
+ * <p>
+ * The latency of every delivered frame, from dispatch until the consumer returns, is smoothed with an
+ * exponential moving average. Over the budget the controller delivers only every Nth frame, one step
+ * more per adjustment, up to {@link #MAX_FRAME_INTERVAL}. Under half the budget it steps back down.
+ * After every adjustment it waits {@link #SETTLE_FRAMES} frames, so the average reflects the new rate.
+ * <p>
+ * {@link #admit()} is called by the dispatching thread, {@link #record(long)} by the consumer threads.
+ */
+class RokidCameraLoadShedder {
+
+    static final int MAX_FRAME_INTERVAL = 8;
+    static final int SETTLE_FRAMES = 8;
+    // weight of a new sample in the moving average is 1 / 2^SMOOTHING_SHIFT
+    private static final int SMOOTHING_SHIFT = 3;
+
+    private final int mConsumerIndex;
+    private final long mBudgetNanos;
+    private RokidCameraLoadSheddingListener mListener;
+    private volatile int mFrameInterval = 1;
+    // only used by the dispatching thread
+    private long mFrameCount;
+    private volatile long mShedCount;
+    // guarded by this
+    private long mSmoothedNanos;
+    private int mSamplesSinceChange;
+    private volatile long mAdjustmentCount;
+
+    /**
+     * @param consumerIndex : reported to the listener
+     * @param budgetNanos   : latency budget, 0 disables shedding
+     */
+    RokidCameraLoadShedder(int consumerIndex, long budgetNanos) {
+        mConsumerIndex = consumerIndex;
+        mBudgetNanos = budgetNanos;
+    }
+
+    void setListener(RokidCameraLoadSheddingListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return : false if the next frame is shed
+     */
+    boolean admit() {
+        int frameInterval = mFrameInterval;
+        if (frameInterval == 1) {
+            return true;
+        }
+        if (mFrameCount++ % frameInterval == 0) {
+            return true;
+        }
+        mShedCount++;
+        return false;
+    }
+
+    /**
+     * @param latencyNanos : time from dispatch until the consumer returned
+     */
+    void record(long latencyNanos) {
+        if (mBudgetNanos == 0 || latencyNanos < 0) {
+            return;
+        }
+        int reason;
+        int frameInterval;
+        long smoothedNanos;
+        synchronized (this) {
+            mSmoothedNanos = mSmoothedNanos == 0 ? latencyNanos
+                    : mSmoothedNanos + ((latencyNanos - mSmoothedNanos) >> SMOOTHING_SHIFT);
+            if (++mSamplesSinceChange < SETTLE_FRAMES) {
+                return;
+            }
+            frameInterval = mFrameInterval;
+            if (mSmoothedNanos > mBudgetNanos && frameInterval < MAX_FRAME_INTERVAL) {
+                frameInterval++;
+                reason = RokidCameraLoadSheddingListener.REASON_OVER_BUDGET;
+            } else if (mSmoothedNanos < mBudgetNanos / 2 && frameInterval > 1) {
+                frameInterval--;
+                reason = RokidCameraLoadSheddingListener.REASON_UNDER_BUDGET;
+            } else {
+                return;
+            }
+            mFrameInterval = frameInterval;
+            mSamplesSinceChange = 0;
+            mAdjustmentCount++;
+            smoothedNanos = mSmoothedNanos;
+        }
+        RokidCameraLoadSheddingListener listener = mListener;
+        if (listener != null) {
+            listener.onRokidCameraLoadShedding(mConsumerIndex, frameInterval, smoothedNanos, reason);
+        }
+    }
+
+    /**
+     * Only every Nth frame is delivered, 1 while within budget.
+     */
+    int getFrameInterval() {
+        return mFrameInterval;
+    }
+
+    long getShedCount() {
+        return mShedCount;
+    }
+
+    long getAdjustmentCount() {
+        return mAdjustmentCount;
+    }
+
+    synchronized long getSmoothedNanos() {
+        return mSmoothedNanos;
+    }
+}
@@ -0,0 +1,169 @@
+package com.rokid.glass.rokidcamera;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import com.rokid.glass.rokidcamera.utils.RokidCameraBufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of the luma (Y) plane of one camera frame, for grayscale algorithms such as
+ * SLAM or FaceID detection that never read chroma.
+ * <p>
+ * When the plane rows are not padded the view wraps the Image memory directly and nothing is
+ * copied. Padded rows are compacted into a pooled array so that {@link #getBuffer()} always
+ * holds {@code width * height} tightly packed bytes.
+ * <p>
+ * A frame is only valid inside {@link com.rokid.glass.rokidcamera.callbacks.RokidCameraOnLumaAvailableListener#onRokidCameraLumaAvailable(RokidCameraLumaFrame)}.
+ * RokidCamera invalidates it before closing the underlying Image, after which every getter throws
+ * {@link IllegalStateException}. Do not keep the buffer after the callback returns.
+ */
+public class RokidCameraLumaFrame {
+
+    private final RokidCameraBufferPool mPool;
+
+    private ByteBuffer mBuffer;
+    private int mWidth;
+    private int mHeight;
+    private long mTimestamp;
+    private boolean mCopied;
+    private boolean mValid;
+
+    // compacted copy of padded rows, and its read-only wrapper kept for the next frame
+    private byte[] mCompactData;
+    private ByteBuffer mCompactView;
+
+    RokidCameraLumaFrame(RokidCameraBufferPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Point this frame at the luma plane of a YUV_420_888 Image.
+     */
+    void wrap(Image image) {
+        Image.Plane plane = image.getPlanes()[0];
+        Rect crop = image.getCropRect();
+        wrap(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                crop.left, crop.top, crop.width(), crop.height(), image.getTimestamp());
+    }
+
+    /**
+     * Point this frame at a luma plane.
+     *
+     * @param plane     : luma plane data, starting at the first sample of the plane
+     * @param timestamp : sensor timestamp of the frame in nanoseconds
+     */
+    void wrap(ByteBuffer plane, int rowStride, int pixelStride, int cropLeft, int cropTop,
+              int width, int height, long timestamp) {
+        int start = cropTop * rowStride + cropLeft * pixelStride;
+        int size = width * height;
+
+        if (pixelStride == 1 && (rowStride == width || height == 1)) {
+            // rows are contiguous, expose the Image memory directly
+            ByteBuffer view = plane.asReadOnlyBuffer();
+            view.limit(start + size);
+            view.position(start);
+            mBuffer = view.slice();
+            mCopied = false;
+        } else {
+            byte[] data = mPool.acquire(size);
+            // own view, the Image buffer may be read by other consumers at the same time
+            ByteBuffer source = plane.duplicate();
+            int index = 0;
+            for (int row = 0; row < height; row++) {
+                source.position(start + row * rowStride);
+                if (pixelStride == 1) {
+                    source.get(data, index, width);
+                    index += width;
+                } else {
+                    int rowStart = start + row * rowStride;
+                    for (int col = 0; col < width; col++) {
+                        data[index++] = source.get(rowStart + col * pixelStride);
+                    }
+                }
+            }
+            if (data != mCompactData) {
+                mCompactData = data;
+                mCompactView = ByteBuffer.wrap(data).asReadOnlyBuffer();
+            }
+            mCompactView.clear();
+            mBuffer = mCompactView;
+            mCopied = true;
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mTimestamp = timestamp;
+        mValid = true;
+    }
+
+    /**
+     * Invalidate the frame and give any compacted copy back to the pool.
+     * Must be called before the underlying Image is closed.
+     */
+    void release() {
+        if (!mValid) {
+            return;
+        }
+        mValid = false;
+        mBuffer = null;
+        if (mCopied) {
+            mPool.release(mCompactData);
+            mCopied = false;
+        }
+    }
+
+    /**
+     * Read-only luma samples, {@link #getRowStride()} bytes per row, starting at position 0.
+     */
+    public ByteBuffer getBuffer() {
+        checkValid();
+        return mBuffer;
+    }
+
+    public int getWidth() {
+        checkValid();
+        return mWidth;
+    }
+
+    public int getHeight() {
+        checkValid();
+        return mHeight;
+    }
+
+    /**
+     * Distance in bytes between two rows of {@link #getBuffer()}. Always equal to the width,
+     * because padded rows are compacted.
+     */
+    public int getRowStride() {
+        checkValid();
+        return mWidth;
+    }
+
+    /**
+     * Sensor timestamp of the frame in nanoseconds, see {@link Image#getTimestamp()}.
+     */
+    public long getTimestamp() {
+        checkValid();
+        return mTimestamp;
+    }
+
+    /**
+     * Whether the rows had to be copied out of the Image because they were padded.
+     */
+    public boolean isCopied() {
+        checkValid();
+        return mCopied;
+    }
+
+    public boolean isValid() {
+        return mValid;
+    }
+
+    private void checkValid() {
+        if (!mValid) {
+            throw new IllegalStateException("RokidCameraLumaFrame used after its Image was closed!");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.rokid.glass.rokidcamera;
+
+/**
+ * Throughput counters of one RokidCamera. Incremented on the camera, frame and I/O threads, and
+ * read from any thread by {@link #snapshot(RokidCameraFrameDispatcher, RokidCameraFrameTracker)}.
+ */
+class RokidCameraMetrics {
+
+    final RokidCameraStripedCounter mFramesProduced = new RokidCameraStripedCounter();
+    final RokidCameraStripedCounter mFramesAcquired = new RokidCameraStripedCounter();
+    final RokidCameraStripedCounter mFramesDroppedByAcquireLatest = new RokidCameraStripedCounter();
+    final RokidCameraStripedCounter mFramesDroppedNoBuffer = new RokidCameraStripedCounter();
+    final RokidCameraStripedCounter mFramesSkippedByRate = new RokidCameraStripedCounter();
+    final RokidCameraStripedCounter mCaptureFailures = new RokidCameraStripedCounter();
+    final RokidCameraStripedCounter mIOBytesWritten = new RokidCameraStripedCounter();
+
+    /**
+     * @param dispatcher : consumers to report delivered and dropped frames of
+     * @param tracker    : frames to report outstanding Images of
+     */
+    RokidCameraMetricsSnapshot snapshot(RokidCameraFrameDispatcher dispatcher, RokidCameraFrameTracker tracker) {
+        int consumerCount = dispatcher.getConsumerCount();
+        long[] delivered = new long[consumerCount];
+        long[] dropped = new long[consumerCount];
+        int[] queueDepth = new int[consumerCount];
+        long[] shed = new long[consumerCount];
+        long[] expired = new long[consumerCount];
+        int[] shedInterval = new int[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            delivered[i] = dispatcher.getDeliveredCount(i);
+            dropped[i] = dispatcher.getDroppedCount(i);
+            queueDepth[i] = dispatcher.getQueuedCount(i);
+            shed[i] = dispatcher.getShedCount(i);
+            expired[i] = dispatcher.getExpiredCount(i);
+            shedInterval[i] = dispatcher.getShedFrameInterval(i);
+        }
+        return new RokidCameraMetricsSnapshot(System.nanoTime(), mFramesProduced.sum(), mFramesAcquired.sum(),
+                mFramesDroppedByAcquireLatest.sum(), mFramesDroppedNoBuffer.sum(), mFramesSkippedByRate.sum(),
+                delivered, dropped, queueDepth, shed, shedInterval, expired, tracker.getOutstandingCount(),
+                tracker.getMaxImages(), mCaptureFailures.sum(), mIOBytesWritten.sum());
+    }
+}
@@ -0,0 +1,194 @@
+package com.rokid.glass.rokidcamera;
+
+/**
+ * Counters of one RokidCamera at one point in time, see {@link RokidCamera#getMetricsSnapshot()}.
+ * Counters only grow while the RokidCamera lives, so rates are computed between two snapshots.
+ */
+public class RokidCameraMetricsSnapshot {
+
+    private final long mTimestampNanos;
+    private final long mFramesProduced;
+    private final long mFramesAcquired;
+    private final long mFramesDroppedByAcquireLatest;
+    private final long mFramesDroppedNoBuffer;
+    private final long mFramesSkippedByRate;
+    private final long[] mConsumerDelivered;
+    private final long[] mConsumerDropped;
+    private final int[] mConsumerQueueDepth;
+    private final long[] mConsumerShed;
+    private final int[] mConsumerShedInterval;
+    private final long[] mConsumerExpired;
+    private final int mOutstandingImages;
+    private final int mMaxImages;
+    private final long mCaptureFailures;
+    private final long mIOBytesWritten;
+
+    RokidCameraMetricsSnapshot(long timestampNanos, long framesProduced, long framesAcquired,
+                               long framesDroppedByAcquireLatest, long framesDroppedNoBuffer, long framesSkippedByRate,
+                               long[] consumerDelivered, long[] consumerDropped, int[] consumerQueueDepth,
+                               long[] consumerShed, int[] consumerShedInterval, long[] consumerExpired,
+                               int outstandingImages, int maxImages, long captureFailures, long ioBytesWritten) {
+        mTimestampNanos = timestampNanos;
+        mFramesProduced = framesProduced;
+        mFramesAcquired = framesAcquired;
+        mFramesDroppedByAcquireLatest = framesDroppedByAcquireLatest;
+        mFramesDroppedNoBuffer = framesDroppedNoBuffer;
+        mFramesSkippedByRate = framesSkippedByRate;
+        mConsumerDelivered = consumerDelivered;
+        mConsumerDropped = consumerDropped;
+        mConsumerQueueDepth = consumerQueueDepth;
+        mConsumerShed = consumerShed;
+        mConsumerShedInterval = consumerShedInterval;
+        mConsumerExpired = consumerExpired;
+        mOutstandingImages = outstandingImages;
+        mMaxImages = maxImages;
+        mCaptureFailures = captureFailures;
+        mIOBytesWritten = ioBytesWritten;
+    }
+
+    /**
+     * System.nanoTime() when the snapshot was taken.
+     */
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    /**
+     * Images the camera produced into the ImageReader, one per ImageReader callback.
+     */
+    public long getFramesProduced() {
+        return mFramesProduced;
+    }
+
+    /**
+     * Images acquired from the ImageReader and delivered to the listeners.
+     */
+    public long getFramesAcquired() {
+        return mFramesAcquired;
+    }
+
+    /**
+     * Images skipped by acquireLatestImage() because a newer Image was already waiting.
+     */
+    public long getFramesDroppedByAcquireLatest() {
+        return mFramesDroppedByAcquireLatest;
+    }
+
+    /**
+     * Images not acquired because all maxImages buffers were still held.
+     */
+    public long getFramesDroppedNoBuffer() {
+        return mFramesDroppedNoBuffer;
+    }
+
+    /**
+     * Images closed right after acquiring, because the frame rate limits of all listeners and
+     * consumers skipped them.
+     */
+    public long getFramesSkippedByRate() {
+        return mFramesSkippedByRate;
+    }
+
+    /**
+     * Frames dropped by the policies of all frame consumers.
+     */
+    public long getFramesDroppedByPolicy() {
+        long dropped = 0;
+        for (long count : mConsumerDropped) {
+            dropped += count;
+        }
+        return dropped;
+    }
+
+    /**
+     * Frames of all frame consumers released unseen because they were older than the maximum frame age.
+     */
+    public long getFramesExpired() {
+        long expired = 0;
+        for (long count : mConsumerExpired) {
+            expired += count;
+        }
+        return expired;
+    }
+
+    public int getConsumerCount() {
+        return mConsumerDelivered.length;
+    }
+
+    /**
+     * @param consumerIndex : index in the order the consumers were added to the builder
+     */
+    public long getConsumerDelivered(int consumerIndex) {
+        return mConsumerDelivered[consumerIndex];
+    }
+
+    public long getConsumerDropped(int consumerIndex) {
+        return mConsumerDropped[consumerIndex];
+    }
+
+    public int getConsumerQueueDepth(int consumerIndex) {
+        return mConsumerQueueDepth[consumerIndex];
+    }
+
+    /**
+     * Frames the load shedding of the consumer skipped to stay within its latency budget.
+     */
+    public long getConsumerShed(int consumerIndex) {
+        return mConsumerShed[consumerIndex];
+    }
+
+    /**
+     * Only every Nth frame is delivered to the consumer because of load shedding, 1 while within budget.
+     */
+    public int getConsumerShedInterval(int consumerIndex) {
+        return mConsumerShedInterval[consumerIndex];
+    }
+
+    public long getConsumerExpired(int consumerIndex) {
+        return mConsumerExpired[consumerIndex];
+    }
+
+    /**
+     * Images acquired but not closed yet, at most {@link #getMaxImages()}.
+     */
+    public int getOutstandingImages() {
+        return mOutstandingImages;
+    }
+
+    public int getMaxImages() {
+        return mMaxImages;
+    }
+
+    /**
+     * Capture requests the camera failed, or that could not be submitted.
+     */
+    public long getCaptureFailures() {
+        return mCaptureFailures;
+    }
+
+    /**
+     * Bytes of images written to storage.
+     */
+    public long getIOBytesWritten() {
+        return mIOBytesWritten;
+    }
+
+    /**
+     * Acquired frames per second since an earlier snapshot.
+     */
+    public float getAcquiredFps(RokidCameraMetricsSnapshot previous) {
+        return rate(mFramesAcquired - previous.mFramesAcquired, previous);
+    }
+
+    /**
+     * Frames per second delivered to one consumer since an earlier snapshot.
+     */
+    public float getConsumerDeliveredFps(RokidCameraMetricsSnapshot previous, int consumerIndex) {
+        return rate(mConsumerDelivered[consumerIndex] - previous.mConsumerDelivered[consumerIndex], previous);
+    }
+
+    private float rate(long count, RokidCameraMetricsSnapshot previous) {
+        long elapsedNanos = mTimestampNanos - previous.mTimestampNanos;
+        return elapsedNanos <= 0 ? 0 : count * 1e9f / elapsedNanos;
+    }
+}
@@ -0,0 +1,53 @@
+package com.rokid.glass.rokidcamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time tasks of one RokidCamera thread waited in its queue before they started running.
+ * A growing queue time means the thread is busy with something else, e.g. a slow callback.
+ */
+public class RokidCameraQueueTimeStats {
+
+    private final AtomicLong mTaskCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    void record(long queueNanos) {
+        mTaskCount.incrementAndGet();
+        mTotalNanos.addAndGet(queueNanos);
+        long max;
+        while (queueNanos > (max = mMaxNanos.get())) {
+            if (mMaxNanos.compareAndSet(max, queueNanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Number of tasks started since the last {@link #reset()}.
+     */
+    public long getTaskCount() {
+        return mTaskCount.get();
+    }
+
+    /**
+     * Average queue time in nanoseconds, 0 without tasks.
+     */
+    public long getAverageNanos() {
+        long count = mTaskCount.get();
+        return count == 0 ? 0 : mTotalNanos.get() / count;
+    }
+
+    /**
+     * Longest queue time in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    public void reset() {
+        mTaskCount.set(0);
+        mTotalNanos.set(0);
+        mMaxNanos.set(0);
+    }
+}
@@ -0,0 +1,213 @@
+package com.rokid.glass.rokidcamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pre-allocated lock-free ring buffer with one producer and several consumer threads.
+ * <p>
+ * Every slot carries a sequence number: a slot is free for the producer when its sequence equals
+ * the producer sequence, and holds an element for the consumers when it equals the consumer
+ * sequence + 1. Consumers claim elements with a CAS on the consumer sequence, so {@link #poll()} may
+ * also be called by the producer, e.g. to drop the oldest element. Nothing is allocated per element.
+ * There are at least two slots: with a single one, a claimed element not read yet would carry the
+ * same sequence as a free slot, and the producer would overwrite it.
+ * <p>
+ * Waiting consumers spin, yield or park, see {@link RokidCameraFrameConsumerConfig#setWaitStrategy(int)}.
+ *
+ * @param <E> : element type
+ */
+class RokidCameraRingBuffer<E> {
+
+    private final int mCapacity;
+    private final int mMask;
+    private final int mWaitStrategy;
+    private final AtomicReferenceArray<E> mSlots;
+    private final AtomicLongArray mSequences;
+    // next sequence to be published, only written by the producer
+    private final AtomicLong mProducerSequence = new AtomicLong();
+    // next sequence to be claimed by a consumer
+    private final AtomicLong mConsumerSequence = new AtomicLong();
+    // parked consumer threads, by consumer index
+    private final AtomicReferenceArray<Thread> mParked;
+    private final AtomicLong mContentionCount = new AtomicLong();
+    private final AtomicLong mWaitCount = new AtomicLong();
+    private volatile boolean mClosed;
+
+    /**
+     * @param capacity      : elements the buffer can hold
+     * @param consumerCount : number of threads calling {@link #take(int)}
+     * @param waitStrategy  : one of RokidCameraFrameConsumerConfig.WAIT_STRATEGY_*
+     */
+    RokidCameraRingBuffer(int capacity, int consumerCount, int waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 1: " + capacity);
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mCapacity = capacity;
+        mMask = size - 1;
+        mWaitStrategy = waitStrategy;
+        mSlots = new AtomicReferenceArray<>(size);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+        mParked = new AtomicReferenceArray<>(consumerCount);
+    }
+
+    /**
+     * Publish an element. Must only be called by the producer thread.
+     *
+     * @return : false if the buffer is full or closed
+     */
+    boolean offer(E element) {
+        if (mClosed) {
+            return false;
+        }
+        long sequence = mProducerSequence.get();
+        if (sequence - mConsumerSequence.get() >= mCapacity) {
+            return false;
+        }
+        int index = (int) sequence & mMask;
+        if (mSequences.get(index) != sequence) {
+            // a consumer claimed the slot but has not read it yet
+            return false;
+        }
+        mSlots.lazySet(index, element);
+        mSequences.set(index, sequence + 1);
+        mProducerSequence.set(sequence + 1);
+        wakeConsumers();
+        return true;
+    }
+
+    /**
+     * Claim the oldest element without waiting.
+     *
+     * @return : the element, or null if the buffer is empty
+     */
+    E poll() {
+        while (true) {
+            long sequence = mConsumerSequence.get();
+            int index = (int) sequence & mMask;
+            long difference = mSequences.get(index) - (sequence + 1);
+            if (difference == 0) {
+                if (mConsumerSequence.compareAndSet(sequence, sequence + 1)) {
+                    E element = mSlots.get(index);
+                    mSlots.lazySet(index, null);
+                    mSequences.set(index, sequence + mMask + 1);
+                    return element;
+                }
+                mContentionCount.incrementAndGet();
+            } else if (difference < 0) {
+                return null;
+            }
+            // otherwise another consumer moved on, try the next sequence
+        }
+    }
+
+    /**
+     * Claim the oldest element, waiting with the wait strategy while the buffer is empty.
+     *
+     * @param consumerIndex : index of the calling consumer thread, below consumerCount
+     * @return : the element, or null once the buffer is closed
+     */
+    E take(int consumerIndex) {
+        boolean waited = false;
+        while (!mClosed) {
+            E element = poll();
+            if (element != null) {
+                return element;
+            }
+            if (!waited) {
+                waited = true;
+                mWaitCount.incrementAndGet();
+            }
+            if (mWaitStrategy == RokidCameraFrameConsumerConfig.WAIT_STRATEGY_YIELD) {
+                Thread.yield();
+            } else if (mWaitStrategy == RokidCameraFrameConsumerConfig.WAIT_STRATEGY_PARK) {
+                park(consumerIndex);
+            }
+        }
+        return null;
+    }
+
+    private void park(int consumerIndex) {
+        mParked.set(consumerIndex, Thread.currentThread());
+        // check again after announcing, the producer may have published in between
+        if (isEmpty() && !mClosed) {
+            LockSupport.park(this);
+        }
+        mParked.set(consumerIndex, null);
+    }
+
+    private void wakeConsumers() {
+        for (int i = 0; i < mParked.length(); i++) {
+            Thread thread = mParked.get(i);
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Wake every consumer, {@link #take(int)} returns null from now on. Elements still in the buffer
+     * can be drained with {@link #poll()}.
+     */
+    void close() {
+        mClosed = true;
+        wakeConsumers();
+    }
+
+    boolean isClosed() {
+        return mClosed;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Elements published but not claimed yet.
+     */
+    int size() {
+        long consumed = mConsumerSequence.get();
+        return (int) Math.max(0, mProducerSequence.get() - consumed);
+    }
+
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Number of elements published so far.
+     */
+    long getProducerSequence() {
+        return mProducerSequence.get();
+    }
+
+    /**
+     * Number of elements claimed so far.
+     */
+    long getConsumerSequence() {
+        return mConsumerSequence.get();
+    }
+
+    /**
+     * Times a claim lost the CAS against another consumer.
+     */
+    long getContentionCount() {
+        return mContentionCount.get();
+    }
+
+    /**
+     * Times a consumer found the buffer empty and had to wait.
+     */
+    long getWaitCount() {
+        return mWaitCount.get();
+    }
+}
@@ -0,0 +1,41 @@
+package com.rokid.glass.rokidcamera;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that many threads can increment without contending on one cache line.
+ * <p>
+ * Every thread adds to one of several padded cells picked by its thread id, and {@link #sum()} adds
+ * the cells up. Like java.util.concurrent.atomic.LongAdder, which is only available from API 24.
+ */
+class RokidCameraStripedCounter {
+
+    // longs per cell, so every cell is on its own 64 byte cache line
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+    private static int stripeCount() {
+        int processors = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 16));
+        int stripes = Integer.highestOneBit(processors);
+        return stripes < processors ? stripes << 1 : stripes;
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        mCells.addAndGet(stripe * PADDING, delta);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
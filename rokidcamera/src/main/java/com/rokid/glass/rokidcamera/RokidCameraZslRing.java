@@ -0,0 +1,129 @@
+package com.rokid.glass.rokidcamera;
+
+import android.hardware.camera2.CaptureResult;
+
+/**
+ * Bounded ring of the most recent full resolution frames for zero shutter lag capture.
+ * <p>
+ * The ring holds one reference on each frame, so its memory is capped at capacity Images. Adding a frame
+ * to a full ring releases the oldest one. On a shutter press {@link #acquireBest()} picks the frame to save:
+ * among the frames whose auto-focus and auto-exposure had converged, the one with the shortest exposure,
+ * which has the least motion blur, and the newest of those. Without any converged frame it takes the newest.
+ * <p>
+ * Frames are added on the frame thread and picked on the thread calling
+ * {@link RokidCamera#takeStillPicture()}, so the ring is guarded by its own lock.
+ */
+class RokidCameraZslRing {
+
+    private final RokidCameraFrame[] mFrames;
+    // index of the oldest frame
+    private int mHead;
+    private int mSize;
+
+    /**
+     * @param capacity : frames kept, each holds one ImageReader buffer
+     */
+    RokidCameraZslRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("ZSL ring capacity must be at least 1: " + capacity);
+        }
+        mFrames = new RokidCameraFrame[capacity];
+    }
+
+    /**
+     * Keep a new frame, releasing the oldest one if the ring is full.
+     *
+     * @param frame : new frame, the ring takes over the caller's reference
+     */
+    void add(RokidCameraFrame frame) {
+        RokidCameraFrame evicted = null;
+        synchronized (this) {
+            if (mSize == mFrames.length) {
+                evicted = mFrames[mHead];
+                mFrames[mHead] = frame;
+                mHead = (mHead + 1) % mFrames.length;
+            } else {
+                mFrames[(mHead + mSize) % mFrames.length] = frame;
+                mSize++;
+            }
+            // capture results arrive after their Image, match them before the table evicts them
+            for (int i = 0; i < mSize; i++) {
+                mFrames[(mHead + i) % mFrames.length].getCaptureMetadata();
+            }
+        }
+        if (evicted != null) {
+            evicted.release();
+        }
+    }
+
+    /**
+     * @return : the best frame with an extra reference the caller must release, or null if the ring is empty
+     */
+    synchronized RokidCameraFrame acquireBest() {
+        RokidCameraFrame best = null;
+        long bestExposure = Long.MAX_VALUE;
+        // newest first, so ties keep the newest frame
+        for (int i = mSize - 1; i >= 0; i--) {
+            RokidCameraFrame frame = mFrames[(mHead + i) % mFrames.length];
+            RokidCameraCaptureMetadata metadata = frame.getCaptureMetadata();
+            if (metadata == null || !isConverged(metadata)) {
+                continue;
+            }
+            long exposure = metadata.getExposureTimeNanos() == RokidCameraCaptureMetadata.UNKNOWN
+                    ? Long.MAX_VALUE - 1 : metadata.getExposureTimeNanos();
+            if (exposure < bestExposure) {
+                best = frame;
+                bestExposure = exposure;
+            }
+        }
+        if (best == null && mSize > 0) {
+            best = mFrames[(mHead + mSize - 1) % mFrames.length];
+        }
+        return best != null ? best.retain() : null;
+    }
+
+    /**
+     * Auto-focus and auto-exposure settled. Cameras without them report inactive or nothing.
+     */
+    static boolean isConverged(RokidCameraCaptureMetadata metadata) {
+        int afState = metadata.getAfState();
+        boolean focused = afState == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED
+                || afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED
+                || afState == CaptureResult.CONTROL_AF_STATE_INACTIVE
+                || afState == RokidCameraCaptureMetadata.UNKNOWN;
+        int aeState = metadata.getAeState();
+        boolean exposed = aeState == CaptureResult.CONTROL_AE_STATE_CONVERGED
+                || aeState == CaptureResult.CONTROL_AE_STATE_LOCKED
+                || aeState == CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED
+                || aeState == CaptureResult.CONTROL_AE_STATE_INACTIVE
+                || aeState == RokidCameraCaptureMetadata.UNKNOWN;
+        return focused && exposed;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    int getCapacity() {
+        return mFrames.length;
+    }
+
+    /**
+     * Release every frame, e.g. before the ImageReader is closed.
+     */
+    void clear() {
+        RokidCameraFrame[] frames;
+        synchronized (this) {
+            frames = new RokidCameraFrame[mSize];
+            for (int i = 0; i < mSize; i++) {
+                frames[i] = mFrames[(mHead + i) % mFrames.length];
+                mFrames[(mHead + i) % mFrames.length] = null;
+            }
+            mHead = 0;
+            mSize = 0;
+        }
+        for (RokidCameraFrame frame : frames) {
+            frame.release();
+        }
+    }
+}
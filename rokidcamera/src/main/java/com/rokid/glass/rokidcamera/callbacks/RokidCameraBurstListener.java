@@ -0,0 +1,15 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+import com.rokid.glass.rokidcamera.RokidCameraBurst;
+
+/**
+ * Callback when every shot of {@link com.rokid.glass.rokidcamera.RokidCamera#takeBurst(int, long, RokidCameraBurstListener)} is done.
+ */
+public interface RokidCameraBurstListener {
+    /**
+     * Callback on the thread that finished the last shot, usually an I/O thread.
+     *
+     * @param burst : files and timings of every shot, some may have failed
+     */
+    void onRokidCameraBurstCompleted(RokidCameraBurst burst);
+}
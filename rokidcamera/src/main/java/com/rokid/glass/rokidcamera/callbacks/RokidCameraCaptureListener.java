@@ -0,0 +1,17 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+import com.rokid.glass.rokidcamera.RokidCameraCaptureTicket;
+
+/**
+ * Callback when one still capture of {@link com.rokid.glass.rokidcamera.RokidCamera#takeStillPicture(RokidCameraCaptureListener)}
+ * is done.
+ */
+public interface RokidCameraCaptureListener {
+    /**
+     * Callback on the I/O thread after the photo is saved, or on the camera control thread when the capture
+     * result arrives in Image callback modes or the capture failed.
+     *
+     * @param ticket : the ticket returned by takeStillPicture, check {@link RokidCameraCaptureTicket#isSuccessful()}
+     */
+    void onRokidCameraCaptureCompleted(RokidCameraCaptureTicket ticket);
+}
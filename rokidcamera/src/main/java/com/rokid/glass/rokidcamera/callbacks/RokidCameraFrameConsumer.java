@@ -0,0 +1,18 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+import com.rokid.glass.rokidcamera.RokidCameraFrame;
+
+/**
+ * One of several consumers of the same camera stream, e.g. FaceID, landmark tracking and a
+ * telemetry recorder. Every consumer runs on its own thread with its own queue, see
+ * {@link com.rokid.glass.rokidcamera.RokidCameraFrameConsumerConfig}.
+ */
+public interface RokidCameraFrameConsumer {
+    /**
+     * Callback when a frame is available for this consumer.
+     *
+     * @param frame : shared frame, call {@link RokidCameraFrame#release()} once when done with it,
+     *              from this callback or later from any thread
+     */
+    void onRokidCameraFrameAvailable(RokidCameraFrame frame);
+}
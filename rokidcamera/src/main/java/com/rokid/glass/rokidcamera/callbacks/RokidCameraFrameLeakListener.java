@@ -0,0 +1,18 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+/**
+ * Callback for {@link com.rokid.glass.rokidcamera.RokidCameraFrame}s that are not released.
+ * Every unreleased frame keeps one ImageReader buffer, and once maxImages are held the camera stream stalls.
+ */
+public interface RokidCameraFrameLeakListener {
+    /**
+     * Callback when a frame leaked.
+     *
+     * @param timestamp   : sensor timestamp of the frame in nanoseconds
+     * @param heldNanos   : how long the frame has been held
+     * @param collected   : true if the frame was garbage collected without being released, its Image has
+     *                    now been closed by RokidCamera. False if it is still held longer than the leak threshold.
+     * @param acquireSite : stack trace of where the frame was created
+     */
+    void onRokidCameraFrameLeaked(long timestamp, long heldNanos, boolean collected, Throwable acquireSite);
+}
@@ -0,0 +1,23 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+/**
+ * Callback when the delivery rate of a {@link RokidCameraFrameConsumer} is stepped down or back up to keep
+ * its latency under the budget of {@link com.rokid.glass.rokidcamera.RokidCameraFrameConsumerConfig#setLatencyBudgetMillis(long)}.
+ */
+public interface RokidCameraLoadSheddingListener {
+
+    // smoothed latency went over the budget, fewer frames are delivered
+    int REASON_OVER_BUDGET = 0;
+    // smoothed latency stayed under half the budget, more frames are delivered again
+    int REASON_UNDER_BUDGET = 1;
+
+    /**
+     * Callback on the consumer thread that finished the frame, so it must return quickly.
+     *
+     * @param consumerIndex : index in the order the consumers were added to the builder
+     * @param frameInterval : only every Nth selected frame is delivered from now on, 1 for every frame
+     * @param latencyNanos  : smoothed time from dispatch until the consumer returned
+     * @param reason        : {@link #REASON_OVER_BUDGET} or {@link #REASON_UNDER_BUDGET}
+     */
+    void onRokidCameraLoadShedding(int consumerIndex, int frameInterval, long latencyNanos, int reason);
+}
@@ -0,0 +1,16 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+import com.rokid.glass.rokidcamera.RokidCameraMetricsSnapshot;
+
+/**
+ * Periodic callback with the throughput counters of RokidCamera.
+ */
+public interface RokidCameraMetricsListener {
+    /**
+     * Callback on one of the RokidCamera I/O threads once per period. A slow callback holds up
+     * image saving, so it should still return quickly.
+     *
+     * @param snapshot : counters now, compare with the previous snapshot for rates
+     */
+    void onRokidCameraMetrics(RokidCameraMetricsSnapshot snapshot);
+}
@@ -0,0 +1,16 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+import com.rokid.glass.rokidcamera.RokidCameraLumaFrame;
+
+/**
+ * Luma-only callback for grayscale algorithms. RokidCamera will send the Y plane of every
+ * YUV_420_888 Image back to user without converting or copying the chroma planes.
+ */
+public interface RokidCameraOnLumaAvailableListener {
+    /**
+     * Callback when the luma plane of a camera frame is available.
+     *
+     * @param lumaFrame : read-only luma view, only valid until this callback returns
+     */
+    void onRokidCameraLumaAvailable(RokidCameraLumaFrame lumaFrame);
+}
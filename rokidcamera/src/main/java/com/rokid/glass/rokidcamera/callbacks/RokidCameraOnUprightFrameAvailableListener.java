@@ -0,0 +1,17 @@
+package com.rokid.glass.rokidcamera.callbacks;
+
+/**
+ * NV21 callback for algorithms that need upright frames. RokidCamera will rotate every
+ * YUV_420_888 Image by the device rotation (and mirror it when asked) before sending it back to user.
+ */
+public interface RokidCameraOnUprightFrameAvailableListener {
+    /**
+     * Callback when an upright NV21 frame is available.
+     *
+     * @param nv21      : NV21 data, pooled and only valid until this callback returns
+     * @param width     : width of the upright frame
+     * @param height    : height of the upright frame
+     * @param timestamp : sensor timestamp of the frame in nanoseconds
+     */
+    void onRokidCameraUprightFrameAvailable(byte[] nv21, int width, int height, long timestamp);
+}
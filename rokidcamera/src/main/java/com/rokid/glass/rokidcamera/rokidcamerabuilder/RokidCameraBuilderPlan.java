@@ -7,8 +7,17 @@ import android.support.annotation.Nullable;
 
 import com.rokid.glass.rokidcamera.RokidCameraBuilder;
 import com.rokid.glass.rokidcamera.RokidCamera;
+import com.rokid.glass.rokidcamera.RokidCameraFrame;
+import com.rokid.glass.rokidcamera.RokidCameraFrameConsumerConfig;
+import com.rokid.glass.rokidcamera.RokidCameraLumaFrame;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameLeakListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraMetricsListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraIOListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraLoadSheddingListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnImageAvailableListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnLumaAvailableListener;
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraOnUprightFrameAvailableListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraStateListener;
 import com.rokid.glass.rokidcamera.callbacks.RokidCameraVideoRecordingListener;
 import com.rokid.glass.rokidcamera.utils.RokidCameraParameters;
@@ -49,12 +58,14 @@ public interface RokidCameraBuilderPlan {
      *     <li>Uses {@link ImageReader#acquireLatestImage()} and will use default path (/sdcard/DCIM/Camera/)
      *     <li>Callback {@link RokidCameraIOListener#onRokidCameraFileSaved()} is called when saving is done
      *     <li>{@link RokidCameraOnImageAvailableListener} will NOT be called and can be null
+     *     <li>The ImageReader only receives still captures, never preview frames
      * </ul>
      * <p>Mode {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK}
      * <ul>
      *      <li>Uses {@link ImageReader#acquireLatestImage()} and will call {@link RokidCameraOnImageAvailableListener#onRokidCameraImageAvailable(Image)}
      *      to send Image back.
      *      <li>{@link RokidCameraIOListener} will NOT be called and can be null.
+     *      <li>The ImageReader only receives still captures, never preview frames.
      * </ul>
      * <p>Mode {@link RokidCamera#STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK} :
      * <ul>
@@ -77,6 +88,135 @@ public interface RokidCameraBuilderPlan {
                                                               @Nullable RokidCameraOnImageAvailableListener rokidCameraOnImageAvailableListener,
                                                               @Nullable RokidCameraIOListener rokidCameraIOListener);
 
+    /**
+     * Assign callback for the luma (Y) plane of every Image, for grayscale algorithms.
+     * <ul>
+     *     <li>Requires {@link android.graphics.ImageFormat#YUV_420_888} and an Image mode with callback:
+     *     {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK} or {@link RokidCamera#STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK}
+     *     <li>Unpadded luma rows are exposed without any copy. Padded rows are compacted into a pooled buffer.
+     *     <li>The {@link RokidCameraLumaFrame} is only valid until the callback returns.
+     *     <li>Can be used instead of, or together with, {@link RokidCameraOnImageAvailableListener}.
+     * </ul>
+     *
+     * @param rokidCameraOnLumaAvailableListener : listener from Activity
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setRokidCameraOnLumaAvailableListener(@NonNull RokidCameraOnLumaAvailableListener rokidCameraOnLumaAvailableListener);
+
+    /**
+     * Assign callback for upright NV21 frames. RokidCamera rotates every Image by the same device rotation
+     * it uses for JPEG orientation, so algorithms do not have to rotate frames themselves.
+     * <ul>
+     *     <li>Requires {@link android.graphics.ImageFormat#YUV_420_888} and an Image mode with callback:
+     *     {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK} or {@link RokidCamera#STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK}
+     *     <li>Width and height are swapped when the rotation is 90 or 270 degrees.
+     *     <li>The NV21 array is pooled and only valid until the callback returns.
+     * </ul>
+     *
+     * @param rokidCameraOnUprightFrameAvailableListener : listener from Activity
+     * @param mirrored : also flip the upright frame horizontally
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setRokidCameraOnUprightFrameAvailableListener(@NonNull RokidCameraOnUprightFrameAvailableListener rokidCameraOnUprightFrameAvailableListener,
+                                                                     boolean mirrored);
+
+    /**
+     * Assign callback for a low-resolution YUV_420_888 stream running next to still capture.
+     * <ul>
+     *     <li>Only for {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_NO_CALLBACK} and {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK},
+     *     where the main ImageReader only receives still captures.
+     *     <li>The stream is fed by the repeating preview request, the still ImageReader is not.
+     *     <li>Size must be one of the algorithm ImageReader sizes, e.g. {@link RokidCameraSize#SIZE_IMAGE_READER_ALGORITHM_SLAM}.
+     *     <li>The Image is closed after the callback returns.
+     * </ul>
+     *
+     * @param rokidCameraSizeStream : resolution of the stream
+     * @param rokidCameraOnStreamImageAvailableListener : listener from Activity
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setRokidCameraOnStreamImageAvailableListener(@NonNull RokidCameraSize rokidCameraSizeStream,
+                                                                    @NonNull RokidCameraOnImageAvailableListener rokidCameraOnStreamImageAvailableListener);
+
+    /**
+     * Add one more consumer of the ImageReader stream. Can be called several times, e.g. for FaceID,
+     * landmark tracking and a telemetry recorder on the same frames.
+     * <ul>
+     *     <li>Requires an Image mode with callback:
+     *     {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK} or {@link RokidCamera#STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK}
+     *     <li>Every consumer runs on its own threads with its own bounded lock-free queue and drop policy.
+     *     <li>Every consumer must call {@link RokidCameraFrame#release()} once per frame. The Image is closed
+     *     when the last consumer releases it. To keep the frame on another thread, call
+     *     {@link RokidCameraFrame#retain()} first and release that reference there.
+     * </ul>
+     *
+     * @param rokidCameraFrameConsumer : consumer from Activity
+     * @param rokidCameraFrameConsumerConfig : queue policy of this consumer
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder addRokidCameraFrameConsumer(@NonNull RokidCameraFrameConsumer rokidCameraFrameConsumer,
+                                                   @NonNull RokidCameraFrameConsumerConfig rokidCameraFrameConsumerConfig);
+
+    /**
+     * Report {@link RokidCameraFrame}s that are never released. Every unreleased frame holds one of the
+     * {@link #setMaximumImages(int)} Image buffers, and the stream stops once all of them are held.
+     * <ul>
+     *     <li>Frames garbage collected without release are reported, and their Image is closed.
+     *     <li>Frames held longer than leakThresholdMillis are reported once, 0 disables this check.
+     *     <li>The creation stack trace of every frame is kept, so only use this while debugging.
+     * </ul>
+     *
+     * @param rokidCameraFrameLeakListener : listener from Activity
+     * @param leakThresholdMillis : age in milliseconds after which a held frame is reported
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setRokidCameraFrameLeakListener(@NonNull RokidCameraFrameLeakListener rokidCameraFrameLeakListener,
+                                                       long leakThresholdMillis);
+
+    /**
+     * Report when a RokidCameraFrameConsumer with {@link RokidCameraFrameConsumerConfig#setLatencyBudgetMillis(long)}
+     * sheds load or takes more frames again. The current state is also in {@link RokidCamera#getMetricsSnapshot()}.
+     *
+     * @param rokidCameraLoadSheddingListener : listener from Activity
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setRokidCameraLoadSheddingListener(@NonNull RokidCameraLoadSheddingListener rokidCameraLoadSheddingListener);
+
+    /**
+     * Report throughput counters periodically on a RokidCamera I/O thread, while the camera is started.
+     * The same counters can be polled from any thread with {@link RokidCamera#getMetricsSnapshot()}.
+     *
+     * @param rokidCameraMetricsListener : listener from Activity
+     * @param periodMillis : milliseconds between two reports, at least 100
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setRokidCameraMetricsListener(@NonNull RokidCameraMetricsListener rokidCameraMetricsListener,
+                                                     long periodMillis);
+
+    /**
+     * Limit the frames handed to the Image, luma and upright frame listeners in
+     * {@link RokidCamera#STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK}, e.g. 5-10 fps for FaceID on a 30 fps stream.
+     * Frames are chosen by sensor timestamp. Frames that neither these listeners nor any
+     * RokidCameraFrameConsumer take are closed right away, before any conversion. Consumers are limited
+     * by {@link RokidCameraFrameConsumerConfig#setTargetFps(float)}. Default takes every frame.
+     *
+     * @param targetFps : highest rate of frames, 0 for no limit
+     * @param frameInterval : only every Nth frame is taken, 1 for every frame
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setImageListenerFrameRate(float targetFps, int frameInterval);
+
+    /**
+     * Lower the sensor frame rate to the target fps of the only RokidCameraFrameConsumer, by setting
+     * {@link android.hardware.camera2.CaptureRequest#CONTROL_AE_TARGET_FPS_RANGE} to the slowest range the
+     * camera supports that still reaches it. The sensor then produces fewer frames instead of dropping them,
+     * which also slows down the preview. Requires {@link RokidCamera#STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK}
+     * and exactly one consumer with a target fps. Disabled by default.
+     *
+     * @param sensorFrameRateLimited : enabled if set to TRUE
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setSensorFrameRateLimited(boolean sensorFrameRateLimited);
+
     /**
      * Change visibility of Camera Preview.
      * Camera Preview is disabled by default.
@@ -108,6 +248,72 @@ public interface RokidCameraBuilderPlan {
      */
     RokidCameraBuilder setMaximumImages(int maxImages);
 
+    /**
+     * Allow {@link RokidCamera#takeBurst(int, long, com.rokid.glass.rokidcamera.callbacks.RokidCameraBurstListener)}
+     * with up to maxBurstSize shots. The still ImageReader is created with at least that many buffers and the
+     * I/O queue holds a whole burst, so no shot is dropped. Only for still photo modes. Default is 0, no bursts.
+     *
+     * @param maxBurstSize : most shots of one burst, between 0 and 20
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setMaximumBurstSize(int maxBurstSize);
+
+    /**
+     * Zero shutter lag: the ImageReader receives every preview frame and the latest ringSize full resolution
+     * frames are kept with their capture metadata. {@link RokidCamera#takeStillPicture()} then saves the
+     * recent frame with converged auto-focus and auto-exposure and the shortest exposure, without an
+     * auto-focus lock or a new capture request.
+     * <ul>
+     *     <li>Only for {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_NO_CALLBACK}, and not together with bursts.
+     *     <li>Memory is capped at ringSize + 2 full resolution Images of the ImageReader.
+     * </ul>
+     *
+     * @param ringSize : frames kept, between 1 and 8, 0 disables zero shutter lag (default)
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setZeroShutterLag(int ringSize);
+
+    /**
+     * Bound the 3A sequence of {@link RokidCamera#takeStillPicture()}: wait at most focusTimeoutMillis for the
+     * auto-focus lock and at most exposureTimeoutMillis for the auto-exposure precapture. When a wait runs out
+     * the picture is taken anyway, see {@link com.rokid.glass.rokidcamera.RokidCameraCaptureTicket#isPrecaptureTimedOut()}.
+     * Default is 1000 ms for each.
+     *
+     * @param focusTimeoutMillis    : longest wait for the auto-focus lock, between 1 and 10000 ms
+     * @param exposureTimeoutMillis : longest wait for the auto-exposure precapture, between 1 and 10000 ms
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setPrecaptureTimeout(long focusTimeoutMillis, long exposureTimeoutMillis);
+
+    /**
+     * Priority of the camera control thread, which handles CameraDevice and capture session callbacks
+     * and auto-focus. Default is {@link android.os.Process#THREAD_PRIORITY_DEFAULT}.
+     *
+     * @param priority : Linux priority from {@link android.os.Process}, between -20 and 19
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setCameraControlThreadPriority(int priority);
+
+    /**
+     * Priority of the frame thread, which receives ImageReader callbacks and calls the Image listeners.
+     * Slow Image listeners only delay frames, never camera control. Default is
+     * {@link android.os.Process#THREAD_PRIORITY_DEFAULT}.
+     *
+     * @param priority : Linux priority from {@link android.os.Process}, between -20 and 19
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setFrameDispatchThreadPriority(int priority);
+
+    /**
+     * Threads saving images in {@link RokidCamera#STILL_PHOTO_MODE_SINGLE_NO_CALLBACK}.
+     * Images arriving while queueCapacity images wait to be saved are dropped. Default is 1 thread and 4 images.
+     *
+     * @param threadCount : number of I/O threads
+     * @param queueCapacity : images that may wait to be saved
+     * @return : RokidCameraBuilder object
+     */
+    RokidCameraBuilder setIOExecutor(int threadCount, int queueCapacity);
+
     RokidCameraBuilder setSizePreview(RokidCameraSize rokidCameraSize);
 
     RokidCameraBuilder setSizeImageReader(RokidCameraSize rokidCameraSize);
@@ -0,0 +1,164 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Size-keyed pool of frame buffers.
+ * <p>
+ * Converting every camera frame into a freshly allocated array produces tens of MB/s of garbage
+ * at 30 fps. Buffers taken from this pool with {@link #acquire(int)} or {@link #acquireDirect(int)}
+ * should be given back with {@link #release(byte[])} or {@link #release(ByteBuffer)} once the
+ * frame has been consumed, so that steady-state conversion does not allocate.
+ * <p>
+ * Only a handful of frame sizes are used at the same time, so buckets are kept in a small list
+ * and searched linearly instead of in a boxed-key map. The list holds at most {@link #MAX_SIZES}
+ * buckets of each kind, a new size replaces the oldest bucket. All methods are thread-safe.
+ */
+public class RokidCameraBufferPool {
+
+    /** Default number of idle buffers kept for every size. */
+    public static final int DEFAULT_MAX_BUFFERS_PER_SIZE = 4;
+    /** Number of buffer sizes pooled at the same time, for arrays and direct buffers each. */
+    public static final int MAX_SIZES = 8;
+
+    private static final RokidCameraBufferPool sDefaultPool = new RokidCameraBufferPool(DEFAULT_MAX_BUFFERS_PER_SIZE);
+
+    private final int mMaxBuffersPerSize;
+    private final ArrayList<Bucket> mArrayBuckets = new ArrayList<>();
+    private final ArrayList<Bucket> mDirectBuckets = new ArrayList<>();
+
+    /**
+     * @param maxBuffersPerSize : number of idle buffers kept for one size, extra released buffers are dropped
+     */
+    public RokidCameraBufferPool(int maxBuffersPerSize) {
+        if (maxBuffersPerSize < 1) {
+            throw new IllegalArgumentException("maxBuffersPerSize must be at least 1");
+        }
+        mMaxBuffersPerSize = maxBuffersPerSize;
+    }
+
+    /**
+     * Process-wide pool shared by the conversion utilities.
+     */
+    public static RokidCameraBufferPool getDefault() {
+        return sDefaultPool;
+    }
+
+    /**
+     * Get a byte array of exactly {@code size} bytes. The content is undefined.
+     */
+    public byte[] acquire(int size) {
+        synchronized (this) {
+            Bucket bucket = findBucket(mArrayBuckets, size, false);
+            if (bucket != null && bucket.mCount > 0) {
+                return (byte[]) bucket.pop();
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Get a direct ByteBuffer with a capacity of exactly {@code size} bytes, cleared and in
+     * native byte order. The content is undefined.
+     */
+    public ByteBuffer acquireDirect(int size) {
+        synchronized (this) {
+            Bucket bucket = findBucket(mDirectBuckets, size, false);
+            if (bucket != null && bucket.mCount > 0) {
+                ByteBuffer buffer = (ByteBuffer) bucket.pop();
+                buffer.clear();
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Give a byte array back to the pool. The caller must not use it afterwards.
+     *
+     * @throws IllegalArgumentException if the array is already in the pool
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer != null) {
+            findBucket(mArrayBuckets, buffer.length, true).push(buffer);
+        }
+    }
+
+    /**
+     * Give a direct ByteBuffer obtained from {@link #acquireDirect(int)} back to the pool.
+     * The caller must not use it afterwards.
+     *
+     * @throws IllegalArgumentException if the buffer is already in the pool
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect()) {
+            findBucket(mDirectBuckets, buffer.capacity(), true).push(buffer);
+        }
+    }
+
+    /**
+     * Number of idle byte arrays of the given size currently held by the pool.
+     */
+    public synchronized int getPooledCount(int size) {
+        Bucket bucket = findBucket(mArrayBuckets, size, false);
+        return bucket == null ? 0 : bucket.mCount;
+    }
+
+    /**
+     * Drop every idle buffer, e.g. when the camera is closed.
+     */
+    public synchronized void clear() {
+        mArrayBuckets.clear();
+        mDirectBuckets.clear();
+    }
+
+    private Bucket findBucket(ArrayList<Bucket> buckets, int size, boolean create) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.mSize == size) {
+                return bucket;
+            }
+        }
+        if (!create) {
+            return null;
+        }
+        if (buckets.size() >= MAX_SIZES) {
+            // arbitrary sizes must not grow the list, the oldest size is the least likely still in use
+            buckets.remove(0);
+        }
+        Bucket bucket = new Bucket(size, mMaxBuffersPerSize);
+        buckets.add(bucket);
+        return bucket;
+    }
+
+    private static class Bucket {
+        private final int mSize;
+        private final Object[] mItems;
+        private int mCount;
+
+        Bucket(int size, int capacity) {
+            mSize = size;
+            mItems = new Object[capacity];
+        }
+
+        Object pop() {
+            Object item = mItems[--mCount];
+            mItems[mCount] = null;
+            return item;
+        }
+
+        void push(Object item) {
+            // a buffer pooled twice would be handed to two owners at once
+            for (int i = 0; i < mCount; i++) {
+                if (mItems[i] == item) {
+                    throw new IllegalArgumentException("Buffer released to the pool twice");
+                }
+            }
+            if (mCount < mItems.length) {
+                mItems[mCount++] = item;
+            }
+        }
+    }
+}
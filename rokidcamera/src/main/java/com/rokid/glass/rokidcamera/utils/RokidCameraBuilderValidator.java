@@ -31,6 +31,44 @@ public class RokidCameraBuilderValidator {
         throw new IllegalStateException("Rokid Camera Only Support between 2 and 20 for Max Image Buffer Size!");
     }
 
+    public static void validateMaxBurstSize(RokidCameraBuilder rokidCameraBuilder) {
+        int maxBurstSize = rokidCameraBuilder.getMaxBurstSize();
+        if (maxBurstSize == 0) {
+            return;
+        }
+
+        if (maxBurstSize < 0 || maxBurstSize > 20) {
+            throw new IllegalStateException("Rokid Camera Only Support between 0 and 20 for Max Burst Size!");
+        }
+        if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK) {
+            throw new IllegalStateException("Burst capture is not supported when using RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK");
+        }
+    }
+
+    public static void validatePrecaptureTimeout(RokidCameraBuilder rokidCameraBuilder) {
+        if (rokidCameraBuilder.getFocusTimeoutMillis() < 1 || rokidCameraBuilder.getFocusTimeoutMillis() > 10000
+                || rokidCameraBuilder.getExposureTimeoutMillis() < 1 || rokidCameraBuilder.getExposureTimeoutMillis() > 10000) {
+            throw new IllegalStateException("Rokid Camera Only Support between 1 and 10000 ms for Precapture Timeouts!");
+        }
+    }
+
+    public static void validateZeroShutterLag(RokidCameraBuilder rokidCameraBuilder) {
+        int ringSize = rokidCameraBuilder.getZslRingSize();
+        if (ringSize == 0) {
+            return;
+        }
+
+        if (ringSize < 0 || ringSize > 8) {
+            throw new IllegalStateException("Rokid Camera Only Support between 0 and 8 for Zero Shutter Lag Ring Size!");
+        }
+        if (rokidCameraBuilder.getImageReaderCallbackMode() != RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
+            throw new IllegalStateException("Zero shutter lag is only supported when using RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK");
+        }
+        if (rokidCameraBuilder.getMaxBurstSize() > 0) {
+            throw new IllegalStateException("Zero shutter lag can not be combined with burst capture!");
+        }
+    }
+
     public static void validateImageReaderCallbackMode(RokidCameraBuilder rokidCameraBuilder) {
         if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
             if (rokidCameraBuilder.getRokidCameraIOListener() == null) {
@@ -40,13 +78,129 @@ public class RokidCameraBuilderValidator {
 
         if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK ||
                 rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK) {
-            if (rokidCameraBuilder.getRokidCameraOnImageAvailableListener() == null) {
-                throw new IllegalStateException("Must implements RokidCameraOnImageAvailableListener when " +
+            if (rokidCameraBuilder.getRokidCameraOnImageAvailableListener() == null &&
+                    rokidCameraBuilder.getRokidCameraOnLumaAvailableListener() == null &&
+                    rokidCameraBuilder.getRokidCameraOnUprightFrameAvailableListener() == null &&
+                    rokidCameraBuilder.getRokidCameraFrameConsumers().isEmpty()) {
+                throw new IllegalStateException("Must implements RokidCameraOnImageAvailableListener, RokidCameraOnLumaAvailableListener, " +
+                        "RokidCameraOnUprightFrameAvailableListener or add a RokidCameraFrameConsumer when " +
                         "using RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK or RokidCamera.STILL_PHOTO_MODE_SINGLE_IMAGE_CALLBACK");
             }
         }
     }
 
+    public static void validateLumaListener(RokidCameraBuilder rokidCameraBuilder) {
+        if (rokidCameraBuilder.getRokidCameraOnLumaAvailableListener() == null) {
+            return;
+        }
+
+        if (rokidCameraBuilder.getImageFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalStateException("Must use ImageFormat.YUV_420_888 when using RokidCameraOnLumaAvailableListener");
+        }
+        if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
+            throw new IllegalStateException("RokidCameraOnLumaAvailableListener is not called when using RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK");
+        }
+    }
+
+    public static void validateUprightFrameListener(RokidCameraBuilder rokidCameraBuilder) {
+        if (rokidCameraBuilder.getRokidCameraOnUprightFrameAvailableListener() == null) {
+            return;
+        }
+
+        if (rokidCameraBuilder.getImageFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalStateException("Must use ImageFormat.YUV_420_888 when using RokidCameraOnUprightFrameAvailableListener");
+        }
+        if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
+            throw new IllegalStateException("RokidCameraOnUprightFrameAvailableListener is not called when using RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK");
+        }
+    }
+
+    public static void validateStreamImageReader(RokidCameraBuilder rokidCameraBuilder) {
+        if (rokidCameraBuilder.getRokidCameraOnStreamImageAvailableListener() == null) {
+            return;
+        }
+
+        if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK) {
+            throw new IllegalStateException("Stream ImageReader is only for still photo modes, " +
+                    "use the ImageReader callback itself with RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK");
+        }
+
+        RokidCameraSize sizeStream = rokidCameraBuilder.getRokidCameraSizeStream();
+        if (sizeStream == RokidCameraSize.SIZE_IMAGE_READER_ALGORITHM_ARSDK ||
+                sizeStream == RokidCameraSize.SIZE_IMAGE_READER_ALGORITHM_FACEID ||
+                sizeStream == RokidCameraSize.SIZE_IMAGE_READER_ALGORITHM_LANDMARK ||
+                sizeStream == RokidCameraSize.SIZE_IMAGE_READER_ALGORITHM_SLAM) {
+            return;
+        }
+
+        throw new IllegalStateException("Must use an algorithm ImageReader Size for the stream ImageReader!");
+    }
+
+    public static void validateFrameConsumers(RokidCameraBuilder rokidCameraBuilder) {
+        if (rokidCameraBuilder.getRokidCameraFrameConsumers().isEmpty()) {
+            return;
+        }
+
+        if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK) {
+            throw new IllegalStateException("RokidCameraFrameConsumer is not called when using RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK");
+        }
+    }
+
+    public static void validateFrameRate(RokidCameraBuilder rokidCameraBuilder) {
+        if (!(rokidCameraBuilder.getImageListenerTargetFps() >= 0) || rokidCameraBuilder.getImageListenerFrameInterval() < 1) {
+            throw new IllegalStateException("Image listener target fps must not be negative and frame interval must be at least 1!");
+        }
+        if (!rokidCameraBuilder.isSensorFrameRateLimited()) {
+            return;
+        }
+
+        if (rokidCameraBuilder.getImageReaderCallbackMode() != RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK) {
+            throw new IllegalStateException("Sensor frame rate can only be limited when using RokidCamera.STILL_PHOTO_MODE_CONTINUOUS_IMAGE_CALLBACK");
+        }
+        if (rokidCameraBuilder.getRokidCameraFrameConsumerConfigs().size() != 1
+                || rokidCameraBuilder.getRokidCameraFrameConsumerConfigs().get(0).getTargetFps() <= 0) {
+            throw new IllegalStateException("Sensor frame rate can only be limited for exactly one RokidCameraFrameConsumer with a target fps!");
+        }
+    }
+
+    public static void validateFrameLeakListener(RokidCameraBuilder rokidCameraBuilder) {
+        if (rokidCameraBuilder.getRokidCameraFrameLeakListener() == null) {
+            return;
+        }
+
+        if (rokidCameraBuilder.getFrameLeakThresholdMillis() < 0) {
+            throw new IllegalStateException("Frame leak threshold must not be negative!");
+        }
+        if (rokidCameraBuilder.getImageReaderCallbackMode() == RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK
+                && rokidCameraBuilder.getZslRingSize() == 0) {
+            throw new IllegalStateException("No RokidCameraFrame is created when using RokidCamera.STILL_PHOTO_MODE_SINGLE_NO_CALLBACK without zero shutter lag");
+        }
+    }
+
+    public static void validateMetricsListener(RokidCameraBuilder rokidCameraBuilder) {
+        if (rokidCameraBuilder.getRokidCameraMetricsListener() == null) {
+            return;
+        }
+
+        if (rokidCameraBuilder.getMetricsPeriodMillis() < 100) {
+            throw new IllegalStateException("Metrics period must be at least 100 milliseconds!");
+        }
+    }
+
+    public static void validateThreads(RokidCameraBuilder rokidCameraBuilder) {
+        if (!isThreadPriority(rokidCameraBuilder.getCameraControlThreadPriority())
+                || !isThreadPriority(rokidCameraBuilder.getFrameDispatchThreadPriority())) {
+            throw new IllegalStateException("Thread priority must be between -20 and 19!");
+        }
+        if (rokidCameraBuilder.getIOThreadCount() < 1 || rokidCameraBuilder.getIOQueueCapacity() < 1) {
+            throw new IllegalStateException("I/O executor needs at least 1 thread and a queue capacity of 1!");
+        }
+    }
+
+    private static boolean isThreadPriority(int priority) {
+        return priority >= -20 && priority <= 19;
+    }
+
     public static void validateSizePreview(RokidCameraBuilder rokidCameraBuilder) {
         RokidCameraSize sizePreview = rokidCameraBuilder.getRokidCameraSizePreview();
         if (sizePreview == RokidCameraSize.SIZE_PREVIEW) {
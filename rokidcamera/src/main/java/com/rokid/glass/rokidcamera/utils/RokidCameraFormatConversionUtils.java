@@ -1,7 +1,5 @@
 package com.rokid.glass.rokidcamera.utils;
 
-import android.graphics.ImageFormat;
-import android.graphics.Rect;
 import android.media.Image;
 
 import java.nio.ByteBuffer;
@@ -13,6 +11,59 @@ import java.nio.ByteBuffer;
 
 public class RokidCameraFormatConversionUtils {
 
+    /** U and V are separate planes with pixelStride 1. */
+    public static final int CHROMA_LAYOUT_PLANAR = 0;
+    /** pixelStride 2 and the V buffer holds VUVU..., with the U buffer starting one byte later (NV21 order). */
+    public static final int CHROMA_LAYOUT_SEMI_PLANAR_VU = 1;
+    /** pixelStride 2 and the U buffer holds UVUV..., with the V buffer starting one byte later (NV12 order). */
+    public static final int CHROMA_LAYOUT_SEMI_PLANAR_UV = 2;
+    /** Any other layout, converted sample by sample. */
+    public static final int CHROMA_LAYOUT_GENERIC = 3;
+
+    /** Y plane followed by interleaved VU. */
+    public static final int OUTPUT_FORMAT_NV21 = 0;
+    /** Y plane followed by the U plane and the V plane. */
+    public static final int OUTPUT_FORMAT_I420 = 1;
+    /** Y plane followed by interleaved UV. */
+    public static final int OUTPUT_FORMAT_NV12 = 2;
+
+    // BT.601 video range YUV to RGB in 10-bit fixed point, one lookup per term
+    private static final int RGB_MAX = (1 << 18) - 1;
+    // number of bytes compared by getChromaLayout()
+    private static final int LAYOUT_PROBES = 64;
+    private static final int[] Y_TO_RGB = new int[256];
+    private static final int[] V_TO_R = new int[256];
+    private static final int[] U_TO_G = new int[256];
+    private static final int[] V_TO_G = new int[256];
+    private static final int[] U_TO_B = new int[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            Y_TO_RGB[i] = 1192 * Math.max(0, i - 16);
+            V_TO_R[i] = 1634 * (i - 128);
+            U_TO_G[i] = -400 * (i - 128);
+            V_TO_G[i] = -833 * (i - 128);
+            U_TO_B[i] = 2066 * (i - 128);
+        }
+    }
+
+    // per-thread objects reused between frames so that conversion does not allocate
+    private static final ThreadLocal<RokidCameraYuvPlanes> sPlanes = new ThreadLocal<RokidCameraYuvPlanes>() {
+        @Override
+        protected RokidCameraYuvPlanes initialValue() {
+            return new RokidCameraYuvPlanes();
+        }
+    };
+    private static final ThreadLocal<byte[]> sRowData = new ThreadLocal<>();
+    private static final ThreadLocal<byte[]> sRowDataU = new ThreadLocal<>();
+    private static final ThreadLocal<byte[]> sRowDataV = new ThreadLocal<>();
+    // last plane buffers read by this thread, followed by this thread's duplicates of them
+    private static final ThreadLocal<ByteBuffer[]> sViews = new ThreadLocal<ByteBuffer[]>() {
+        @Override
+        protected ByteBuffer[] initialValue() {
+            return new ByteBuffer[6];
+        }
+    };
+
     /**
      * Code got from BB8 project.
      * <p>
@@ -22,63 +73,531 @@ public class RokidCameraFormatConversionUtils {
      * is that YUV_420_888 is wrapped inside an Image object by Android Camera2 API, while NV21
      * is often presented as a byte array directly (see Android Camera1 API callback argument list).
      * <p>
+     * This method allocates a new array for every frame. Use {@link #YUV_420_888toNV21(Image, byte[])}
+     * with a buffer from {@link RokidCameraBufferPool} on continuous streams.
+     * <p>
      * TODO: @Zhiyu mentioned that the "getCropRect" function may not work on latest Android API.
      */
     public static byte[] YUV_420_888toNV21(Image image) {
-        Rect crop = image.getCropRect();
-        int format = image.getFormat();
-        int width = crop.width();
-        int height = crop.height();
-        Image.Plane[] planes = image.getPlanes();
-        byte[] data = new byte[width * height * ImageFormat.getBitsPerPixel(format) / 8];
-        byte[] rowData = new byte[planes[0].getRowStride()];
-
-        int channelOffset = 0;
-        int outputStride = 1;
-        for (int i = 0; i < planes.length; i++) {
-            switch (i) {
-                case 0:
-                    channelOffset = 0;
-                    outputStride = 1;
-                    break;
-                case 1:
-                    channelOffset = width * height + 1;
-                    outputStride = 2;
-                    break;
-                case 2:
-                    channelOffset = width * height;
-                    outputStride = 2;
-                    break;
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            byte[] data = new byte[getNV21Size(planes.getWidth(), planes.getHeight())];
+            YUV_420_888toNV21(planes, data, 0);
+            return data;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Transform from YUV_420_888 Image object to NV21, writing into a caller-owned array.
+     *
+     * @param image : YUV_420_888 Image
+     * @param data  : destination, at least {@link #getNV21Size(int, int)} bytes of the crop size
+     * @return : {@code data}
+     */
+    public static byte[] YUV_420_888toNV21(Image image, byte[] data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toNV21(planes, data, 0);
+            return data;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Transform from YUV_420_888 Image object to NV21, writing into a caller-owned ByteBuffer.
+     * The data is written at the buffer's position, and the position is advanced past it.
+     * <p>
+     * Heap buffers are written in place. Direct buffers are filled through a pooled staging array.
+     *
+     * @param image : YUV_420_888 Image
+     * @param data  : destination with at least {@link #getNV21Size(int, int)} bytes remaining
+     * @return : {@code data}
+     */
+    public static ByteBuffer YUV_420_888toNV21(Image image, ByteBuffer data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toNV21(planes, data);
+            return data;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * ByteBuffer variant of {@link #YUV_420_888toNV21(RokidCameraYuvPlanes, byte[], int)}.
+     */
+    public static void YUV_420_888toNV21(RokidCameraYuvPlanes planes, ByteBuffer data) {
+        int size = getNV21Size(planes.getWidth(), planes.getHeight());
+        if (data.remaining() < size) {
+            throw new IllegalArgumentException("Output buffer too small: " + data.remaining() + " < " + size);
+        }
+
+        if (data.hasArray()) {
+            YUV_420_888toNV21(planes, data.array(), data.arrayOffset() + data.position());
+            data.position(data.position() + size);
+        } else {
+            RokidCameraBufferPool pool = RokidCameraBufferPool.getDefault();
+            byte[] staging = pool.acquire(size);
+            try {
+                YUV_420_888toNV21(planes, staging, 0);
+                data.put(staging, 0, size);
+            } finally {
+                pool.release(staging);
+            }
+        }
+    }
+
+    /**
+     * Transform the planes of a YUV_420_888 frame to NV21 (Y plane followed by interleaved VU).
+     * Only the crop rectangle of {@code planes} is converted.
+     *
+     * @param planes : source planes
+     * @param data   : destination array
+     * @param offset : index in {@code data} of the first output byte
+     */
+    public static void YUV_420_888toNV21(RokidCameraYuvPlanes planes, byte[] data, int offset) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        int size = getNV21Size(width, height);
+        if (offset < 0 || data.length - offset < size) {
+            throw new IllegalArgumentException("Output array too small: " + (data.length - offset) + " < " + size);
+        }
+
+        YUV_420_888toYuvRows(planes,
+                getView(planes, RokidCameraYuvPlanes.PLANE_Y),
+                getView(planes, RokidCameraYuvPlanes.PLANE_U),
+                getView(planes, RokidCameraYuvPlanes.PLANE_V),
+                getChromaLayout(planes), OUTPUT_FORMAT_NV21, 0, height, data, offset);
+    }
+
+    /**
+     * Transform from YUV_420_888 Image object to I420, writing into a caller-owned array.
+     *
+     * @param image : YUV_420_888 Image
+     * @param data  : destination, at least {@link #getNV21Size(int, int)} bytes of the crop size
+     * @return : {@code data}
+     */
+    public static byte[] YUV_420_888toI420(Image image, byte[] data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toI420(planes, data, 0);
+            return data;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Transform the planes of a YUV_420_888 frame to I420 (Y plane, U plane, V plane).
+     * The output has the same size as NV21.
+     */
+    public static void YUV_420_888toI420(RokidCameraYuvPlanes planes, byte[] data, int offset) {
+        YUV_420_888toYuv(planes, OUTPUT_FORMAT_I420, data, offset);
+    }
+
+    /**
+     * Transform from YUV_420_888 Image object to NV12, writing into a caller-owned array.
+     *
+     * @param image : YUV_420_888 Image
+     * @param data  : destination, at least {@link #getNV21Size(int, int)} bytes of the crop size
+     * @return : {@code data}
+     */
+    public static byte[] YUV_420_888toNV12(Image image, byte[] data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toNV12(planes, data, 0);
+            return data;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Transform the planes of a YUV_420_888 frame to NV12 (Y plane followed by interleaved UV).
+     * The output has the same size as NV21.
+     */
+    public static void YUV_420_888toNV12(RokidCameraYuvPlanes planes, byte[] data, int offset) {
+        YUV_420_888toYuv(planes, OUTPUT_FORMAT_NV12, data, offset);
+    }
+
+    /**
+     * Copy only the luma plane of a YUV_420_888 Image into a caller-owned array.
+     *
+     * @param image : YUV_420_888 Image
+     * @param data  : destination, at least width * height bytes of the crop size
+     * @return : {@code data}
+     */
+    public static byte[] YUV_420_888toY(Image image, byte[] data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toY(planes, data, 0);
+            return data;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Copy the crop rectangle of the luma plane, without row padding, into {@code data}.
+     */
+    public static void YUV_420_888toY(RokidCameraYuvPlanes planes, byte[] data, int offset) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        if (offset < 0 || data.length - offset < width * height) {
+            throw new IllegalArgumentException("Output array too small: " + (data.length - offset) + " < " + width * height);
+        }
+
+        copyPlane(getView(planes, RokidCameraYuvPlanes.PLANE_Y),
+                planes.getRowStride(RokidCameraYuvPlanes.PLANE_Y), planes.getPixelStride(RokidCameraYuvPlanes.PLANE_Y),
+                getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_Y), 0, height, width, data, offset, 1);
+    }
+
+    /**
+     * Transform from YUV_420_888 Image object to packed ARGB_8888 pixels, as used by
+     * {@link android.graphics.Bitmap#setPixels(int[], int, int, int, int, int, int)}.
+     *
+     * @param image : YUV_420_888 Image
+     * @param argb  : destination, at least width * height pixels of the crop size
+     * @return : {@code argb}
+     */
+    public static int[] YUV_420_888toARGB(Image image, int[] argb) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toARGB(planes, argb, 0);
+            return argb;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Transform the planes of a YUV_420_888 frame to packed ARGB_8888 pixels, using BT.601 video
+     * range coefficients in fixed point. Each chroma row is read once for the two luma rows that
+     * share it, directly from the source planes.
+     *
+     * @param planes : source planes
+     * @param argb   : destination
+     * @param offset : index in {@code argb} of the first output pixel
+     */
+    public static void YUV_420_888toARGB(RokidCameraYuvPlanes planes, int[] argb, int offset) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        if (offset < 0 || argb.length - offset < width * height) {
+            throw new IllegalArgumentException("Output array too small: " + (argb.length - offset) + " < " + width * height);
+        }
+        int chromaWidth = width >> 1;
+        int chromaHeight = height >> 1;
+        if (chromaWidth == 0 || chromaHeight == 0) {
+            return;
+        }
+
+        ByteBuffer yBuffer = getView(planes, RokidCameraYuvPlanes.PLANE_Y);
+        ByteBuffer uBuffer = getView(planes, RokidCameraYuvPlanes.PLANE_U);
+        ByteBuffer vBuffer = getView(planes, RokidCameraYuvPlanes.PLANE_V);
+        int yRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_Y);
+        int uRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_U);
+        int vRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_V);
+        int yPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_Y);
+        int uPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_U);
+        int vPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_V);
+        int yStart = getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_Y);
+        int uStart = getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_U);
+        int vStart = getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_V);
+
+        int yLength = (width - 1) * yPixelStride + 1;
+        int uLength = (chromaWidth - 1) * uPixelStride + 1;
+        int vLength = (chromaWidth - 1) * vPixelStride + 1;
+        byte[] yRow = getRowData(yLength);
+        byte[] uRow = getScratch(sRowDataU, uLength);
+        byte[] vRow = getScratch(sRowDataV, vLength);
+
+        int index = offset;
+        for (int row = 0; row < height; row++) {
+            int chromaRow = row >> 1;
+            if ((row & 1) == 0 && chromaRow < chromaHeight) {
+                // an odd last luma row keeps using the previous chroma row
+                uBuffer.position(uStart + chromaRow * uRowStride);
+                uBuffer.get(uRow, 0, uLength);
+                vBuffer.position(vStart + chromaRow * vRowStride);
+                vBuffer.get(vRow, 0, vLength);
             }
+            yBuffer.position(yStart + row * yRowStride);
+            yBuffer.get(yRow, 0, yLength);
 
-            ByteBuffer buffer = planes[i].getBuffer();
-            int rowStride = planes[i].getRowStride();
-            int pixelStride = planes[i].getPixelStride();
-
-            int shift = (i == 0) ? 0 : 1;
-            int w = width >> shift;
-            int h = height >> shift;
-            buffer.position(rowStride * (crop.top >> shift) + pixelStride * (crop.left >> shift));
-            for (int row = 0; row < h; row++) {
-                int length;
-                if (pixelStride == 1 && outputStride == 1) {
-                    length = w;
-                    buffer.get(data, channelOffset, length);
-                    channelOffset += length;
-                } else {
-                    length = (w - 1) * pixelStride + 1;
-                    buffer.get(rowData, 0, length);
-                    for (int col = 0; col < w; col++) {
-                        data[channelOffset] = rowData[col * pixelStride];
-                        channelOffset += outputStride;
-                    }
-                }
-                if (row < h - 1) {
-                    buffer.position(buffer.position() + rowStride - length);
-                }
+            for (int col = 0; col < width; col++) {
+                int chromaCol = Math.min(col >> 1, chromaWidth - 1);
+                argb[index++] = yuvToArgb(yRow[col * yPixelStride] & 0xFF,
+                        uRow[chromaCol * uPixelStride] & 0xFF, vRow[chromaCol * vPixelStride] & 0xFF);
             }
         }
-        return data;
+    }
+
+    /**
+     * Convert one BT.601 video range YUV sample (each 0..255) to an opaque ARGB_8888 pixel.
+     */
+    static int yuvToArgb(int y, int u, int v) {
+        int luma = Y_TO_RGB[y];
+        int r = luma + V_TO_R[v];
+        int g = luma + U_TO_G[u] + V_TO_G[v];
+        int b = luma + U_TO_B[u];
+        r = r < 0 ? 0 : (r > RGB_MAX ? RGB_MAX : r);
+        g = g < 0 ? 0 : (g > RGB_MAX ? RGB_MAX : g);
+        b = b < 0 ? 0 : (b > RGB_MAX ? RGB_MAX : b);
+        return 0xFF000000 | ((r << 6) & 0xFF0000) | ((g >> 2) & 0xFF00) | ((b >> 10) & 0xFF);
+    }
+
+    private static void YUV_420_888toYuv(RokidCameraYuvPlanes planes, int outputFormat, byte[] data, int offset) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        int size = getNV21Size(width, height);
+        if (offset < 0 || data.length - offset < size) {
+            throw new IllegalArgumentException("Output array too small: " + (data.length - offset) + " < " + size);
+        }
+
+        YUV_420_888toYuvRows(planes,
+                getView(planes, RokidCameraYuvPlanes.PLANE_Y),
+                getView(planes, RokidCameraYuvPlanes.PLANE_U),
+                getView(planes, RokidCameraYuvPlanes.PLANE_V),
+                getChromaLayout(planes), outputFormat, 0, height, data, offset);
+    }
+
+    /**
+     * Convert the luma rows {@code [firstRow, lastRow)} of the crop rectangle, and the chroma rows
+     * that belong to them, into their place in the NV21, NV12 or I420 output. {@code firstRow}
+     * must be even.
+     * <p>
+     * The buffers are passed separately from {@code planes} so that several threads can each work
+     * on their own duplicate of the same plane.
+     */
+    static void YUV_420_888toYuvRows(RokidCameraYuvPlanes planes, ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                     int chromaLayout, int outputFormat, int firstRow, int lastRow,
+                                     byte[] data, int offset) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        int chromaWidth = width >> 1;
+        int chromaFirstRow = firstRow >> 1;
+        int chromaRows = (lastRow >> 1) - chromaFirstRow;
+        int uRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_U);
+        int vRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_V);
+        int uPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_U);
+        int vPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_V);
+        int uStart = getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_U);
+        int vStart = getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_V);
+
+        copyPlane(y, planes.getRowStride(RokidCameraYuvPlanes.PLANE_Y), planes.getPixelStride(RokidCameraYuvPlanes.PLANE_Y),
+                getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_Y), firstRow, lastRow - firstRow, width,
+                data, offset + firstRow * width, 1);
+
+        int chromaOffset = offset + width * height;
+        if (outputFormat == OUTPUT_FORMAT_I420) {
+            int uOffset = chromaOffset + chromaFirstRow * chromaWidth;
+            int vOffset = uOffset + chromaWidth * (height >> 1);
+            copyPlane(u, uRowStride, uPixelStride, uStart, chromaFirstRow, chromaRows, chromaWidth, data, uOffset, 1);
+            copyPlane(v, vRowStride, vPixelStride, vStart, chromaFirstRow, chromaRows, chromaWidth, data, vOffset, 1);
+            return;
+        }
+
+        chromaOffset += chromaFirstRow * chromaWidth * 2;
+        boolean nv21 = outputFormat == OUTPUT_FORMAT_NV21;
+        if (nv21 && chromaLayout == CHROMA_LAYOUT_SEMI_PLANAR_VU) {
+            // V buffer already holds the NV21 chroma order, copy whole rows
+            copyInterleavedChroma(v, u, vRowStride, vStart, chromaFirstRow, chromaRows, chromaWidth, data, chromaOffset);
+        } else if (!nv21 && chromaLayout == CHROMA_LAYOUT_SEMI_PLANAR_UV) {
+            // U buffer already holds the NV12 chroma order, copy whole rows
+            copyInterleavedChroma(u, v, uRowStride, uStart, chromaFirstRow, chromaRows, chromaWidth, data, chromaOffset);
+        } else {
+            copyPlane(v, vRowStride, vPixelStride, vStart, chromaFirstRow, chromaRows, chromaWidth,
+                    data, chromaOffset + (nv21 ? 0 : 1), 2);
+            copyPlane(u, uRowStride, uPixelStride, uStart, chromaFirstRow, chromaRows, chromaWidth,
+                    data, chromaOffset + (nv21 ? 1 : 0), 2);
+        }
+    }
+
+    /**
+     * Byte index in a plane buffer of the top-left sample of the crop rectangle.
+     */
+    static int getPlaneStart(RokidCameraYuvPlanes planes, int index) {
+        int shift = (index == RokidCameraYuvPlanes.PLANE_Y) ? 0 : 1;
+        return planes.getRowStride(index) * (planes.getCropTop() >> shift)
+                + planes.getPixelStride(index) * (planes.getCropLeft() >> shift);
+    }
+
+    /**
+     * Detect how the chroma planes of a frame are laid out in memory.
+     * <p>
+     * Whether the U and V buffers are two views of the same interleaved memory cannot be read
+     * from the Java API. Instead the check compares the buffers: the layout is semi-planar when
+     * the second buffer holds the same bytes as the first one shifted by one. That always holds
+     * for two views of the same memory. To keep the check cheap on every frame only about 64
+     * bytes spread over the plane are compared. Separate buffers are then only taken for views
+     * of the same memory when their chroma matches at every probe, i.e. is nearly flat, and the
+     * interleaved copy outputs nearly the same bytes as the generic path.
+     * The buffers are only read with absolute gets, so their positions stay untouched.
+     *
+     * @param planes : source planes
+     * @return : one of the CHROMA_LAYOUT constants
+     */
+    public static int getChromaLayout(RokidCameraYuvPlanes planes) {
+        int uPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_U);
+        int vPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_V);
+        if (uPixelStride != vPixelStride ||
+                planes.getRowStride(RokidCameraYuvPlanes.PLANE_U) != planes.getRowStride(RokidCameraYuvPlanes.PLANE_V)) {
+            return CHROMA_LAYOUT_GENERIC;
+        }
+        if (uPixelStride == 1) {
+            return CHROMA_LAYOUT_PLANAR;
+        }
+        if (uPixelStride != 2) {
+            return CHROMA_LAYOUT_GENERIC;
+        }
+
+        ByteBuffer u = planes.getBuffer(RokidCameraYuvPlanes.PLANE_U);
+        ByteBuffer v = planes.getBuffer(RokidCameraYuvPlanes.PLANE_V);
+        if (isFollowedBy(v, u)) {
+            return CHROMA_LAYOUT_SEMI_PLANAR_VU;
+        }
+        if (isFollowedBy(u, v)) {
+            return CHROMA_LAYOUT_SEMI_PLANAR_UV;
+        }
+        return CHROMA_LAYOUT_GENERIC;
+    }
+
+    /**
+     * Check whether {@code second} reads like {@code first} starting one byte later, as when both
+     * are views of the same memory.
+     */
+    private static boolean isFollowedBy(ByteBuffer first, ByteBuffer second) {
+        int length = Math.min(first.limit() - 1, second.limit());
+        if (length < 1) {
+            return false;
+        }
+        // odd step, so that the probes alternate between the U and V samples
+        int step = (length / LAYOUT_PROBES) | 1;
+        for (int i = 0; i < length; i += step) {
+            if (first.get(i + 1) != second.get(i)) {
+                return false;
+            }
+        }
+        return first.get(length) == second.get(length - 1);
+    }
+
+    /**
+     * Copy {@code rows} rows of one plane, starting at row {@code firstRow} of the crop rectangle,
+     * into {@code data} with one sample every {@code outputStride} bytes.
+     *
+     * @param start : byte index of the crop origin in {@code buffer}
+     * @param w     : number of samples per row to copy
+     */
+    private static void copyPlane(ByteBuffer buffer, int rowStride, int pixelStride, int start, int firstRow, int rows,
+                                  int w, byte[] data, int channelOffset, int outputStride) {
+        if (w <= 0 || rows <= 0) {
+            return;
+        }
+        start += firstRow * rowStride;
+
+        if (pixelStride == 1 && outputStride == 1) {
+            if (rowStride == w) {
+                // rows are contiguous, copy the whole block at once
+                buffer.position(start);
+                buffer.get(data, channelOffset, w * rows);
+                return;
+            }
+            for (int row = 0; row < rows; row++) {
+                buffer.position(start + row * rowStride);
+                buffer.get(data, channelOffset, w);
+                channelOffset += w;
+            }
+            return;
+        }
+
+        int length = (w - 1) * pixelStride + 1;
+        byte[] rowData = getRowData(length);
+        for (int row = 0; row < rows; row++) {
+            buffer.position(start + row * rowStride);
+            buffer.get(rowData, 0, length);
+            for (int col = 0; col < w; col++) {
+                data[channelOffset] = rowData[col * pixelStride];
+                channelOffset += outputStride;
+            }
+        }
+    }
+
+    /**
+     * Bulk copy of interleaved chroma where buffer {@code first} holds the wanted byte order and
+     * buffer {@code second} starts one byte later in the same memory.
+     * <p>
+     * The last sample of a row belongs to {@code second} and may lie past the limit of
+     * {@code first}, so it is read from {@code second}.
+     *
+     * @param start : byte index of the crop origin in both buffers
+     * @param w     : chroma samples per row
+     */
+    private static void copyInterleavedChroma(ByteBuffer first, ByteBuffer second, int rowStride, int start,
+                                              int firstRow, int rows, int w, byte[] data, int channelOffset) {
+        if (w <= 0 || rows <= 0) {
+            return;
+        }
+        start += firstRow * rowStride;
+        int rowLength = w * 2;
+
+        if (rowStride == rowLength) {
+            // rows are contiguous, copy the whole block at once
+            first.position(start);
+            first.get(data, channelOffset, rowLength * rows - 1);
+            data[channelOffset + rowLength * rows - 1] = second.get(start + rowStride * (rows - 1) + rowLength - 2);
+            return;
+        }
+        for (int row = 0; row < rows; row++) {
+            int rowStart = start + row * rowStride;
+            first.position(rowStart);
+            first.get(data, channelOffset, rowLength - 1);
+            data[channelOffset + rowLength - 1] = second.get(rowStart + rowLength - 2);
+            channelOffset += rowLength;
+        }
+    }
+
+    /**
+     * Number of bytes of an NV21 frame of the given size.
+     */
+    public static int getNV21Size(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * This thread's own view of a plane buffer, for the copy loops that move the position.
+     * <p>
+     * Moving the position of the plane buffer itself would break other threads reading the same
+     * frame. The duplicate is kept until the plane is set to another buffer, so converting the
+     * same buffers again does not allocate. The previous buffer is only compared by identity,
+     * it is never read once the plane changed.
+     */
+    static ByteBuffer getView(RokidCameraYuvPlanes planes, int index) {
+        ByteBuffer buffer = planes.getBuffer(index);
+        ByteBuffer[] views = sViews.get();
+        if (views[index] != buffer) {
+            views[index] = buffer;
+            views[3 + index] = buffer.duplicate();
+        }
+        return views[3 + index];
+    }
+
+    /**
+     * Per-thread scratch row, grown on demand and then reused for every frame.
+     */
+    static byte[] getRowData(int length) {
+        return getScratch(sRowData, length);
+    }
+
+    private static byte[] getScratch(ThreadLocal<byte[]> holder, int length) {
+        byte[] scratch = holder.get();
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[length];
+            holder.set(scratch);
+        }
+        return scratch;
     }
 
 }
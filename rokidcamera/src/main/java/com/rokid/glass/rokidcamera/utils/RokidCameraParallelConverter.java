@@ -0,0 +1,237 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-core frame conversion for large resolutions.
+ * <p>
+ * Frames of at least {@link #getParallelThreshold()} pixels are split into horizontal bands of
+ * luma rows (with their chroma rows) that are converted at the same time on a fixed pool of
+ * worker threads, while the calling thread converts the last band itself. Smaller frames, such as
+ * the algorithm sizes in {@link RokidCameraSize}, are converted serially on the calling thread.
+ * The output is byte-identical to {@link RokidCameraFormatConversionUtils}.
+ * <p>
+ * One converter converts one frame at a time; concurrent calls are serialized.
+ * <p>
+ * Unlike the serial conversions, a frame split into bands allocates a few small objects: the
+ * latch the calling thread waits on, the executor queue nodes and the buffer duplicates of
+ * each band.
+ */
+public class RokidCameraParallelConverter {
+
+    /** Frames smaller than this (in pixels) are converted on the calling thread. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1920 * 1080;
+
+    private static RokidCameraParallelConverter sDefaultConverter;
+
+    private final int mBandCount;
+    private final int mParallelThreshold;
+    private final ExecutorService mExecutor;
+    private final Band[] mBands;
+    private final RokidCameraYuvPlanes mPlanes = new RokidCameraYuvPlanes();
+
+    /**
+     * @param bandCount         : number of bands a large frame is split into, including the one
+     *                          converted on the calling thread. The pool has {@code bandCount - 1} threads.
+     * @param parallelThreshold : minimum frame size in pixels for parallel conversion
+     */
+    public RokidCameraParallelConverter(int bandCount, int parallelThreshold) {
+        if (bandCount < 1) {
+            throw new IllegalArgumentException("bandCount must be at least 1");
+        }
+        mBandCount = bandCount;
+        mParallelThreshold = parallelThreshold;
+        mBands = new Band[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            mBands[i] = new Band();
+        }
+
+        if (bandCount > 1) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(bandCount - 1, bandCount - 1,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+            // let idle workers exit when the camera is not streaming
+            executor.allowCoreThreadTimeOut(true);
+            mExecutor = executor;
+        } else {
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Shared converter with one band per available core and {@link #DEFAULT_PARALLEL_THRESHOLD}.
+     */
+    public static synchronized RokidCameraParallelConverter getDefault() {
+        if (sDefaultConverter == null) {
+            sDefaultConverter = new RokidCameraParallelConverter(
+                    Runtime.getRuntime().availableProcessors(), DEFAULT_PARALLEL_THRESHOLD);
+        }
+        return sDefaultConverter;
+    }
+
+    public int getBandCount() {
+        return mBandCount;
+    }
+
+    public int getParallelThreshold() {
+        return mParallelThreshold;
+    }
+
+    /**
+     * Parallel version of {@link RokidCameraFormatConversionUtils#YUV_420_888toNV21(Image, byte[])}.
+     */
+    public synchronized byte[] YUV_420_888toNV21(Image image, byte[] data) {
+        mPlanes.setImage(image);
+        try {
+            YUV_420_888toNV21(mPlanes, data, 0);
+            return data;
+        } finally {
+            mPlanes.clear();
+        }
+    }
+
+    /**
+     * Parallel version of {@link RokidCameraFormatConversionUtils#YUV_420_888toNV21(RokidCameraYuvPlanes, byte[], int)}.
+     */
+    public synchronized void YUV_420_888toNV21(RokidCameraYuvPlanes planes, byte[] data, int offset) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        int bands = Math.min(mBandCount, height >> 1);
+        if (bands < 2 || width * height < mParallelThreshold) {
+            RokidCameraFormatConversionUtils.YUV_420_888toNV21(planes, data, offset);
+            return;
+        }
+
+        int size = RokidCameraFormatConversionUtils.getNV21Size(width, height);
+        if (offset < 0 || data.length - offset < size) {
+            throw new IllegalArgumentException("Output array too small: " + (data.length - offset) + " < " + size);
+        }
+
+        // detect the layout once here, so that the bands do not each compare the planes
+        int chromaLayout = RokidCameraFormatConversionUtils.getChromaLayout(planes);
+        int chromaRows = height >> 1;
+        CountDownLatch done = new CountDownLatch(bands - 1);
+        for (int i = 0; i < bands; i++) {
+            int firstRow = (chromaRows * i / bands) * 2;
+            int lastRow = (i == bands - 1) ? height : (chromaRows * (i + 1) / bands) * 2;
+            mBands[i].set(planes, chromaLayout, firstRow, lastRow, data, offset, done);
+        }
+
+        for (int i = 0; i < bands - 1; i++) {
+            mExecutor.execute(mBands[i]);
+        }
+        mBands[bands - 1].convert();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable error = null;
+        for (int i = 0; i < bands; i++) {
+            if (error == null) {
+                error = mBands[i].mError;
+            }
+            mBands[i].clear();
+        }
+        if (error != null) {
+            throw new IllegalStateException("Parallel conversion failed", error);
+        }
+    }
+
+    /**
+     * Stop the worker threads. The converter must not be used afterwards.
+     */
+    public void shutdown() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * One horizontal band of a frame. Each band reads through its own buffer duplicates because
+     * ByteBuffer positions cannot be shared between threads.
+     */
+    private static class Band implements Runnable {
+        private RokidCameraYuvPlanes mPlanes;
+        private ByteBuffer mY;
+        private ByteBuffer mU;
+        private ByteBuffer mV;
+        private int mChromaLayout;
+        private int mFirstRow;
+        private int mLastRow;
+        private byte[] mData;
+        private int mOffset;
+        private CountDownLatch mDone;
+        private Throwable mError;
+
+        void set(RokidCameraYuvPlanes planes, int chromaLayout, int firstRow, int lastRow,
+                 byte[] data, int offset, CountDownLatch done) {
+            mPlanes = planes;
+            mY = planes.getBuffer(RokidCameraYuvPlanes.PLANE_Y).duplicate();
+            mU = planes.getBuffer(RokidCameraYuvPlanes.PLANE_U).duplicate();
+            mV = planes.getBuffer(RokidCameraYuvPlanes.PLANE_V).duplicate();
+            mChromaLayout = chromaLayout;
+            mFirstRow = firstRow;
+            mLastRow = lastRow;
+            mData = data;
+            mOffset = offset;
+            mDone = done;
+            mError = null;
+        }
+
+        void clear() {
+            mPlanes = null;
+            mY = null;
+            mU = null;
+            mV = null;
+            mData = null;
+            mDone = null;
+        }
+
+        void convert() {
+            try {
+                RokidCameraFormatConversionUtils.YUV_420_888toYuvRows(mPlanes, mY, mU, mV,
+                        mChromaLayout, RokidCameraFormatConversionUtils.OUTPUT_FORMAT_NV21, mFirstRow, mLastRow, mData, mOffset);
+            } catch (Throwable t) {
+                mError = t;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                convert();
+            } finally {
+                mDone.countDown();
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "RokidCameraConversion-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import android.media.Image;
+
+/**
+ * Rotation and horizontal mirroring of NV21 and I420 frames, so that algorithms get upright input.
+ * <p>
+ * A rotation by 90 or 270 degrees reads rows and writes columns. Walking the whole frame that way
+ * touches a new destination cache line for every pixel, so planes are traversed in square tiles
+ * small enough for the source and destination lines of one tile to stay in the data cache.
+ * <p>
+ * Rotations are clockwise, matching {@link android.hardware.camera2.CaptureRequest#JPEG_ORIENTATION}.
+ * Mirroring flips the rotated output horizontally.
+ */
+public class RokidCameraRotationUtils {
+
+    public static final int ROTATION_0 = 0;
+    public static final int ROTATION_90 = 90;
+    public static final int ROTATION_180 = 180;
+    public static final int ROTATION_270 = 270;
+
+    // 32x32 byte tiles: 32 source lines and 32 destination lines fit in L1 on every core we ship
+    private static final int TILE_SIZE = 32;
+
+    private static final ThreadLocal<RokidCameraYuvPlanes> sPlanes = new ThreadLocal<RokidCameraYuvPlanes>() {
+        @Override
+        protected RokidCameraYuvPlanes initialValue() {
+            return new RokidCameraYuvPlanes();
+        }
+    };
+
+    /**
+     * Width of the output for a frame of the given size.
+     */
+    public static int getRotatedWidth(int width, int height, int rotation) {
+        return isTransposed(checkRotation(rotation)) ? height : width;
+    }
+
+    /**
+     * Height of the output for a frame of the given size.
+     */
+    public static int getRotatedHeight(int width, int height, int rotation) {
+        return isTransposed(checkRotation(rotation)) ? width : height;
+    }
+
+    /**
+     * Rotate and/or mirror an NV21 frame.
+     *
+     * @param src      : NV21 frame, {@code width * height * 3 / 2} bytes
+     * @param rotation : one of {@link #ROTATION_0}, {@link #ROTATION_90}, {@link #ROTATION_180}, {@link #ROTATION_270}
+     * @param mirror   : flip the output horizontally
+     * @param dst      : output NV21 frame of {@link #getRotatedWidth} x {@link #getRotatedHeight}, must not be {@code src}
+     */
+    public static void rotateNV21(byte[] src, int width, int height, int rotation, boolean mirror, byte[] dst) {
+        checkFrame(src, width, height, dst);
+        rotateFrame(src, 0, width, height, RokidCameraFormatConversionUtils.OUTPUT_FORMAT_NV21, rotation, mirror, dst, 0);
+    }
+
+    /**
+     * Rotate and/or mirror an NV12 frame. Same contract as {@link #rotateNV21}.
+     */
+    public static void rotateNV12(byte[] src, int width, int height, int rotation, boolean mirror, byte[] dst) {
+        // NV12 differs from NV21 only by the order of the chroma pair, which rotation keeps
+        rotateNV21(src, width, height, rotation, mirror, dst);
+    }
+
+    /**
+     * Rotate and/or mirror an I420 frame. Same contract as {@link #rotateNV21}.
+     */
+    public static void rotateI420(byte[] src, int width, int height, int rotation, boolean mirror, byte[] dst) {
+        checkFrame(src, width, height, dst);
+        rotateFrame(src, 0, width, height, RokidCameraFormatConversionUtils.OUTPUT_FORMAT_I420, rotation, mirror, dst, 0);
+    }
+
+    /**
+     * Convert a YUV_420_888 Image to an upright NV21 frame.
+     * <p>
+     * The Image is converted into a pooled staging frame with the sequential plane copy of
+     * {@link RokidCameraFormatConversionUtils}, then rotated tile by tile into {@code data}.
+     * Without rotation or mirroring the Image is converted straight into {@code data}.
+     *
+     * @param data : output of {@link #getRotatedWidth} x {@link #getRotatedHeight} of the crop rectangle
+     */
+    public static void YUV_420_888toNV21(Image image, int rotation, boolean mirror, byte[] data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toNV21(planes, rotation, mirror, data, 0);
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Convert the crop rectangle of {@code planes} to an upright NV21 frame at {@code offset}.
+     */
+    public static void YUV_420_888toNV21(RokidCameraYuvPlanes planes, int rotation, boolean mirror, byte[] data, int offset) {
+        YUV_420_888toRotated(planes, RokidCameraFormatConversionUtils.OUTPUT_FORMAT_NV21, rotation, mirror, data, offset);
+    }
+
+    /**
+     * Convert a YUV_420_888 Image to an upright I420 frame. See {@link #YUV_420_888toNV21(Image, int, boolean, byte[])}.
+     */
+    public static void YUV_420_888toI420(Image image, int rotation, boolean mirror, byte[] data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            YUV_420_888toI420(planes, rotation, mirror, data, 0);
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Convert the crop rectangle of {@code planes} to an upright I420 frame at {@code offset}.
+     */
+    public static void YUV_420_888toI420(RokidCameraYuvPlanes planes, int rotation, boolean mirror, byte[] data, int offset) {
+        YUV_420_888toRotated(planes, RokidCameraFormatConversionUtils.OUTPUT_FORMAT_I420, rotation, mirror, data, offset);
+    }
+
+    private static void YUV_420_888toRotated(RokidCameraYuvPlanes planes, int outputFormat, int rotation, boolean mirror,
+                                             byte[] data, int offset) {
+        checkRotation(rotation);
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        int size = RokidCameraFormatConversionUtils.getNV21Size(width, height);
+        if (offset < 0 || data.length - offset < size) {
+            throw new IllegalArgumentException("Output array too small: " + (data.length - offset) + " < " + size);
+        }
+
+        if (rotation == ROTATION_0 && !mirror) {
+            convert(planes, outputFormat, data, offset);
+            return;
+        }
+
+        RokidCameraBufferPool pool = RokidCameraBufferPool.getDefault();
+        byte[] staging = pool.acquire(size);
+        try {
+            convert(planes, outputFormat, staging, 0);
+            rotateFrame(staging, 0, width, height, outputFormat, rotation, mirror, data, offset);
+        } finally {
+            pool.release(staging);
+        }
+    }
+
+    private static void convert(RokidCameraYuvPlanes planes, int outputFormat, byte[] data, int offset) {
+        if (outputFormat == RokidCameraFormatConversionUtils.OUTPUT_FORMAT_I420) {
+            RokidCameraFormatConversionUtils.YUV_420_888toI420(planes, data, offset);
+        } else {
+            RokidCameraFormatConversionUtils.YUV_420_888toNV21(planes, data, offset);
+        }
+    }
+
+    private static void rotateFrame(byte[] src, int srcOffset, int width, int height, int format, int rotation,
+                                    boolean mirror, byte[] dst, int dstOffset) {
+        int lumaSize = width * height;
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+
+        rotatePlane(src, srcOffset, width, 1, width, height, dst, dstOffset, 1, rotation, mirror);
+        if (format == RokidCameraFormatConversionUtils.OUTPUT_FORMAT_I420) {
+            int chromaSize = chromaWidth * chromaHeight;
+            rotatePlane(src, srcOffset + lumaSize, chromaWidth, 1, chromaWidth, chromaHeight,
+                    dst, dstOffset + lumaSize, 1, rotation, mirror);
+            rotatePlane(src, srcOffset + lumaSize + chromaSize, chromaWidth, 1, chromaWidth, chromaHeight,
+                    dst, dstOffset + lumaSize + chromaSize, 1, rotation, mirror);
+        } else {
+            // the two interleaved chroma channels move together, one pass per channel
+            rotatePlane(src, srcOffset + lumaSize, width, 2, chromaWidth, chromaHeight,
+                    dst, dstOffset + lumaSize, 2, rotation, mirror);
+            rotatePlane(src, srcOffset + lumaSize + 1, width, 2, chromaWidth, chromaHeight,
+                    dst, dstOffset + lumaSize + 1, 2, rotation, mirror);
+        }
+    }
+
+    /**
+     * Rotate one plane into a tightly packed destination plane, tile by tile.
+     *
+     * @param srcOffset      : index of the first sample of the plane
+     * @param srcRowStride   : distance in bytes between two source rows
+     * @param srcPixelStride : distance in bytes between two source samples of a row
+     * @param width          : plane width in samples, before rotation
+     * @param height         : plane height in samples, before rotation
+     * @param dstOffset      : index of the first sample of the destination plane
+     * @param dstPixelStride : distance in bytes between two destination samples of a row
+     */
+    static void rotatePlane(byte[] src, int srcOffset, int srcRowStride, int srcPixelStride, int width, int height,
+                            byte[] dst, int dstOffset, int dstPixelStride, int rotation, boolean mirror) {
+        checkRotation(rotation);
+        int dstWidth = isTransposed(rotation) ? height : width;
+
+        // destination column and row as a linear function of the source column x and row y:
+        // column = columnX * x + columnY * y + column0, row = rowX * x + rowY * y + row0
+        int columnX;
+        int columnY;
+        int column0;
+        int rowX;
+        int rowY;
+        int row0;
+        switch (rotation) {
+            case ROTATION_90:
+                columnX = 0;
+                columnY = -1;
+                column0 = height - 1;
+                rowX = 1;
+                rowY = 0;
+                row0 = 0;
+                break;
+            case ROTATION_180:
+                columnX = -1;
+                columnY = 0;
+                column0 = width - 1;
+                rowX = 0;
+                rowY = -1;
+                row0 = height - 1;
+                break;
+            case ROTATION_270:
+                columnX = 0;
+                columnY = 1;
+                column0 = 0;
+                rowX = -1;
+                rowY = 0;
+                row0 = width - 1;
+                break;
+            default:
+                columnX = 1;
+                columnY = 0;
+                column0 = 0;
+                rowX = 0;
+                rowY = 1;
+                row0 = 0;
+                break;
+        }
+        if (mirror) {
+            columnX = -columnX;
+            columnY = -columnY;
+            column0 = dstWidth - 1 - column0;
+        }
+
+        // destination index steps for one source column and one source row
+        int stepX = (rowX * dstWidth + columnX) * dstPixelStride;
+        int stepY = (rowY * dstWidth + columnY) * dstPixelStride;
+        int base = dstOffset + (row0 * dstWidth + column0) * dstPixelStride;
+
+        if (stepX == dstPixelStride && srcPixelStride == 1 && dstPixelStride == 1) {
+            // rows stay rows in the same direction, copy them whole
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(src, srcOffset + y * srcRowStride, dst, base + y * stepY, width);
+            }
+            return;
+        }
+
+        for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+            int tileBottom = Math.min(tileY + TILE_SIZE, height);
+            for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+                int tileRight = Math.min(tileX + TILE_SIZE, width);
+                for (int y = tileY; y < tileBottom; y++) {
+                    int srcIndex = srcOffset + y * srcRowStride + tileX * srcPixelStride;
+                    int dstIndex = base + y * stepY + tileX * stepX;
+                    for (int x = tileX; x < tileRight; x++) {
+                        dst[dstIndex] = src[srcIndex];
+                        srcIndex += srcPixelStride;
+                        dstIndex += stepX;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isTransposed(int rotation) {
+        return rotation == ROTATION_90 || rotation == ROTATION_270;
+    }
+
+    private static int checkRotation(int rotation) {
+        if (rotation != ROTATION_0 && rotation != ROTATION_90 && rotation != ROTATION_180 && rotation != ROTATION_270) {
+            throw new IllegalArgumentException("Rotation must be 0, 90, 180 or 270: " + rotation);
+        }
+        return rotation;
+    }
+
+    private static void checkFrame(byte[] src, int width, int height, byte[] dst) {
+        int size = RokidCameraFormatConversionUtils.getNV21Size(width, height);
+        if (src == dst) {
+            throw new IllegalArgumentException("Rotation cannot be done in place");
+        }
+        if (src.length < size || dst.length < size) {
+            throw new IllegalArgumentException("Frame arrays too small for " + width + "x" + height);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fused crop + downscale + format conversion of YUV_420_888 frames.
+ * <p>
+ * Algorithm inputs such as 320x480 or 640x480 are produced in a single pass over the source
+ * planes, without first converting the full-resolution frame to NV21 and scaling it again.
+ */
+public class RokidCameraScaleUtils {
+
+    /** Pick the source sample closest to the center of each output pixel. */
+    public static final int SCALE_MODE_NEAREST = 0;
+    /** Average every source sample covered by each output pixel. */
+    public static final int SCALE_MODE_BOX = 1;
+
+    /** Y plane followed by interleaved VU. */
+    public static final int OUTPUT_FORMAT_NV21 = RokidCameraFormatConversionUtils.OUTPUT_FORMAT_NV21;
+    /** Y plane followed by the U plane and the V plane. */
+    public static final int OUTPUT_FORMAT_I420 = RokidCameraFormatConversionUtils.OUTPUT_FORMAT_I420;
+
+    private static final ThreadLocal<RokidCameraYuvPlanes> sPlanes = new ThreadLocal<RokidCameraYuvPlanes>() {
+        @Override
+        protected RokidCameraYuvPlanes initialValue() {
+            return new RokidCameraYuvPlanes();
+        }
+    };
+    private static final ThreadLocal<int[]> sSums = new ThreadLocal<>();
+    private static final ThreadLocal<int[]> sColumnBounds = new ThreadLocal<>();
+
+    /**
+     * Crop, scale and convert a YUV_420_888 Image into a caller-owned array.
+     *
+     * @param image        : YUV_420_888 Image
+     * @param crop         : region of the Image to use, or null for the Image crop rectangle
+     * @param targetWidth  : output width, should be even
+     * @param targetHeight : output height, should be even
+     * @param scaleMode    : {@link #SCALE_MODE_NEAREST} or {@link #SCALE_MODE_BOX}
+     * @param outputFormat : {@link #OUTPUT_FORMAT_NV21} or {@link #OUTPUT_FORMAT_I420}
+     * @param data         : destination, at least {@link #getOutputSize(int, int)} bytes
+     * @return : {@code data}
+     */
+    public static byte[] YUV_420_888toScaled(Image image, Rect crop, int targetWidth, int targetHeight,
+                                             int scaleMode, int outputFormat, byte[] data) {
+        RokidCameraYuvPlanes planes = sPlanes.get().setImage(image);
+        try {
+            if (crop != null) {
+                planes.setCrop(crop.left, crop.top, crop.width(), crop.height());
+            }
+            YUV_420_888toScaled(planes, targetWidth, targetHeight, scaleMode, outputFormat, data, 0);
+            return data;
+        } finally {
+            planes.clear();
+        }
+    }
+
+    /**
+     * Crop, scale and convert the planes of a YUV_420_888 frame. The crop rectangle of
+     * {@code planes} is scaled to {@code targetWidth} x {@code targetHeight}.
+     *
+     * @param offset : index in {@code data} of the first output byte
+     */
+    public static void YUV_420_888toScaled(RokidCameraYuvPlanes planes, int targetWidth, int targetHeight,
+                                           int scaleMode, int outputFormat, byte[] data, int offset) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("Invalid target size " + targetWidth + "x" + targetHeight);
+        }
+        if (scaleMode != SCALE_MODE_NEAREST && scaleMode != SCALE_MODE_BOX) {
+            throw new IllegalArgumentException("Unknown scale mode " + scaleMode);
+        }
+        if (outputFormat != OUTPUT_FORMAT_NV21 && outputFormat != OUTPUT_FORMAT_I420) {
+            throw new IllegalArgumentException("Unknown output format " + outputFormat);
+        }
+        int size = getOutputSize(targetWidth, targetHeight);
+        if (offset < 0 || data.length - offset < size) {
+            throw new IllegalArgumentException("Output array too small: " + (data.length - offset) + " < " + size);
+        }
+
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        scalePlane(planes, RokidCameraYuvPlanes.PLANE_Y, width, height, targetWidth, targetHeight,
+                scaleMode, data, offset, 1);
+
+        int chromaWidth = targetWidth >> 1;
+        int chromaHeight = targetHeight >> 1;
+        int chromaOffset = offset + targetWidth * targetHeight;
+        if (outputFormat == OUTPUT_FORMAT_NV21) {
+            scalePlane(planes, RokidCameraYuvPlanes.PLANE_V, width >> 1, height >> 1, chromaWidth, chromaHeight,
+                    scaleMode, data, chromaOffset, 2);
+            scalePlane(planes, RokidCameraYuvPlanes.PLANE_U, width >> 1, height >> 1, chromaWidth, chromaHeight,
+                    scaleMode, data, chromaOffset + 1, 2);
+        } else {
+            scalePlane(planes, RokidCameraYuvPlanes.PLANE_U, width >> 1, height >> 1, chromaWidth, chromaHeight,
+                    scaleMode, data, chromaOffset, 1);
+            scalePlane(planes, RokidCameraYuvPlanes.PLANE_V, width >> 1, height >> 1, chromaWidth, chromaHeight,
+                    scaleMode, data, chromaOffset + chromaWidth * chromaHeight, 1);
+        }
+    }
+
+    /**
+     * Number of bytes of a scaled NV21 or I420 frame.
+     */
+    public static int getOutputSize(int targetWidth, int targetHeight) {
+        return targetWidth * targetHeight + 2 * (targetWidth >> 1) * (targetHeight >> 1);
+    }
+
+    private static void scalePlane(RokidCameraYuvPlanes planes, int index, int srcWidth, int srcHeight,
+                                   int dstWidth, int dstHeight, int scaleMode,
+                                   byte[] data, int channelOffset, int outputStride) {
+        if (srcWidth <= 0 || srcHeight <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+            return;
+        }
+        ByteBuffer buffer = RokidCameraFormatConversionUtils.getView(planes, index);
+        int rowStride = planes.getRowStride(index);
+        int pixelStride = planes.getPixelStride(index);
+        int start = RokidCameraFormatConversionUtils.getPlaneStart(planes, index);
+
+        if (scaleMode == SCALE_MODE_NEAREST) {
+            for (int oy = 0; oy < dstHeight; oy++) {
+                int rowStart = start + ((2 * oy + 1) * srcHeight / (2 * dstHeight)) * rowStride;
+                for (int ox = 0; ox < dstWidth; ox++) {
+                    int sx = (2 * ox + 1) * srcWidth / (2 * dstWidth);
+                    data[channelOffset] = buffer.get(rowStart + sx * pixelStride);
+                    channelOffset += outputStride;
+                }
+            }
+            return;
+        }
+
+        // box filter: sum whole source rows into one accumulator per output column
+        int[] bounds = getColumnBounds(srcWidth, dstWidth);
+        int[] sums = getScratch(sSums, dstWidth);
+        int length = (srcWidth - 1) * pixelStride + 1;
+        byte[] rowData = RokidCameraFormatConversionUtils.getRowData(length);
+        for (int oy = 0; oy < dstHeight; oy++) {
+            int y0 = oy * srcHeight / dstHeight;
+            int y1 = Math.max(y0 + 1, (oy + 1) * srcHeight / dstHeight);
+            for (int ox = 0; ox < dstWidth; ox++) {
+                sums[ox] = 0;
+            }
+            for (int sy = y0; sy < y1; sy++) {
+                buffer.position(start + sy * rowStride);
+                buffer.get(rowData, 0, length);
+                for (int ox = 0; ox < dstWidth; ox++) {
+                    int sum = 0;
+                    for (int sx = bounds[ox], end = bounds[dstWidth + ox]; sx < end; sx++) {
+                        sum += rowData[sx * pixelStride] & 0xFF;
+                    }
+                    sums[ox] += sum;
+                }
+            }
+            int rows = y1 - y0;
+            for (int ox = 0; ox < dstWidth; ox++) {
+                int area = (bounds[dstWidth + ox] - bounds[ox]) * rows;
+                data[channelOffset] = (byte) ((sums[ox] + (area >> 1)) / area);
+                channelOffset += outputStride;
+            }
+        }
+    }
+
+    /**
+     * First source column of every output column, followed by the matching end columns.
+     */
+    private static int[] getColumnBounds(int srcWidth, int dstWidth) {
+        int[] bounds = getScratch(sColumnBounds, dstWidth * 2);
+        for (int ox = 0; ox < dstWidth; ox++) {
+            int x0 = ox * srcWidth / dstWidth;
+            bounds[ox] = x0;
+            bounds[dstWidth + ox] = Math.max(x0 + 1, (ox + 1) * srcWidth / dstWidth);
+        }
+        return bounds;
+    }
+
+    private static int[] getScratch(ThreadLocal<int[]> holder, int length) {
+        int[] scratch = holder.get();
+        if (scratch == null || scratch.length < length) {
+            scratch = new int[length];
+            holder.set(scratch);
+        }
+        return scratch;
+    }
+}
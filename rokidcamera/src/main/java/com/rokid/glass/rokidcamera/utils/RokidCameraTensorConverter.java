@@ -0,0 +1,298 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Single-pass conversion of a YUV_420_888 frame into a normalized float tensor for on-device
+ * model input.
+ * <p>
+ * Crop, resize, YUV to RGB, channel ordering and normalization are fused: every output value is
+ * sampled from the source planes and written straight into a reusable direct {@link FloatBuffer},
+ * without intermediate NV21, Bitmap or float arrays.
+ * <p>
+ * Configure once with the setters, then call {@link #convert(Image, Rect, FloatBuffer)} for every
+ * frame. A converter is not thread-safe.
+ */
+public class RokidCameraTensorConverter {
+
+    /** Channel-major output: all values of channel 0, then channel 1, then channel 2. */
+    public static final int LAYOUT_CHW = 0;
+    /** Pixel-major output: the three channels of each pixel next to each other. */
+    public static final int LAYOUT_HWC = 1;
+
+    public static final int CHANNEL_ORDER_RGB = 0;
+    public static final int CHANNEL_ORDER_BGR = 1;
+
+    /** Sample the source pixel closest to each output pixel center. */
+    public static final int RESIZE_MODE_NEAREST = 0;
+    /** Interpolate the four source pixels around each output pixel center. */
+    public static final int RESIZE_MODE_BILINEAR = 1;
+
+    // bilinear weights are kept in 8-bit fixed point
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    private int mLayout = LAYOUT_CHW;
+    private int mChannelOrder = CHANNEL_ORDER_RGB;
+    private int mResizeMode = RESIZE_MODE_BILINEAR;
+
+    // normalized value of every 0..255 sample, per R, G, B channel
+    private final float[][] mNormalization = new float[3][256];
+
+    private final RokidCameraYuvPlanes mPlanes = new RokidCameraYuvPlanes();
+
+    // sampling tables, rebuilt only when the crop size changes
+    private int mTableWidth = -1;
+    private int mTableHeight = -1;
+    private int mTableResizeMode = -1;
+    private final Axis mLumaX;
+    private final Axis mLumaY;
+    private final Axis mChromaX;
+    private final Axis mChromaY;
+
+    /**
+     * @param targetWidth  : tensor width in pixels
+     * @param targetHeight : tensor height in pixels
+     */
+    public RokidCameraTensorConverter(int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("Invalid target size " + targetWidth + "x" + targetHeight);
+        }
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+        mLumaX = new Axis(targetWidth);
+        mLumaY = new Axis(targetHeight);
+        mChromaX = new Axis(targetWidth);
+        mChromaY = new Axis(targetHeight);
+        setNormalization(new float[]{0f, 0f, 0f}, new float[]{1f, 1f, 1f});
+    }
+
+    /**
+     * @param layout : {@link #LAYOUT_CHW} (default) or {@link #LAYOUT_HWC}
+     */
+    public RokidCameraTensorConverter setLayout(int layout) {
+        if (layout != LAYOUT_CHW && layout != LAYOUT_HWC) {
+            throw new IllegalArgumentException("Unknown layout " + layout);
+        }
+        mLayout = layout;
+        return this;
+    }
+
+    /**
+     * @param channelOrder : {@link #CHANNEL_ORDER_RGB} (default) or {@link #CHANNEL_ORDER_BGR}
+     */
+    public RokidCameraTensorConverter setChannelOrder(int channelOrder) {
+        if (channelOrder != CHANNEL_ORDER_RGB && channelOrder != CHANNEL_ORDER_BGR) {
+            throw new IllegalArgumentException("Unknown channel order " + channelOrder);
+        }
+        mChannelOrder = channelOrder;
+        return this;
+    }
+
+    /**
+     * @param resizeMode : {@link #RESIZE_MODE_BILINEAR} (default) or {@link #RESIZE_MODE_NEAREST}
+     */
+    public RokidCameraTensorConverter setResizeMode(int resizeMode) {
+        if (resizeMode != RESIZE_MODE_NEAREST && resizeMode != RESIZE_MODE_BILINEAR) {
+            throw new IllegalArgumentException("Unknown resize mode " + resizeMode);
+        }
+        mResizeMode = resizeMode;
+        return this;
+    }
+
+    /**
+     * Every output value is {@code (sample / 255 - mean) / std}. The default of mean 0 and std 1
+     * gives values in [0, 1].
+     *
+     * @param mean : per channel mean, in R, G, B order whatever the channel order
+     * @param std  : per channel standard deviation, in R, G, B order whatever the channel order
+     */
+    public RokidCameraTensorConverter setNormalization(float[] mean, float[] std) {
+        if (mean.length != 3 || std.length != 3) {
+            throw new IllegalArgumentException("mean and std must have 3 values");
+        }
+        for (int c = 0; c < 3; c++) {
+            if (std[c] == 0f) {
+                throw new IllegalArgumentException("std must not be 0");
+            }
+            for (int i = 0; i < 256; i++) {
+                mNormalization[c][i] = (i / 255f - mean[c]) / std[c];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Number of floats in one tensor.
+     */
+    public int getTensorSize() {
+        return 3 * mTargetWidth * mTargetHeight;
+    }
+
+    /**
+     * Allocate a direct, native-order buffer that fits one tensor. Allocate once and reuse it.
+     */
+    public FloatBuffer createOutputBuffer() {
+        return ByteBuffer.allocateDirect(getTensorSize() * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Convert a region of a YUV_420_888 Image into {@code out}.
+     *
+     * @param image : YUV_420_888 Image
+     * @param crop  : region of the Image to use, or null for the Image crop rectangle
+     * @param out   : destination, written from its position on; the position is not changed
+     * @return : {@code out}
+     */
+    public FloatBuffer convert(Image image, Rect crop, FloatBuffer out) {
+        mPlanes.setImage(image);
+        try {
+            if (crop != null) {
+                mPlanes.setCrop(crop.left, crop.top, crop.width(), crop.height());
+            }
+            convert(mPlanes, out);
+            return out;
+        } finally {
+            mPlanes.clear();
+        }
+    }
+
+    /**
+     * Convert the crop rectangle of {@code planes} into {@code out}, starting at its position.
+     * The position is not changed.
+     */
+    public void convert(RokidCameraYuvPlanes planes, FloatBuffer out) {
+        int base = out.position();
+        if (out.limit() - base < getTensorSize()) {
+            throw new IllegalArgumentException("Output buffer too small: " + (out.limit() - base) + " < " + getTensorSize());
+        }
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("Crop too small: " + width + "x" + height);
+        }
+        updateTables(width, height);
+
+        ByteBuffer yBuffer = planes.getBuffer(RokidCameraYuvPlanes.PLANE_Y);
+        ByteBuffer uBuffer = planes.getBuffer(RokidCameraYuvPlanes.PLANE_U);
+        ByteBuffer vBuffer = planes.getBuffer(RokidCameraYuvPlanes.PLANE_V);
+        int yRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_Y);
+        int uRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_U);
+        int vRowStride = planes.getRowStride(RokidCameraYuvPlanes.PLANE_V);
+        int yPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_Y);
+        int uPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_U);
+        int vPixelStride = planes.getPixelStride(RokidCameraYuvPlanes.PLANE_V);
+        int yStart = RokidCameraFormatConversionUtils.getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_Y);
+        int uStart = RokidCameraFormatConversionUtils.getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_U);
+        int vStart = RokidCameraFormatConversionUtils.getPlaneStart(planes, RokidCameraYuvPlanes.PLANE_V);
+
+        // output index of channel R, G and B of pixel 0, and distance between two pixels
+        int plane = mTargetWidth * mTargetHeight;
+        int channelStep = (mLayout == LAYOUT_CHW) ? plane : 1;
+        int pixelStep = (mLayout == LAYOUT_CHW) ? 1 : 3;
+        int rIndex = base + ((mChannelOrder == CHANNEL_ORDER_RGB) ? 0 : 2) * channelStep;
+        int gIndex = base + channelStep;
+        int bIndex = base + ((mChannelOrder == CHANNEL_ORDER_RGB) ? 2 : 0) * channelStep;
+        float[] rNorm = mNormalization[0];
+        float[] gNorm = mNormalization[1];
+        float[] bNorm = mNormalization[2];
+
+        int pixel = 0;
+        for (int oy = 0; oy < mTargetHeight; oy++) {
+            for (int ox = 0; ox < mTargetWidth; ox++) {
+                int y = sample(yBuffer, yStart, yRowStride, yPixelStride, mLumaX, mLumaY, ox, oy);
+                int u = sample(uBuffer, uStart, uRowStride, uPixelStride, mChromaX, mChromaY, ox, oy);
+                int v = sample(vBuffer, vStart, vRowStride, vPixelStride, mChromaX, mChromaY, ox, oy);
+                int argb = RokidCameraFormatConversionUtils.yuvToArgb(y, u, v);
+
+                int index = pixel * pixelStep;
+                out.put(rIndex + index, rNorm[(argb >> 16) & 0xFF]);
+                out.put(gIndex + index, gNorm[(argb >> 8) & 0xFF]);
+                out.put(bIndex + index, bNorm[argb & 0xFF]);
+                pixel++;
+            }
+        }
+    }
+
+    private static int sample(ByteBuffer buffer, int start, int rowStride, int pixelStride,
+                              Axis xAxis, Axis yAxis, int ox, int oy) {
+        int row0 = start + yAxis.mFirst[oy] * rowStride;
+        int row1 = start + yAxis.mSecond[oy] * rowStride;
+        int col0 = xAxis.mFirst[ox] * pixelStride;
+        int col1 = xAxis.mSecond[ox] * pixelStride;
+        int fx = xAxis.mWeight[ox];
+        int fy = yAxis.mWeight[oy];
+
+        int p00 = buffer.get(row0 + col0) & 0xFF;
+        if (fx == 0 && fy == 0) {
+            return p00;
+        }
+        int p01 = buffer.get(row0 + col1) & 0xFF;
+        int p10 = buffer.get(row1 + col0) & 0xFF;
+        int p11 = buffer.get(row1 + col1) & 0xFF;
+        int top = p00 * (WEIGHT_ONE - fx) + p01 * fx;
+        int bottom = p10 * (WEIGHT_ONE - fx) + p11 * fx;
+        return (top * (WEIGHT_ONE - fy) + bottom * fy + (1 << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS);
+    }
+
+    private void updateTables(int width, int height) {
+        if (width == mTableWidth && height == mTableHeight && mResizeMode == mTableResizeMode) {
+            return;
+        }
+        boolean nearest = mResizeMode == RESIZE_MODE_NEAREST;
+        mLumaX.update(width, nearest);
+        mLumaY.update(height, nearest);
+        mChromaX.update(width >> 1, nearest);
+        mChromaY.update(height >> 1, nearest);
+        mTableWidth = width;
+        mTableHeight = height;
+        mTableResizeMode = mResizeMode;
+    }
+
+    /**
+     * Source sample positions and weights for every output position along one axis.
+     */
+    private static class Axis {
+        final int[] mFirst;
+        final int[] mSecond;
+        final int[] mWeight;
+
+        Axis(int size) {
+            mFirst = new int[size];
+            mSecond = new int[size];
+            mWeight = new int[size];
+        }
+
+        void update(int sourceSize, boolean nearest) {
+            int targetSize = mFirst.length;
+            for (int i = 0; i < targetSize; i++) {
+                if (nearest) {
+                    mFirst[i] = Math.min(sourceSize - 1, (2 * i + 1) * sourceSize / (2 * targetSize));
+                    mSecond[i] = mFirst[i];
+                    mWeight[i] = 0;
+                    continue;
+                }
+                // map output pixel centers onto source pixel centers
+                float position = (i + 0.5f) * sourceSize / targetSize - 0.5f;
+                if (position < 0f) {
+                    position = 0f;
+                }
+                int first = Math.min((int) position, sourceSize - 1);
+                mFirst[i] = first;
+                mSecond[i] = Math.min(first + 1, sourceSize - 1);
+                mWeight[i] = Math.round((position - first) * WEIGHT_ONE);
+                if (mWeight[i] == WEIGHT_ONE) {
+                    mFirst[i] = mSecond[i];
+                    mWeight[i] = 0;
+                }
+            }
+        }
+    }
+}
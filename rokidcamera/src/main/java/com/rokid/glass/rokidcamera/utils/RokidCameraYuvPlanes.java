@@ -0,0 +1,114 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable description of the three planes of a YUV_420_888 frame.
+ * <p>
+ * The conversion methods in {@link RokidCameraFormatConversionUtils} only read buffers, strides
+ * and the crop rectangle from an {@link Image}. Keeping those values in a plain object lets the
+ * same instance be refilled for every frame without allocation, and lets the conversion code be
+ * exercised on the JVM with synthetic planes instead of a real {@link Image}.
+ * <p>
+ * The buffers are stored as given. The conversion methods never move their positions, each
+ * thread reads through its own duplicates, so threads sharing a frame can convert it concurrently.
+ */
+public class RokidCameraYuvPlanes {
+
+    public static final int PLANE_Y = 0;
+    public static final int PLANE_U = 1;
+    public static final int PLANE_V = 2;
+
+    private final ByteBuffer[] mBuffers = new ByteBuffer[3];
+    private final int[] mRowStrides = new int[3];
+    private final int[] mPixelStrides = new int[3];
+
+    private int mCropLeft;
+    private int mCropTop;
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * Fill this object with the planes and crop rectangle of a YUV_420_888 Image.
+     *
+     * @param image : YUV_420_888 Image from ImageReader
+     * @return : this object
+     */
+    public RokidCameraYuvPlanes setImage(Image image) {
+        Image.Plane[] planes = image.getPlanes();
+        for (int i = 0; i < 3; i++) {
+            setPlane(i, planes[i].getBuffer(), planes[i].getRowStride(), planes[i].getPixelStride());
+        }
+        Rect crop = image.getCropRect();
+        return setCrop(crop.left, crop.top, crop.width(), crop.height());
+    }
+
+    /**
+     * Set one plane of the frame.
+     *
+     * @param index       : {@link #PLANE_Y}, {@link #PLANE_U} or {@link #PLANE_V}
+     * @param buffer      : plane data, starting at the first sample of the plane
+     * @param rowStride   : distance in bytes between the starts of two rows
+     * @param pixelStride : distance in bytes between two samples of the same row
+     * @return : this object
+     */
+    public RokidCameraYuvPlanes setPlane(int index, ByteBuffer buffer, int rowStride, int pixelStride) {
+        mBuffers[index] = buffer;
+        mRowStrides[index] = rowStride;
+        mPixelStrides[index] = pixelStride;
+        return this;
+    }
+
+    /**
+     * Set the region of the frame that should be converted, in luma coordinates.
+     *
+     * @return : this object
+     */
+    public RokidCameraYuvPlanes setCrop(int left, int top, int width, int height) {
+        mCropLeft = left;
+        mCropTop = top;
+        mWidth = width;
+        mHeight = height;
+        return this;
+    }
+
+    /**
+     * Drop the buffer references so that a pooled instance does not keep a closed Image reachable.
+     */
+    public void clear() {
+        for (int i = 0; i < 3; i++) {
+            mBuffers[i] = null;
+        }
+    }
+
+    public ByteBuffer getBuffer(int index) {
+        return mBuffers[index];
+    }
+
+    public int getRowStride(int index) {
+        return mRowStrides[index];
+    }
+
+    public int getPixelStride(int index) {
+        return mPixelStrides[index];
+    }
+
+    public int getCropLeft() {
+        return mCropLeft;
+    }
+
+    public int getCropTop() {
+        return mCropTop;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+}
@@ -0,0 +1,77 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraBurstListener;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraBurstTest {
+
+    private final List<RokidCameraBurst> mCompleted = new CopyOnWriteArrayList<>();
+    private final RokidCameraBurstListener mListener = new RokidCameraBurstListener() {
+        @Override
+        public void onRokidCameraBurstCompleted(RokidCameraBurst burst) {
+            mCompleted.add(burst);
+        }
+    };
+
+    private static File[] files(int count) {
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = new File("IMG_" + i + ".jpg");
+        }
+        return files;
+    }
+
+    @Test
+    public void burst_completesOnceAfterLastShot() throws InterruptedException {
+        RokidCameraBurst burst = new RokidCameraBurst(10, files(3), mListener);
+        assertEquals(12, burst.getTicket(2).getTag());
+
+        burst.getTicket(1).complete(true);
+        burst.getTicket(0).complete(false);
+        assertFalse(burst.isDone());
+        assertEquals(0, burst.getDurationNanos());
+        assertTrue(mCompleted.isEmpty());
+
+        burst.getTicket(2).complete(true);
+        assertTrue(burst.await(0));
+        assertEquals(1, mCompleted.size());
+        assertEquals(2, burst.getSucceededCount());
+        assertEquals(Arrays.asList(new File("IMG_1.jpg"), new File("IMG_2.jpg")), burst.getFiles());
+        assertTrue(burst.getDurationNanos() >= 0);
+        assertTrue(burst.getTicket(2).getCompletedNanos() >= burst.getStartNanos());
+    }
+
+    @Test
+    public void shotsCompletedConcurrently_reportBurstOnce() throws InterruptedException {
+        final RokidCameraBurst burst = new RokidCameraBurst(0, files(16), mListener);
+        Thread[] savers = new Thread[4];
+        for (int t = 0; t < savers.length; t++) {
+            final int first = t;
+            savers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = first; i < burst.getCount(); i += 4) {
+                        burst.getTicket(i).complete(true);
+                    }
+                }
+            });
+            savers[t].start();
+        }
+        for (Thread saver : savers) {
+            saver.join();
+        }
+
+        assertEquals(1, mCompleted.size());
+        assertEquals(16, burst.getFiles().size());
+    }
+}
@@ -0,0 +1,98 @@
+package com.rokid.glass.rokidcamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RokidCameraCaptureMetadataTableTest {
+
+    private final RokidCameraCaptureMetadataTable mTable = new RokidCameraCaptureMetadataTable(3);
+
+    private static RokidCameraCaptureMetadata metadata(long timestamp) {
+        return new RokidCameraCaptureMetadata(timestamp, timestamp / 10, 10000000L, 33333333L, 100,
+                RokidCameraCaptureMetadata.UNKNOWN, 2, 2);
+    }
+
+    private RokidCameraFrame frame(long timestamp) {
+        return new RokidCameraFrame(null, timestamp, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null, mTable);
+    }
+
+    @Test
+    public void result_isMatchedByTimestamp() {
+        mTable.put(metadata(100));
+        mTable.put(metadata(200));
+
+        RokidCameraCaptureMetadata metadata = mTable.get(200);
+        assertEquals(200, metadata.getTimestamp());
+        assertEquals(20, metadata.getFrameNumber());
+        assertEquals(10000000L, metadata.getExposureTimeNanos());
+        assertEquals(RokidCameraCaptureMetadata.UNKNOWN, metadata.getAfState());
+        assertNull(mTable.get(300));
+    }
+
+    @Test
+    public void oldestResult_isEvictedWhenFull() {
+        for (int i = 1; i <= 5; i++) {
+            mTable.put(metadata(i * 100));
+        }
+
+        assertNull(mTable.get(100));
+        assertNull(mTable.get(200));
+        assertEquals(300, mTable.get(300).getTimestamp());
+        assertEquals(2, mTable.getEvictedCount());
+    }
+
+    @Test
+    public void matchedResult_isNotCountedAsEvicted() {
+        mTable.put(metadata(100));
+        mTable.get(100);
+        for (int i = 2; i <= 4; i++) {
+            mTable.put(metadata(i * 100));
+        }
+
+        assertEquals(0, mTable.getEvictedCount());
+    }
+
+    @Test
+    public void frame_waitsForLateResult() throws InterruptedException {
+        RokidCameraFrame frame = frame(500);
+        assertNull(frame.getCaptureMetadata());
+
+        Thread camera = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mTable.put(metadata(500));
+            }
+        });
+        camera.start();
+
+        RokidCameraCaptureMetadata metadata = frame.awaitCaptureMetadata(5000);
+        camera.join();
+        assertEquals(500, metadata.getTimestamp());
+    }
+
+    @Test
+    public void frame_keepsResultAfterEviction() throws InterruptedException {
+        mTable.put(metadata(100));
+        RokidCameraFrame frame = frame(100);
+        assertEquals(100, frame.getCaptureMetadata().getTimestamp());
+
+        for (int i = 2; i <= 4; i++) {
+            mTable.put(metadata(i * 100));
+        }
+        assertNull(mTable.get(100));
+        assertEquals(100, frame.getCaptureMetadata().getTimestamp());
+        assertNull(frame(900).awaitCaptureMetadata(10));
+        assertEquals(0, mTable.getEvictedCount());
+    }
+}
@@ -0,0 +1,88 @@
+package com.rokid.glass.rokidcamera;
+
+import android.hardware.camera2.CaptureResult;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraCaptureSequenceTest {
+
+    private static final long MS = 1000000L;
+
+    private final RokidCameraCaptureSequence mSequence = new RokidCameraCaptureSequence(1000 * MS, 500 * MS);
+
+    @Test
+    public void focusLockedAndExposureConverged_capturesRightAway() {
+        mSequence.start(0, true);
+
+        assertEquals(RokidCameraCaptureSequence.ACTION_NONE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_ACTIVE_SCAN, CaptureResult.CONTROL_AE_STATE_CONVERGED, 30 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_CAPTURE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED, CaptureResult.CONTROL_AE_STATE_CONVERGED, 60 * MS));
+
+        assertTrue(mSequence.isIdle());
+        assertEquals(60 * MS, mSequence.getFocusNanos());
+        assertEquals(0, mSequence.getExposureNanos());
+        assertFalse(mSequence.isTimedOut());
+    }
+
+    @Test
+    public void unconvergedExposure_runsPrecaptureUntilMeteringEnds() {
+        mSequence.start(0, true);
+
+        assertEquals(RokidCameraCaptureSequence.ACTION_PRECAPTURE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED, CaptureResult.CONTROL_AE_STATE_SEARCHING, 100 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_NONE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED, CaptureResult.CONTROL_AE_STATE_PRECAPTURE, 130 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_NONE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED, CaptureResult.CONTROL_AE_STATE_PRECAPTURE, 160 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_CAPTURE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED, CaptureResult.CONTROL_AE_STATE_CONVERGED, 190 * MS));
+
+        assertEquals(100 * MS, mSequence.getFocusNanos());
+        assertEquals(90 * MS, mSequence.getExposureNanos());
+        assertFalse(mSequence.isTimedOut());
+    }
+
+    @Test
+    public void focusNeverLocking_capturesAfterTimeout() {
+        mSequence.start(0, true);
+
+        assertEquals(RokidCameraCaptureSequence.ACTION_NONE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_ACTIVE_SCAN, CaptureResult.CONTROL_AE_STATE_CONVERGED, 999 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_CAPTURE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_ACTIVE_SCAN, CaptureResult.CONTROL_AE_STATE_CONVERGED, 1000 * MS));
+
+        assertTrue(mSequence.isTimedOut());
+        assertEquals(1000 * MS, mSequence.getFocusNanos());
+    }
+
+    @Test
+    public void withoutResults_timeoutBoundsEachWait() {
+        mSequence.start(0, true);
+        assertEquals(400 * MS, mSequence.getRemainingNanos(600 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_NONE, mSequence.onTimeout(600 * MS));
+
+        assertEquals(RokidCameraCaptureSequence.ACTION_PRECAPTURE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED, CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED, 700 * MS));
+        assertEquals(500 * MS, mSequence.getRemainingNanos(700 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_CAPTURE, mSequence.onTimeout(1200 * MS));
+
+        assertTrue(mSequence.isTimedOut());
+        assertEquals(500 * MS, mSequence.getExposureNanos());
+        assertEquals(RokidCameraCaptureSequence.ACTION_NONE, mSequence.onTimeout(5000 * MS));
+    }
+
+    @Test
+    public void withoutAutoFocus_onlyExposureIsWaitedFor() {
+        mSequence.start(0, false);
+
+        assertEquals(RokidCameraCaptureSequence.ACTION_CAPTURE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_INACTIVE, null, 30 * MS));
+        assertEquals(RokidCameraCaptureSequence.ACTION_NONE, mSequence.onResult(
+                CaptureResult.CONTROL_AF_STATE_INACTIVE, null, 60 * MS));
+    }
+}
@@ -0,0 +1,124 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraCaptureListener;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraCaptureTicketTableTest {
+
+    private final RokidCameraCaptureTicketTable mTable = new RokidCameraCaptureTicketTable();
+    private final List<RokidCameraCaptureTicket> mCompleted = new CopyOnWriteArrayList<>();
+    private final RokidCameraCaptureListener mListener = new RokidCameraCaptureListener() {
+        @Override
+        public void onRokidCameraCaptureCompleted(RokidCameraCaptureTicket ticket) {
+            mCompleted.add(ticket);
+        }
+    };
+
+    private RokidCameraCaptureTicket ticket(int tag) {
+        return new RokidCameraCaptureTicket(tag, new File("IMG_" + tag + ".jpg"), mListener);
+    }
+
+    @Test
+    public void pipelinedCaptures_areMatchedByTimestamp() {
+        RokidCameraCaptureTicket first = ticket(0);
+        RokidCameraCaptureTicket second = ticket(1);
+        mTable.add(first);
+        mTable.add(second);
+        mTable.bind(first, 1000);
+        mTable.bind(second, 2000);
+
+        // Images may arrive in any order
+        assertSame(second, mTable.take(2000));
+        assertSame(first, mTable.take(1000));
+        assertNull(mTable.take(1000));
+        assertEquals(0, mTable.size());
+    }
+
+    @Test
+    public void imageBeforeCaptureStarted_waitsForBinding() throws InterruptedException {
+        final RokidCameraCaptureTicket ticket = ticket(0);
+        mTable.add(ticket);
+        Thread control = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mTable.bind(ticket, 3000);
+            }
+        });
+        control.start();
+
+        assertSame(ticket, mTable.await(3000, 5000));
+        control.join();
+    }
+
+    @Test
+    public void imageWithoutCapture_isNotMatched() throws InterruptedException {
+        mTable.add(ticket(0));
+        assertNull(mTable.await(4000, 50));
+        assertEquals(1, mTable.size());
+    }
+
+    @Test
+    public void ticket_completesOnce() throws InterruptedException {
+        RokidCameraCaptureTicket ticket = ticket(7);
+        assertFalse(ticket.isDone());
+        assertFalse(ticket.await(0));
+
+        assertTrue(ticket.complete(true));
+        assertFalse(ticket.complete(false));
+        assertTrue(ticket.await(0));
+        assertTrue(ticket.isSuccessful());
+        assertEquals(1, mCompleted.size());
+    }
+
+    @Test
+    public void failAll_failsCapturesInFlight() {
+        RokidCameraCaptureTicket first = ticket(0);
+        RokidCameraCaptureTicket second = ticket(1);
+        mTable.add(first);
+        mTable.add(second);
+        second.complete(true);
+
+        mTable.failAll();
+
+        assertEquals(RokidCameraCaptureTicket.STATE_FAILED, first.getState());
+        assertEquals(RokidCameraCaptureTicket.STATE_SUCCEEDED, second.getState());
+        assertEquals(2, mCompleted.size());
+        assertEquals(0, mTable.size());
+    }
+
+    @Test
+    public void listener_mayTakeAnotherPicture() {
+        final AtomicReference<RokidCameraCaptureTicket> next = new AtomicReference<>();
+        RokidCameraCaptureTicket ticket = new RokidCameraCaptureTicket(0, null, new RokidCameraCaptureListener() {
+            @Override
+            public void onRokidCameraCaptureCompleted(RokidCameraCaptureTicket ticket) {
+                RokidCameraCaptureTicket again = ticket(1);
+                mTable.add(again);
+                next.set(again);
+            }
+        });
+        mTable.add(ticket);
+
+        mTable.failAll();
+
+        assertEquals(1, mTable.size());
+        assertSame(next.get(), mTable.take(RokidCameraCaptureTicket.UNKNOWN_TIMESTAMP));
+    }
+}
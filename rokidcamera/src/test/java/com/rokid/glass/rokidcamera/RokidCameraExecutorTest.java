@@ -0,0 +1,102 @@
+package com.rokid.glass.rokidcamera;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraExecutorTest {
+
+    private final RokidCameraQueueTimeStats mStats = new RokidCameraQueueTimeStats();
+
+    @Test
+    public void queueTime_includesTimeBehindSlowTask() throws InterruptedException {
+        RokidCameraExecutor executor = RokidCameraExecutor.newBounded("test", 1, 4, mStats);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                await(gate);
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        Thread.sleep(50);
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(2, mStats.getTaskCount());
+        assertTrue(mStats.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(mStats.getAverageNanos() <= mStats.getMaxNanos());
+        mStats.reset();
+        assertEquals(0, mStats.getTaskCount());
+        assertEquals(0, mStats.getMaxNanos());
+        executor.shutdown(1000);
+    }
+
+    @Test
+    public void boundedExecutor_rejectsWhenQueueIsFull() {
+        RokidCameraExecutor executor = RokidCameraExecutor.newBounded("test", 1, 1, mStats);
+        final CountDownLatch gate = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                await(gate);
+            }
+        };
+
+        assertTrue(executor.tryExecute(blocked));
+        // wait until the thread runs the first task, so exactly one can queue
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mStats.getTaskCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertTrue(executor.tryExecute(blocked));
+        assertFalse(executor.tryExecute(blocked));
+
+        gate.countDown();
+        assertTrue(executor.shutdown(5000));
+        assertEquals(2, mStats.getTaskCount());
+    }
+
+    @Test
+    public void shutdown_finishesQueuedTasks() {
+        RokidCameraExecutor executor = RokidCameraExecutor.newBounded("test", 2, 8, mStats);
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 8; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+
+        assertTrue(executor.shutdown(5000));
+        assertEquals(8, count.get());
+        assertFalse(executor.tryExecute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RokidCameraFrameDispatcherTest {
+
+    private final RokidCameraFrameDispatcher mDispatcher = new RokidCameraFrameDispatcher();
+    // timestamps of the frames whose Image was closed
+    private final List<Long> mClosed = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        mDispatcher.stop();
+    }
+
+    private RokidCameraFrame frame(final long timestamp) {
+        return new RokidCameraFrame(null, timestamp, new Runnable() {
+            @Override
+            public void run() {
+                mClosed.add(timestamp);
+            }
+        });
+    }
+
+    /**
+     * Consumer that hands frames to the test thread without releasing them.
+     */
+    private static class HoldingConsumer implements RokidCameraFrameConsumer {
+        final BlockingQueue<RokidCameraFrame> mFrames = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onRokidCameraFrameAvailable(RokidCameraFrame frame) {
+            mFrames.add(frame);
+        }
+
+        RokidCameraFrame next() throws InterruptedException {
+            RokidCameraFrame frame = mFrames.poll(5, TimeUnit.SECONDS);
+            assertNotNull("no frame delivered", frame);
+            return frame;
+        }
+    }
+
+    /**
+     * Consumer that releases right away, after an optional gate opens.
+     */
+    private static class GatedConsumer implements RokidCameraFrameConsumer {
+        final CountDownLatch mGate;
+        final List<Long> mReceived = new CopyOnWriteArrayList<>();
+        final CountDownLatch mEntered = new CountDownLatch(1);
+
+        GatedConsumer(CountDownLatch gate) {
+            mGate = gate;
+        }
+
+        @Override
+        public void onRokidCameraFrameAvailable(RokidCameraFrame frame) {
+            mEntered.countDown();
+            try {
+                mGate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mReceived.add(frame.getTimestamp());
+            frame.release();
+        }
+    }
+
+    @Test
+    public void image_isClosedWhenLastConsumerReleases() throws InterruptedException {
+        HoldingConsumer first = new HoldingConsumer();
+        HoldingConsumer second = new HoldingConsumer();
+        mDispatcher.addConsumer(first, new RokidCameraFrameConsumerConfig());
+        mDispatcher.addConsumer(second, new RokidCameraFrameConsumerConfig());
+        mDispatcher.start();
+
+        mDispatcher.dispatch(frame(1));
+        RokidCameraFrame a = first.next();
+        RokidCameraFrame b = second.next();
+        assertTrue(a == b);
+
+        a.release();
+        assertTrue(mClosed.isEmpty());
+        b.release();
+        assertEquals(1, mClosed.size());
+        assertTrue(a.isReleased());
+    }
+
+    @Test
+    public void frameWithoutTakers_isClosedAtOnce() {
+        mDispatcher.addConsumer(new HoldingConsumer(), new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_EVERY_NTH)
+                .setFrameInterval(2));
+        mDispatcher.start();
+
+        mDispatcher.dispatch(frame(0));
+        mDispatcher.dispatch(frame(1));
+
+        // frame 1 is not the consumer's turn
+        assertEquals(1, mClosed.size());
+        assertEquals(1L, (long) mClosed.get(0));
+    }
+
+    @Test
+    public void targetFps_selectsFramesBySensorTimestamp() throws InterruptedException {
+        HoldingConsumer consumer = new HoldingConsumer();
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(8)
+                .setTargetFps(10));
+        mDispatcher.start();
+
+        // 30 fps stream: only every third frame is due
+        long period = 33333333L;
+        int selected = 0;
+        for (int i = 0; i < 9; i++) {
+            if (mDispatcher.select(i * period)) {
+                selected++;
+                mDispatcher.dispatchSelected(frame(i * period));
+            }
+        }
+
+        assertEquals(3, selected);
+        for (int i = 0; i < 3; i++) {
+            RokidCameraFrame frame = consumer.next();
+            assertEquals(i * 3 * period, frame.getTimestamp());
+            frame.release();
+        }
+    }
+
+    @Test
+    public void maxFrameAge_dropsFramesTooOldAtDispatch() throws InterruptedException {
+        HoldingConsumer consumer = new HoldingConsumer();
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(4)
+                .setMaxFrameAgeMillis(50));
+        mDispatcher.start();
+
+        long now = System.nanoTime();
+        mDispatcher.dispatch(frame(now - 100000000L));
+        mDispatcher.dispatch(frame(now));
+
+        RokidCameraFrame frame = consumer.next();
+        assertEquals(now, frame.getTimestamp());
+        frame.release();
+        assertEquals(1, mDispatcher.getExpiredCount(0));
+        assertEquals(2, mClosed.size());
+    }
+
+    @Test
+    public void maxFrameAge_dropsFramesThatExpireInTheQueue() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedConsumer consumer = new GatedConsumer(gate);
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(4)
+                .setMaxFrameAgeMillis(50));
+        mDispatcher.start();
+
+        mDispatcher.dispatch(frame(System.nanoTime()));
+        assertTrue(consumer.mEntered.await(5, TimeUnit.SECONDS));
+        long queued = System.nanoTime();
+        mDispatcher.dispatch(frame(queued));
+        // the second frame waits behind the blocked callback until it is too old
+        Thread.sleep(100);
+        gate.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mClosed.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, mClosed.size());
+        assertEquals(1, consumer.mReceived.size());
+        assertEquals(1, mDispatcher.getExpiredCount(0));
+    }
+
+    @Test
+    public void slowConsumer_doesNotStallOthers() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedConsumer slow = new GatedConsumer(gate);
+        HoldingConsumer fast = new HoldingConsumer();
+        mDispatcher.addConsumer(slow, new RokidCameraFrameConsumerConfig());
+        mDispatcher.addConsumer(fast, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(8));
+        mDispatcher.start();
+
+        mDispatcher.dispatch(frame(0));
+        assertTrue(slow.mEntered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 5; i++) {
+            mDispatcher.dispatch(frame(i));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            RokidCameraFrame frame = fast.next();
+            assertEquals(i, frame.getTimestamp());
+            frame.release();
+        }
+        // only the frame in the slow consumer's callback and its latest waiting frame are still open
+        assertEquals(3, mClosed.size());
+        gate.countDown();
+    }
+
+    @Test
+    public void latestOnly_replacesWaitingFrame() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedConsumer consumer = new GatedConsumer(gate);
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig());
+        mDispatcher.start();
+
+        mDispatcher.dispatch(frame(0));
+        assertTrue(consumer.mEntered.await(5, TimeUnit.SECONDS));
+        mDispatcher.dispatch(frame(1));
+        mDispatcher.dispatch(frame(2));
+
+        // frame 1 was replaced by frame 2 and closed without delivery
+        assertEquals(1, mClosed.size());
+        assertEquals(1L, (long) mClosed.get(0));
+        assertEquals(1, mDispatcher.getDroppedCount(0));
+
+        gate.countDown();
+        waitForClosed(3);
+        assertEquals(2, consumer.mReceived.size());
+        assertEquals(0L, (long) consumer.mReceived.get(0));
+        assertEquals(2L, (long) consumer.mReceived.get(1));
+    }
+
+    @Test
+    public void boundedFifo_dropsNewFramesWhenFull() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedConsumer consumer = new GatedConsumer(gate);
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(2));
+        mDispatcher.start();
+
+        mDispatcher.dispatch(frame(0));
+        assertTrue(consumer.mEntered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            mDispatcher.dispatch(frame(i));
+        }
+
+        assertEquals(2, mDispatcher.getQueuedCount(0));
+        assertEquals(2, mDispatcher.getDroppedCount(0));
+
+        gate.countDown();
+        waitForClosed(5);
+        assertEquals(3, consumer.mReceived.size());
+        assertEquals(1L, (long) consumer.mReceived.get(1));
+        assertEquals(2L, (long) consumer.mReceived.get(2));
+    }
+
+    @Test
+    public void everyNth_takesEveryNthFrame() throws InterruptedException {
+        GatedConsumer consumer = new GatedConsumer(new CountDownLatch(0));
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_EVERY_NTH)
+                .setFrameInterval(3)
+                .setQueueCapacity(4));
+        mDispatcher.start();
+
+        for (int i = 0; i < 9; i++) {
+            mDispatcher.dispatch(frame(i));
+        }
+
+        waitForClosed(9);
+        assertEquals(3, consumer.mReceived.size());
+        assertEquals(0L, (long) consumer.mReceived.get(0));
+        assertEquals(3L, (long) consumer.mReceived.get(1));
+        assertEquals(6L, (long) consumer.mReceived.get(2));
+    }
+
+    @Test
+    public void stop_releasesWaitingFrames() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedConsumer consumer = new GatedConsumer(gate);
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(4));
+        mDispatcher.start();
+        mDispatcher.dispatch(frame(0));
+        assertTrue(consumer.mEntered.await(5, TimeUnit.SECONDS));
+        mDispatcher.dispatch(frame(1));
+        mDispatcher.dispatch(frame(2));
+
+        gate.countDown();
+        mDispatcher.stop();
+
+        assertEquals(3, mClosed.size());
+    }
+
+    @Test
+    public void threadPool_deliversEveryFrameOnce() throws InterruptedException {
+        GatedConsumer consumer = new GatedConsumer(new CountDownLatch(0));
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(64)
+                .setThreadCount(3)
+                .setWaitStrategy(RokidCameraFrameConsumerConfig.WAIT_STRATEGY_YIELD));
+        mDispatcher.start();
+
+        for (int i = 0; i < 50; i++) {
+            mDispatcher.dispatch(frame(i));
+        }
+
+        waitForClosed(50);
+        assertEquals(50, consumer.mReceived.size());
+        assertEquals(50, mDispatcher.getDeliveredCount(0));
+        assertEquals(0, mDispatcher.getDroppedCount(0));
+        assertEquals(0, mDispatcher.getQueuedCount(0));
+    }
+
+    @Test
+    public void consumerLatency_isRecordedPerDelivery() throws InterruptedException {
+        RokidCameraLatencyMetrics metrics = new RokidCameraLatencyMetrics();
+        mDispatcher.setLatencyMetrics(metrics);
+        GatedConsumer consumer = new GatedConsumer(new CountDownLatch(0));
+        mDispatcher.addConsumer(consumer, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO)
+                .setQueueCapacity(4));
+        mDispatcher.start();
+
+        mDispatcher.dispatch(frame(0));
+        mDispatcher.dispatch(frame(1));
+        waitForClosed(2);
+        // the histogram is recorded right after the consumer released the frame
+        mDispatcher.stop();
+
+        RokidCameraLatencyHistogram histogram = metrics.getHistogram(RokidCameraLatencyMetrics.STAGE_CONSUMER);
+        assertEquals(2, histogram.getCount());
+        assertTrue(histogram.getMaxNanos() > 0);
+    }
+
+    @Test
+    public void frame_cannotBeReleasedTwice() {
+        RokidCameraFrame frame = frame(0);
+        frame.release();
+
+        assertTrue(frame.isReleased());
+        try {
+            frame.release();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(1, mClosed.size());
+        assertFalse(mDispatcher.hasConsumers());
+    }
+
+    private void waitForClosed(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mClosed.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, mClosed.size());
+    }
+}
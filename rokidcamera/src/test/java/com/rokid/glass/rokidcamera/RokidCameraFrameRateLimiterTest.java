@@ -0,0 +1,60 @@
+package com.rokid.glass.rokidcamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraFrameRateLimiterTest {
+
+    private static final long PERIOD_30_FPS = 33333333L;
+
+    private static int countAccepted(RokidCameraFrameRateLimiter limiter, int frames, long jitterNanos) {
+        int accepted = 0;
+        for (int i = 0; i < frames; i++) {
+            // alternate early and late frames
+            long jitter = i % 2 == 0 ? -jitterNanos : jitterNanos;
+            if (limiter.accept(i * PERIOD_30_FPS + jitter)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Test
+    public void noLimit_acceptsEveryFrame() {
+        RokidCameraFrameRateLimiter limiter = new RokidCameraFrameRateLimiter(0, 1);
+        assertFalse(limiter.isLimited());
+        assertEquals(30, countAccepted(limiter, 30, 0));
+    }
+
+    @Test
+    public void frameInterval_acceptsEveryNthFrame() {
+        RokidCameraFrameRateLimiter limiter = new RokidCameraFrameRateLimiter(0, 3);
+        assertTrue(limiter.isLimited());
+        assertTrue(limiter.accept(0));
+        assertFalse(limiter.accept(1));
+        assertFalse(limiter.accept(2));
+        assertTrue(limiter.accept(3));
+    }
+
+    @Test
+    public void targetFps_keepsRateDespiteSensorJitter() {
+        // 300 frames of 30 fps are 10 seconds
+        assertEquals(100, countAccepted(new RokidCameraFrameRateLimiter(10, 1), 300, 2000000L));
+        assertEquals(50, countAccepted(new RokidCameraFrameRateLimiter(5, 1), 300, 2000000L));
+    }
+
+    @Test
+    public void targetFps_restartsAfterPause() {
+        RokidCameraFrameRateLimiter limiter = new RokidCameraFrameRateLimiter(10, 1);
+        assertTrue(limiter.accept(0));
+        // stream paused for a second, no burst of catch-up frames afterwards
+        long resumed = 1000000000L;
+        assertTrue(limiter.accept(resumed));
+        assertFalse(limiter.accept(resumed + PERIOD_30_FPS));
+        assertFalse(limiter.accept(resumed + 2 * PERIOD_30_FPS));
+        assertTrue(limiter.accept(resumed + 3 * PERIOD_30_FPS));
+    }
+}
@@ -0,0 +1,134 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameLeakListener;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraFrameTrackerTest {
+
+    private final RokidCameraFrameTracker mTracker = new RokidCameraFrameTracker(3);
+    // timestamps of the frames whose Image was closed
+    private final List<Long> mClosed = new CopyOnWriteArrayList<>();
+    private final List<Object[]> mLeaks = new CopyOnWriteArrayList<>();
+    private final RokidCameraFrameLeakListener mLeakListener = new RokidCameraFrameLeakListener() {
+        @Override
+        public void onRokidCameraFrameLeaked(long timestamp, long heldNanos, boolean collected, Throwable acquireSite) {
+            mLeaks.add(new Object[]{timestamp, heldNanos, collected, acquireSite});
+        }
+    };
+
+    private RokidCameraFrame frame(final long timestamp) {
+        return new RokidCameraFrame(null, timestamp, new Runnable() {
+            @Override
+            public void run() {
+                mClosed.add(timestamp);
+            }
+        }, mTracker);
+    }
+
+    @Test
+    public void outstandingFrames_areCountedUntilLastRelease() {
+        RokidCameraFrame first = frame(1);
+        RokidCameraFrame second = frame(2);
+        assertEquals(2, mTracker.getOutstandingCount());
+        assertFalse(mTracker.isExhausted());
+
+        RokidCameraFrame third = frame(3);
+        assertTrue(mTracker.isExhausted());
+
+        first.retain();
+        first.release();
+        assertEquals(3, mTracker.getOutstandingCount());
+        first.release();
+        second.release();
+        third.release();
+        assertEquals(0, mTracker.getOutstandingCount());
+        assertEquals(3, mClosed.size());
+    }
+
+    @Test
+    public void retainedFrame_survivesOtherThreadRelease() throws InterruptedException {
+        final RokidCameraFrame frame = frame(7);
+        final RokidCameraFrame lease = frame.retain();
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lease.getImage();
+                lease.release();
+            }
+        });
+        frame.release();
+        assertTrue(mClosed.isEmpty());
+
+        worker.start();
+        worker.join();
+        assertEquals(1, mClosed.size());
+        assertEquals(0, mTracker.getOutstandingCount());
+    }
+
+    @Test
+    public void frameHeldTooLong_isReportedOnce() {
+        mTracker.setLeakListener(mLeakListener, 100);
+        RokidCameraFrame frame = frame(5);
+        long now = System.nanoTime();
+
+        assertEquals(0, mTracker.checkLeaks(now));
+        assertEquals(1, mTracker.checkLeaks(now + 200000000L));
+        assertEquals(0, mTracker.checkLeaks(now + 400000000L));
+
+        assertEquals(1, mLeaks.size());
+        assertEquals(5L, mLeaks.get(0)[0]);
+        assertFalse((Boolean) mLeaks.get(0)[2]);
+        assertNotNull(mLeaks.get(0)[3]);
+        // a frame held too long is only reported, never closed
+        assertTrue(mClosed.isEmpty());
+        frame.release();
+        assertEquals(1, mTracker.getLeakedCount());
+    }
+
+    @Test
+    public void collectedFrame_isReportedAndClosed() throws InterruptedException {
+        mTracker.setLeakListener(mLeakListener, 0);
+        leakFrame(9);
+        assertEquals(1, mTracker.getOutstandingCount());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        int leaks = 0;
+        while (leaks == 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+            leaks = mTracker.checkLeaks();
+        }
+
+        assertEquals(1, leaks);
+        assertEquals(1, mLeaks.size());
+        assertTrue((Boolean) mLeaks.get(0)[2]);
+        assertEquals(1, mClosed.size());
+        assertEquals(9L, (long) mClosed.get(0));
+        assertEquals(0, mTracker.getOutstandingCount());
+    }
+
+    @Test
+    public void releasedFrame_isNotReported() throws InterruptedException {
+        mTracker.setLeakListener(mLeakListener, 0);
+        frame(4).release();
+        System.gc();
+        Thread.sleep(10);
+
+        assertEquals(0, mTracker.checkLeaks());
+        assertTrue(mLeaks.isEmpty());
+        assertEquals(1, mClosed.size());
+    }
+
+    private void leakFrame(long timestamp) {
+        frame(timestamp);
+    }
+}
@@ -0,0 +1,100 @@
+package com.rokid.glass.rokidcamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraLatencyHistogramTest {
+
+    private final RokidCameraLatencyHistogram mHistogram = new RokidCameraLatencyHistogram();
+
+    @Test
+    public void buckets_coverValuesWithinThreePercent() {
+        int previous = -1;
+        for (long value = 0; value < (1L << 36); value = value * 17 / 16 + 1) {
+            int index = RokidCameraLatencyHistogram.getBucketIndex(value);
+            assertTrue(index >= previous);
+            assertTrue(index < RokidCameraLatencyHistogram.BUCKET_COUNT);
+            long upper = RokidCameraLatencyHistogram.getBucketUpperBound(index);
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / 32);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void percentiles_ofUniformValues() {
+        for (int i = 1; i <= 1000; i++) {
+            mHistogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, mHistogram.getCount());
+        assertEquals(1000000L, mHistogram.getMaxNanos());
+        assertEquals(500500L, mHistogram.getMeanNanos());
+        assertWithin(500000L, mHistogram.getP50Nanos());
+        assertWithin(990000L, mHistogram.getP99Nanos());
+        assertEquals(1000000L, mHistogram.getPercentileNanos(100));
+        assertWithin(1000L, mHistogram.getPercentileNanos(0));
+    }
+
+    @Test
+    public void outliers_areCountedInLastBucket() {
+        mHistogram.record(100);
+        mHistogram.record(-5);
+        mHistogram.record(200L * 1000000000L);
+
+        assertEquals(2, mHistogram.getCount());
+        assertEquals(200L * 1000000000L, mHistogram.getMaxNanos());
+        assertEquals(200L * 1000000000L, mHistogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void reset_forgetsValues() {
+        mHistogram.record(5000);
+        mHistogram.reset();
+
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getMaxNanos());
+        assertEquals(0, mHistogram.getP99Nanos());
+    }
+
+    @Test
+    public void concurrentRecording_countsEveryValue() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        mHistogram.record(i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, mHistogram.getCount());
+        assertEquals(9999, mHistogram.getMaxNanos());
+    }
+
+    @Test
+    public void metrics_resetEveryStage() {
+        RokidCameraLatencyMetrics metrics = new RokidCameraLatencyMetrics();
+        metrics.record(RokidCameraLatencyMetrics.STAGE_CALLBACK, 10);
+        metrics.record(RokidCameraLatencyMetrics.STAGE_CONSUMER, 20);
+
+        assertEquals(1, metrics.getHistogram(RokidCameraLatencyMetrics.STAGE_CALLBACK).getCount());
+        metrics.reset();
+        assertEquals(0, metrics.getHistogram(RokidCameraLatencyMetrics.STAGE_CALLBACK).getCount());
+        assertEquals(0, metrics.getHistogram(RokidCameraLatencyMetrics.STAGE_CONSUMER).getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                actual >= expected && actual - expected <= expected / 32);
+    }
+}
@@ -0,0 +1,85 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraLoadSheddingListener;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraLoadShedderTest {
+
+    private static final long BUDGET_NANOS = 50000000L;
+
+    private final RokidCameraLoadShedder mShedder = new RokidCameraLoadShedder(2, BUDGET_NANOS);
+    private final List<int[]> mEvents = new CopyOnWriteArrayList<>();
+
+    {
+        mShedder.setListener(new RokidCameraLoadSheddingListener() {
+            @Override
+            public void onRokidCameraLoadShedding(int consumerIndex, int frameInterval, long latencyNanos, int reason) {
+                mEvents.add(new int[]{consumerIndex, frameInterval, reason});
+            }
+        });
+    }
+
+    private void recordFrames(int frames, long latencyNanos) {
+        for (int i = 0; i < frames; i++) {
+            mShedder.record(latencyNanos);
+        }
+    }
+
+    @Test
+    public void withinBudget_admitsEveryFrame() {
+        recordFrames(100, BUDGET_NANOS / 2);
+        assertEquals(1, mShedder.getFrameInterval());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(mShedder.admit());
+        }
+        assertEquals(0, mShedder.getShedCount());
+        assertTrue(mEvents.isEmpty());
+    }
+
+    @Test
+    public void overBudget_stepsRateDownOnePerSettlePeriod() {
+        recordFrames(RokidCameraLoadShedder.SETTLE_FRAMES, 2 * BUDGET_NANOS);
+        assertEquals(2, mShedder.getFrameInterval());
+        assertEquals(1, mEvents.size());
+        assertEquals(2, mEvents.get(0)[0]);
+        assertEquals(2, mEvents.get(0)[1]);
+        assertEquals(RokidCameraLoadSheddingListener.REASON_OVER_BUDGET, mEvents.get(0)[2]);
+
+        assertTrue(mShedder.admit());
+        assertFalse(mShedder.admit());
+        assertEquals(1, mShedder.getShedCount());
+
+        recordFrames(100 * RokidCameraLoadShedder.SETTLE_FRAMES, 2 * BUDGET_NANOS);
+        assertEquals(RokidCameraLoadShedder.MAX_FRAME_INTERVAL, mShedder.getFrameInterval());
+    }
+
+    @Test
+    public void underHalfBudget_stepsRateBackUp() {
+        recordFrames(3 * RokidCameraLoadShedder.SETTLE_FRAMES, 2 * BUDGET_NANOS);
+        assertEquals(4, mShedder.getFrameInterval());
+
+        recordFrames(100 * RokidCameraLoadShedder.SETTLE_FRAMES, BUDGET_NANOS / 10);
+        assertEquals(1, mShedder.getFrameInterval());
+        int[] last = mEvents.get(mEvents.size() - 1);
+        assertEquals(1, last[1]);
+        assertEquals(RokidCameraLoadSheddingListener.REASON_UNDER_BUDGET, last[2]);
+    }
+
+    @Test
+    public void zeroBudget_neverSheds() {
+        RokidCameraLoadShedder shedder = new RokidCameraLoadShedder(0, 0);
+        for (int i = 0; i < 100; i++) {
+            shedder.record(Long.MAX_VALUE / 2);
+        }
+        assertEquals(1, shedder.getFrameInterval());
+        assertEquals(0, shedder.getAdjustmentCount());
+    }
+}
@@ -0,0 +1,91 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.utils.RokidCameraBufferPool;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RokidCameraLumaFrameTest {
+
+    private static ByteBuffer plane(int width, int height, int rowStride) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(rowStride * (height - 1) + width);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                buffer.put(row * rowStride + col, (byte) (row * 31 + col));
+            }
+        }
+        return buffer;
+    }
+
+    @Test
+    public void unpaddedPlane_isExposedWithoutCopy() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(1);
+        RokidCameraLumaFrame frame = new RokidCameraLumaFrame(pool);
+        ByteBuffer plane = plane(16, 8, 16);
+
+        frame.wrap(plane, 16, 1, 0, 0, 16, 8, 42L);
+
+        assertFalse(frame.isCopied());
+        assertTrue(frame.getBuffer().isReadOnly());
+        assertEquals(16 * 8, frame.getBuffer().remaining());
+        assertEquals(16, frame.getRowStride());
+        assertEquals(42L, frame.getTimestamp());
+        // a view, not a copy: changes to the plane show through
+        plane.put(17, (byte) 99);
+        assertEquals(99, frame.getBuffer().get(17));
+    }
+
+    @Test
+    public void paddedPlane_isCompactedIntoPooledArray() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(1);
+        RokidCameraLumaFrame frame = new RokidCameraLumaFrame(pool);
+
+        frame.wrap(plane(16, 8, 24), 24, 1, 0, 0, 16, 8, 0L);
+
+        assertTrue(frame.isCopied());
+        ByteBuffer buffer = frame.getBuffer();
+        assertEquals(16 * 8, buffer.remaining());
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 16; col++) {
+                assertEquals((byte) (row * 31 + col), buffer.get(row * 16 + col));
+            }
+        }
+
+        frame.release();
+        assertEquals(1, pool.getPooledCount(16 * 8));
+    }
+
+    @Test
+    public void cropRectangle_isApplied() {
+        RokidCameraLumaFrame frame = new RokidCameraLumaFrame(new RokidCameraBufferPool(1));
+
+        frame.wrap(plane(16, 8, 16), 16, 1, 4, 2, 8, 4, 0L);
+
+        assertEquals(8, frame.getWidth());
+        assertEquals(4, frame.getHeight());
+        assertEquals((byte) (2 * 31 + 4), frame.getBuffer().get(0));
+        assertEquals((byte) (5 * 31 + 11), frame.getBuffer().get(3 * 8 + 7));
+    }
+
+    @Test
+    public void releasedFrame_cannotBeRead() {
+        RokidCameraLumaFrame frame = new RokidCameraLumaFrame(new RokidCameraBufferPool(1));
+        frame.wrap(plane(16, 8, 16), 16, 1, 0, 0, 16, 8, 0L);
+
+        frame.release();
+
+        assertFalse(frame.isValid());
+        try {
+            frame.getBuffer();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+}
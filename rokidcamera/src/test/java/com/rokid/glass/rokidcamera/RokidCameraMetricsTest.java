@@ -0,0 +1,109 @@
+package com.rokid.glass.rokidcamera;
+
+import com.rokid.glass.rokidcamera.callbacks.RokidCameraFrameConsumer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraMetricsTest {
+
+    private final RokidCameraMetrics mMetrics = new RokidCameraMetrics();
+    private final RokidCameraFrameDispatcher mDispatcher = new RokidCameraFrameDispatcher();
+    private final RokidCameraFrameTracker mTracker = new RokidCameraFrameTracker(4);
+
+    private RokidCameraFrame frame(long timestamp) {
+        return new RokidCameraFrame(null, timestamp, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, mTracker);
+    }
+
+    @After
+    public void tearDown() {
+        mDispatcher.stop();
+    }
+
+    @Test
+    public void stripedCounter_countsEveryConcurrentIncrement() throws InterruptedException {
+        final RokidCameraStripedCounter counter = new RokidCameraStripedCounter();
+        final int threads = 4;
+        final int increments = 10000;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < increments; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        counter.add(5);
+
+        assertEquals(threads * increments + 5, counter.sum());
+    }
+
+    @Test
+    public void snapshot_reportsCountersConsumersAndOutstandingImages() throws InterruptedException {
+        final Semaphore delivered = new Semaphore(0);
+        mDispatcher.addConsumer(new RokidCameraFrameConsumer() {
+            @Override
+            public void onRokidCameraFrameAvailable(RokidCameraFrame frame) {
+                frame.release();
+                delivered.release();
+            }
+        }, new RokidCameraFrameConsumerConfig()
+                .setPolicy(RokidCameraFrameConsumerConfig.POLICY_BOUNDED_FIFO));
+        mDispatcher.start();
+
+        mMetrics.mFramesProduced.add(3);
+        mMetrics.mFramesAcquired.add(2);
+        mMetrics.mFramesDroppedByAcquireLatest.increment();
+        mMetrics.mCaptureFailures.increment();
+        mMetrics.mIOBytesWritten.add(1024);
+        // one at a time, a frame dispatched before the previous one is claimed may be dropped by the policy
+        mDispatcher.dispatch(frame(1));
+        assertTrue(delivered.tryAcquire(5, TimeUnit.SECONDS));
+        mDispatcher.dispatch(frame(2));
+        assertTrue(delivered.tryAcquire(5, TimeUnit.SECONDS));
+        RokidCameraFrame held = frame(3);
+
+        RokidCameraMetricsSnapshot snapshot = mMetrics.snapshot(mDispatcher, mTracker);
+        assertEquals(3, snapshot.getFramesProduced());
+        assertEquals(2, snapshot.getFramesAcquired());
+        assertEquals(1, snapshot.getFramesDroppedByAcquireLatest());
+        assertEquals(0, snapshot.getFramesDroppedNoBuffer());
+        assertEquals(1, snapshot.getConsumerCount());
+        assertEquals(2, snapshot.getConsumerDelivered(0));
+        assertEquals(0, snapshot.getFramesDroppedByPolicy());
+        assertEquals(1, snapshot.getOutstandingImages());
+        assertEquals(4, snapshot.getMaxImages());
+        assertEquals(1, snapshot.getCaptureFailures());
+        assertEquals(1024, snapshot.getIOBytesWritten());
+        held.release();
+    }
+
+    @Test
+    public void fps_isComputedBetweenSnapshots() {
+        RokidCameraMetricsSnapshot previous = new RokidCameraMetricsSnapshot(0, 0, 10, 0, 0, 0,
+                new long[]{5}, new long[]{0}, new int[]{0}, new long[]{0}, new int[]{1}, new long[]{0}, 0, 4, 0, 0);
+        RokidCameraMetricsSnapshot current = new RokidCameraMetricsSnapshot(2000000000L, 0, 70, 0, 0, 0,
+                new long[]{35}, new long[]{0}, new int[]{0}, new long[]{0}, new int[]{1}, new long[]{0}, 0, 4, 0, 0);
+
+        assertEquals(30f, current.getAcquiredFps(previous), 0.001f);
+        assertEquals(15f, current.getConsumerDeliveredFps(previous, 0), 0.001f);
+        assertEquals(0f, current.getAcquiredFps(current), 0f);
+    }
+}
@@ -0,0 +1,124 @@
+package com.rokid.glass.rokidcamera;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraRingBufferTest {
+
+    @Test
+    public void elements_arePolledInOrderUpToCapacity() {
+        RokidCameraRingBuffer<Integer> ring = new RokidCameraRingBuffer<>(3, 1,
+                RokidCameraFrameConsumerConfig.WAIT_STRATEGY_PARK);
+
+        assertTrue(ring.offer(1));
+        assertTrue(ring.offer(2));
+        assertTrue(ring.offer(3));
+        // capacity is not rounded up to the slot count
+        assertFalse(ring.offer(4));
+        assertEquals(3, ring.size());
+
+        assertEquals(1, (int) ring.poll());
+        assertTrue(ring.offer(4));
+        assertEquals(2, (int) ring.poll());
+        assertEquals(3, (int) ring.poll());
+        assertEquals(4, (int) ring.poll());
+        assertNull(ring.poll());
+        assertEquals(4, ring.getProducerSequence());
+        assertEquals(4, ring.getConsumerSequence());
+    }
+
+    @Test
+    public void close_wakesWaitingConsumer() throws InterruptedException {
+        final RokidCameraRingBuffer<Integer> ring = new RokidCameraRingBuffer<>(1, 1,
+                RokidCameraFrameConsumerConfig.WAIT_STRATEGY_PARK);
+        final Integer[] taken = {0};
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                taken[0] = ring.take(0);
+            }
+        });
+        consumer.start();
+        while (ring.getWaitCount() == 0) {
+            Thread.sleep(1);
+        }
+        ring.close();
+        consumer.join(5000);
+
+        assertFalse(consumer.isAlive());
+        assertNull(taken[0]);
+        assertFalse(ring.offer(1));
+    }
+
+    @Test
+    public void park_deliversEveryElementOnce() throws InterruptedException {
+        deliverEveryElementOnce(RokidCameraFrameConsumerConfig.WAIT_STRATEGY_PARK, 8, 3, 20000);
+    }
+
+    @Test
+    public void singleSlot_deliversEveryElementOnce() throws InterruptedException {
+        // a claimed but unread element must not look like a free slot to the producer
+        deliverEveryElementOnce(RokidCameraFrameConsumerConfig.WAIT_STRATEGY_PARK, 1, 3, 100000);
+        deliverEveryElementOnce(RokidCameraFrameConsumerConfig.WAIT_STRATEGY_YIELD, 1, 2, 200000);
+    }
+
+    @Test
+    public void yield_deliversEveryElementOnce() throws InterruptedException {
+        deliverEveryElementOnce(RokidCameraFrameConsumerConfig.WAIT_STRATEGY_YIELD, 8, 3, 20000);
+    }
+
+    @Test
+    public void spin_deliversEveryElementOnce() throws InterruptedException {
+        // spinning consumers starve the producer on few cores, so only one here
+        deliverEveryElementOnce(RokidCameraFrameConsumerConfig.WAIT_STRATEGY_SPIN, 8, 1, 200);
+    }
+
+    private void deliverEveryElementOnce(int waitStrategy, int capacity, int consumers, int count)
+            throws InterruptedException {
+        final RokidCameraRingBuffer<Integer> ring = new RokidCameraRingBuffer<>(capacity, consumers, waitStrategy);
+        final AtomicIntegerArray seen = new AtomicIntegerArray(count);
+        final AtomicLong taken = new AtomicLong();
+        Thread[] threads = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            final int consumerIndex = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Integer element;
+                    while ((element = ring.take(consumerIndex)) != null) {
+                        seen.incrementAndGet(element);
+                        taken.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        for (int i = 0; i < count && System.currentTimeMillis() < deadline; i++) {
+            while (!ring.offer(i) && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+        }
+        while (taken.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        ring.close();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(count, taken.get());
+        for (int i = 0; i < count; i++) {
+            assertEquals(1, seen.get(i));
+        }
+        assertTrue(ring.isEmpty());
+    }
+}
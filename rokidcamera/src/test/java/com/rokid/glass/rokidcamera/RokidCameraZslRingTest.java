@@ -0,0 +1,82 @@
+package com.rokid.glass.rokidcamera;
+
+import android.hardware.camera2.CaptureResult;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RokidCameraZslRingTest {
+
+    private final RokidCameraCaptureMetadataTable mTable = new RokidCameraCaptureMetadataTable(8);
+    private final RokidCameraFrameTracker mTracker = new RokidCameraFrameTracker(8);
+    private final RokidCameraZslRing mRing = new RokidCameraZslRing(3);
+
+    private void put(long timestamp, long exposureNanos, int afState, int aeState) {
+        mTable.put(new RokidCameraCaptureMetadata(timestamp, timestamp, exposureNanos, 33333333L, 100,
+                afState, aeState, 2));
+    }
+
+    private RokidCameraFrame frame(long timestamp) {
+        return new RokidCameraFrame(null, timestamp, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, mTracker, mTable);
+    }
+
+    @Test
+    public void fullRing_releasesOldestFrame() {
+        for (int i = 1; i <= 5; i++) {
+            mRing.add(frame(i));
+        }
+
+        assertEquals(3, mRing.size());
+        assertEquals(3, mTracker.getOutstandingCount());
+        RokidCameraFrame newest = mRing.acquireBest();
+        assertEquals(5, newest.getTimestamp());
+        newest.release();
+    }
+
+    @Test
+    public void best_isConvergedFrameWithShortestExposure() {
+        put(1, 10000000L, CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED, CaptureResult.CONTROL_AE_STATE_CONVERGED);
+        put(2, 5000000L, CaptureResult.CONTROL_AF_STATE_PASSIVE_SCAN, CaptureResult.CONTROL_AE_STATE_CONVERGED);
+        put(3, 8000000L, CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED, CaptureResult.CONTROL_AE_STATE_CONVERGED);
+        for (int i = 1; i <= 3; i++) {
+            mRing.add(frame(i));
+        }
+
+        RokidCameraFrame best = mRing.acquireBest();
+        assertEquals(3, best.getTimestamp());
+        best.release();
+        // the ring still holds the frame
+        assertEquals(3, mTracker.getOutstandingCount());
+    }
+
+    @Test
+    public void withoutConvergedFrame_newestIsTaken() {
+        put(1, 5000000L, CaptureResult.CONTROL_AF_STATE_PASSIVE_SCAN, CaptureResult.CONTROL_AE_STATE_SEARCHING);
+        put(2, 5000000L, CaptureResult.CONTROL_AF_STATE_PASSIVE_SCAN, CaptureResult.CONTROL_AE_STATE_SEARCHING);
+        mRing.add(frame(1));
+        mRing.add(frame(2));
+
+        RokidCameraFrame best = mRing.acquireBest();
+        assertEquals(2, best.getTimestamp());
+        best.release();
+    }
+
+    @Test
+    public void clear_releasesEveryFrame() {
+        assertNull(mRing.acquireBest());
+        mRing.add(frame(1));
+        mRing.add(frame(2));
+
+        mRing.clear();
+
+        assertEquals(0, mRing.size());
+        assertEquals(0, mTracker.getOutstandingCount());
+        assertNull(mRing.acquireBest());
+    }
+}
@@ -0,0 +1,86 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RokidCameraBufferPoolTest {
+
+    @Test
+    public void acquire_reusesReleasedArrayOfSameSize() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(2);
+        byte[] first = pool.acquire(1024);
+        pool.release(first);
+
+        assertSame(first, pool.acquire(1024));
+        assertNotSame(first, pool.acquire(1024));
+    }
+
+    @Test
+    public void acquire_keepsSizesApart() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(2);
+        pool.release(new byte[100]);
+
+        assertEquals(200, pool.acquire(200).length);
+        assertEquals(1, pool.getPooledCount(100));
+    }
+
+    @Test
+    public void release_dropsBuffersBeyondCapacity() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(2);
+        pool.release(new byte[16]);
+        pool.release(new byte[16]);
+        pool.release(new byte[16]);
+
+        assertEquals(2, pool.getPooledCount(16));
+    }
+
+    @Test
+    public void acquireDirect_returnsClearedReusedBuffer() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(1);
+        ByteBuffer buffer = pool.acquireDirect(64);
+        assertTrue(buffer.isDirect());
+        buffer.position(10);
+        pool.release(buffer);
+
+        ByteBuffer again = pool.acquireDirect(64);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(64, again.limit());
+    }
+
+    @Test
+    public void release_rejectsBufferAlreadyPooled() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(4);
+        byte[] buffer = pool.acquire(32);
+        pool.release(buffer);
+        try {
+            pool.release(buffer);
+            fail("double release accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(1, pool.getPooledCount(32));
+        assertSame(buffer, pool.acquire(32));
+        assertNotSame(buffer, pool.acquire(32));
+    }
+
+    @Test
+    public void release_keepsAtMostMaxSizes() {
+        RokidCameraBufferPool pool = new RokidCameraBufferPool(1);
+        for (int size = 1; size <= RokidCameraBufferPool.MAX_SIZES + 1; size++) {
+            pool.release(new byte[size]);
+        }
+
+        // the oldest size made room for the newest
+        assertEquals(0, pool.getPooledCount(1));
+        assertEquals(1, pool.getPooledCount(2));
+        assertEquals(1, pool.getPooledCount(RokidCameraBufferPool.MAX_SIZES + 1));
+    }
+}
@@ -0,0 +1,261 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link RokidCameraFormatConversionUtils} using synthetic planes.
+ */
+public class RokidCameraFormatConversionUtilsTest {
+
+    private static final int[] LAYOUTS = {
+            SyntheticYuvImage.LAYOUT_PLANAR,
+            SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU,
+            SyntheticYuvImage.LAYOUT_SEMI_PLANAR_UV,
+            SyntheticYuvImage.LAYOUT_SEMI_PLANAR_SEPARATE
+    };
+
+    @Test
+    public void nv21_matchesReference_forAllLayouts() {
+        for (int layout : LAYOUTS) {
+            for (int padding : new int[]{0, 32}) {
+                SyntheticYuvImage image = new SyntheticYuvImage(64, 48, layout, padding);
+                byte[] out = new byte[RokidCameraFormatConversionUtils.getNV21Size(64, 48)];
+
+                RokidCameraFormatConversionUtils.YUV_420_888toNV21(image.planes(), out, 0);
+
+                assertArrayEquals("layout " + layout + " padding " + padding,
+                        image.referenceNV21(0, 0, 64, 48), out);
+            }
+        }
+    }
+
+    @Test
+    public void nv21_honoursCropRectangle() {
+        for (int layout : LAYOUTS) {
+            SyntheticYuvImage image = new SyntheticYuvImage(64, 48, layout, 16);
+            RokidCameraYuvPlanes planes = image.planes().setCrop(8, 4, 32, 20);
+            byte[] out = new byte[RokidCameraFormatConversionUtils.getNV21Size(32, 20)];
+
+            RokidCameraFormatConversionUtils.YUV_420_888toNV21(planes, out, 0);
+
+            assertArrayEquals("layout " + layout, image.referenceNV21(8, 4, 32, 20), out);
+        }
+    }
+
+    @Test
+    public void nv21_writesAtOffset() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 0);
+        int size = RokidCameraFormatConversionUtils.getNV21Size(32, 16);
+        byte[] out = new byte[size + 10];
+
+        RokidCameraFormatConversionUtils.YUV_420_888toNV21(image.planes(), out, 10);
+
+        byte[] written = new byte[size];
+        System.arraycopy(out, 10, written, 0, size);
+        assertArrayEquals(image.referenceNV21(0, 0, 32, 16), written);
+    }
+
+    @Test
+    public void nv21_intoHeapAndDirectByteBuffers() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_PLANAR, 8);
+        int size = RokidCameraFormatConversionUtils.getNV21Size(32, 16);
+        byte[] expected = image.referenceNV21(0, 0, 32, 16);
+
+        for (ByteBuffer out : new ByteBuffer[]{ByteBuffer.allocate(size), ByteBuffer.allocateDirect(size)}) {
+            RokidCameraFormatConversionUtils.YUV_420_888toNV21(image.planes(), out);
+
+            assertEquals(size, out.position());
+            byte[] written = new byte[size];
+            out.flip();
+            out.get(written);
+            assertArrayEquals(expected, written);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nv21_rejectsTooSmallOutput() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+        RokidCameraFormatConversionUtils.YUV_420_888toNV21(image.planes(), new byte[100], 0);
+    }
+
+    @Test
+    public void chromaLayout_detectsInterleavedViews() {
+        assertEquals(RokidCameraFormatConversionUtils.CHROMA_LAYOUT_PLANAR,
+                RokidCameraFormatConversionUtils.getChromaLayout(
+                        new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_PLANAR, 0).planes()));
+        assertEquals(RokidCameraFormatConversionUtils.CHROMA_LAYOUT_SEMI_PLANAR_VU,
+                RokidCameraFormatConversionUtils.getChromaLayout(
+                        new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 0).planes()));
+        assertEquals(RokidCameraFormatConversionUtils.CHROMA_LAYOUT_SEMI_PLANAR_UV,
+                RokidCameraFormatConversionUtils.getChromaLayout(
+                        new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_UV, 0).planes()));
+        assertEquals(RokidCameraFormatConversionUtils.CHROMA_LAYOUT_GENERIC,
+                RokidCameraFormatConversionUtils.getChromaLayout(
+                        new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_SEPARATE, 0).planes()));
+    }
+
+    @Test
+    public void chromaLayout_detectsLargeFrames() {
+        int[] expected = {
+                RokidCameraFormatConversionUtils.CHROMA_LAYOUT_PLANAR,
+                RokidCameraFormatConversionUtils.CHROMA_LAYOUT_SEMI_PLANAR_VU,
+                RokidCameraFormatConversionUtils.CHROMA_LAYOUT_SEMI_PLANAR_UV,
+                RokidCameraFormatConversionUtils.CHROMA_LAYOUT_GENERIC
+        };
+        for (int i = 0; i < LAYOUTS.length; i++) {
+            SyntheticYuvImage image = new SyntheticYuvImage(1280, 720, LAYOUTS[i], 64);
+            assertEquals("layout " + LAYOUTS[i], expected[i],
+                    RokidCameraFormatConversionUtils.getChromaLayout(image.planes()));
+        }
+    }
+
+    @Test
+    public void chromaLayout_detectionLeavesDataUntouched() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_UV, 0);
+        RokidCameraYuvPlanes planes = image.planes();
+
+        RokidCameraFormatConversionUtils.getChromaLayout(planes);
+
+        assertEquals((byte) image.u(0, 0), planes.getBuffer(RokidCameraYuvPlanes.PLANE_U).get(0));
+        assertEquals((byte) image.v(0, 0), planes.getBuffer(RokidCameraYuvPlanes.PLANE_U).get(1));
+    }
+
+    @Test
+    public void nv21_readOnlyInterleavedPlanesAreDetectedWithoutWriting() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 8);
+        RokidCameraYuvPlanes planes = image.planes();
+        for (int i = 0; i < 3; i++) {
+            planes.setPlane(i, planes.getBuffer(i).asReadOnlyBuffer(), planes.getRowStride(i), planes.getPixelStride(i));
+        }
+
+        assertEquals(RokidCameraFormatConversionUtils.CHROMA_LAYOUT_SEMI_PLANAR_VU,
+                RokidCameraFormatConversionUtils.getChromaLayout(planes));
+        byte[] out = new byte[RokidCameraFormatConversionUtils.getNV21Size(32, 16)];
+        RokidCameraFormatConversionUtils.YUV_420_888toNV21(planes, out, 0);
+        assertArrayEquals(image.referenceNV21(0, 0, 32, 16), out);
+    }
+
+    @Test
+    public void nv21_threadsSharingPlanesConvertConcurrently() throws Exception {
+        for (int layout : LAYOUTS) {
+            SyntheticYuvImage image = new SyntheticYuvImage(64, 48, layout, 16);
+            final RokidCameraYuvPlanes planes = image.planes();
+            final byte[] expected = image.referenceNV21(0, 0, 64, 48);
+            final AtomicReference<String> failure = new AtomicReference<>();
+            Thread[] threads = new Thread[2];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        byte[] out = new byte[expected.length];
+                        int[] argb = new int[64 * 48];
+                        for (int i = 0; i < 500 && failure.get() == null; i++) {
+                            RokidCameraFormatConversionUtils.YUV_420_888toNV21(planes, out, 0);
+                            RokidCameraFormatConversionUtils.YUV_420_888toARGB(planes, argb, 0);
+                            if (!Arrays.equals(expected, out)) {
+                                failure.set("conversion " + i + " differs");
+                            }
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull("layout " + layout, failure.get());
+        }
+    }
+
+    @Test
+    public void i420AndNv12_matchReference_forAllLayouts() {
+        for (int layout : LAYOUTS) {
+            SyntheticYuvImage image = new SyntheticYuvImage(64, 48, layout, 16);
+            byte[] out = new byte[RokidCameraFormatConversionUtils.getNV21Size(64, 48)];
+
+            RokidCameraFormatConversionUtils.YUV_420_888toI420(image.planes(), out, 0);
+            assertArrayEquals("I420 layout " + layout, image.referenceI420(), out);
+
+            RokidCameraFormatConversionUtils.YUV_420_888toNV12(image.planes(), out, 0);
+            assertArrayEquals("NV12 layout " + layout, image.referenceNV12(), out);
+        }
+    }
+
+    @Test
+    public void y_copiesLumaWithoutPadding() {
+        SyntheticYuvImage image = new SyntheticYuvImage(64, 48, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 32);
+        byte[] out = new byte[64 * 48];
+
+        RokidCameraFormatConversionUtils.YUV_420_888toY(image.planes(), out, 0);
+
+        byte[] expected = new byte[64 * 48];
+        System.arraycopy(image.referenceNV21(0, 0, 64, 48), 0, expected, 0, expected.length);
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    public void argb_matchesFixedPointReference_forAllLayouts() {
+        for (int layout : LAYOUTS) {
+            SyntheticYuvImage image = new SyntheticYuvImage(64, 48, layout, 8);
+            int[] out = new int[64 * 48];
+
+            RokidCameraFormatConversionUtils.YUV_420_888toARGB(image.planes(), out, 0);
+
+            for (int row = 0; row < 48; row++) {
+                for (int col = 0; col < 64; col++) {
+                    int expected = referenceArgb(image.y(col, row), image.u(col / 2, row / 2), image.v(col / 2, row / 2));
+                    assertEquals("layout " + layout + " at " + col + "," + row, expected, out[row * 64 + col]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void argb_convertsBlackAndWhite() {
+        assertEquals(0xFF000000, flatArgb(16, 128, 128));
+        int white = flatArgb(235, 128, 128);
+        assertTrue(((white >> 16) & 0xFF) >= 254 && ((white >> 8) & 0xFF) >= 254 && (white & 0xFF) >= 254);
+    }
+
+    private static int flatArgb(int y, int u, int v) {
+        RokidCameraYuvPlanes planes = new RokidCameraYuvPlanes()
+                .setPlane(RokidCameraYuvPlanes.PLANE_Y, filled(16, y), 4, 1)
+                .setPlane(RokidCameraYuvPlanes.PLANE_U, filled(4, u), 2, 1)
+                .setPlane(RokidCameraYuvPlanes.PLANE_V, filled(4, v), 2, 1)
+                .setCrop(0, 0, 4, 4);
+        int[] out = new int[16];
+        RokidCameraFormatConversionUtils.YUV_420_888toARGB(planes, out, 0);
+        return out[5];
+    }
+
+    private static ByteBuffer filled(int size, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) value);
+        }
+        return buffer;
+    }
+
+    private static int referenceArgb(int y, int u, int v) {
+        y = Math.max(0, y - 16);
+        u -= 128;
+        v -= 128;
+        int r = clamp(1192 * y + 1634 * v);
+        int g = clamp(1192 * y - 833 * v - 400 * u);
+        int b = clamp(1192 * y + 2066 * u);
+        return 0xFF000000 | ((r << 6) & 0xFF0000) | ((g >> 2) & 0xFF00) | ((b >> 10) & 0xFF);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 262143 ? 262143 : value);
+    }
+}
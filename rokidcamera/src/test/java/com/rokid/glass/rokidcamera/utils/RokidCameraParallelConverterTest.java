@@ -0,0 +1,68 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class RokidCameraParallelConverterTest {
+
+    private final RokidCameraParallelConverter mConverter = new RokidCameraParallelConverter(3, 0);
+
+    @After
+    public void tearDown() {
+        mConverter.shutdown();
+    }
+
+    @Test
+    public void nv21_parallelOutputIsIdenticalToSerial() {
+        int[] layouts = {
+                SyntheticYuvImage.LAYOUT_PLANAR,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_UV,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_SEPARATE
+        };
+        for (int layout : layouts) {
+            for (int padding : new int[]{0, 24}) {
+                SyntheticYuvImage image = new SyntheticYuvImage(96, 70, layout, padding);
+                int size = RokidCameraFormatConversionUtils.getNV21Size(96, 70);
+                byte[] serial = new byte[size];
+                byte[] parallel = new byte[size];
+
+                RokidCameraFormatConversionUtils.YUV_420_888toNV21(image.planes(), serial, 0);
+                mConverter.YUV_420_888toNV21(image.planes(), parallel, 0);
+
+                assertArrayEquals("layout " + layout + " padding " + padding, serial, parallel);
+            }
+        }
+    }
+
+    @Test
+    public void nv21_parallelHonoursCropAndOffset() {
+        SyntheticYuvImage image = new SyntheticYuvImage(96, 70, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 8);
+        RokidCameraYuvPlanes planes = image.planes().setCrop(10, 6, 64, 42);
+        int size = RokidCameraFormatConversionUtils.getNV21Size(64, 42);
+        byte[] out = new byte[size + 4];
+
+        mConverter.YUV_420_888toNV21(planes, out, 4);
+
+        byte[] written = new byte[size];
+        System.arraycopy(out, 4, written, 0, size);
+        assertArrayEquals(image.referenceNV21(10, 6, 64, 42), written);
+    }
+
+    @Test
+    public void nv21_belowThresholdStaysSerial() {
+        RokidCameraParallelConverter converter = new RokidCameraParallelConverter(4, Integer.MAX_VALUE);
+        try {
+            SyntheticYuvImage image = new SyntheticYuvImage(32, 16, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+            byte[] out = new byte[RokidCameraFormatConversionUtils.getNV21Size(32, 16)];
+
+            converter.YUV_420_888toNV21(image.planes(), out, 0);
+
+            assertArrayEquals(image.referenceNV21(0, 0, 32, 16), out);
+        } finally {
+            converter.shutdown();
+        }
+    }
+}
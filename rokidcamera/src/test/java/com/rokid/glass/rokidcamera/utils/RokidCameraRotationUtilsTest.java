@@ -0,0 +1,173 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RokidCameraRotationUtilsTest {
+
+    private static final int[] ROTATIONS = {
+            RokidCameraRotationUtils.ROTATION_0,
+            RokidCameraRotationUtils.ROTATION_90,
+            RokidCameraRotationUtils.ROTATION_180,
+            RokidCameraRotationUtils.ROTATION_270
+    };
+
+    /**
+     * Source coordinates {x, y} of the sample that ends up at output (column, row).
+     */
+    private static int[] sourceOf(int column, int row, int width, int height, int rotation, boolean mirror) {
+        int outWidth = RokidCameraRotationUtils.getRotatedWidth(width, height, rotation);
+        if (mirror) {
+            column = outWidth - 1 - column;
+        }
+        switch (rotation) {
+            case RokidCameraRotationUtils.ROTATION_90:
+                return new int[]{row, height - 1 - column};
+            case RokidCameraRotationUtils.ROTATION_180:
+                return new int[]{width - 1 - column, height - 1 - row};
+            case RokidCameraRotationUtils.ROTATION_270:
+                return new int[]{width - 1 - row, column};
+            default:
+                return new int[]{column, row};
+        }
+    }
+
+    /**
+     * Rotated NV21 (or I420) built sample by sample from the synthetic frame.
+     */
+    private static byte[] reference(SyntheticYuvImage image, int rotation, boolean mirror, boolean i420) {
+        int w = image.width;
+        int h = image.height;
+        int outWidth = RokidCameraRotationUtils.getRotatedWidth(w, h, rotation);
+        int outHeight = RokidCameraRotationUtils.getRotatedHeight(w, h, rotation);
+        byte[] out = new byte[w * h * 3 / 2];
+        for (int row = 0; row < outHeight; row++) {
+            for (int column = 0; column < outWidth; column++) {
+                int[] source = sourceOf(column, row, w, h, rotation, mirror);
+                out[row * outWidth + column] = (byte) image.y(source[0], source[1]);
+            }
+        }
+        int chromaWidth = outWidth / 2;
+        int chromaHeight = outHeight / 2;
+        for (int row = 0; row < chromaHeight; row++) {
+            for (int column = 0; column < chromaWidth; column++) {
+                int[] source = sourceOf(column, row, w / 2, h / 2, rotation, mirror);
+                byte u = (byte) image.u(source[0], source[1]);
+                byte v = (byte) image.v(source[0], source[1]);
+                if (i420) {
+                    out[w * h + row * chromaWidth + column] = u;
+                    out[w * h + chromaWidth * chromaHeight + row * chromaWidth + column] = v;
+                } else {
+                    out[w * h + row * outWidth + column * 2] = v;
+                    out[w * h + row * outWidth + column * 2 + 1] = u;
+                }
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void rotateNV21_matchesReference() {
+        // larger than one tile in both directions, with partial edge tiles
+        SyntheticYuvImage image = new SyntheticYuvImage(76, 42, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+        byte[] nv21 = image.referenceNV21(0, 0, 76, 42);
+        for (int rotation : ROTATIONS) {
+            for (boolean mirror : new boolean[]{false, true}) {
+                byte[] out = new byte[nv21.length];
+
+                RokidCameraRotationUtils.rotateNV21(nv21, 76, 42, rotation, mirror, out);
+
+                assertArrayEquals("rotation " + rotation + " mirror " + mirror, reference(image, rotation, mirror, false), out);
+            }
+        }
+    }
+
+    @Test
+    public void rotateI420_matchesReference() {
+        SyntheticYuvImage image = new SyntheticYuvImage(36, 68, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+        byte[] i420 = image.referenceI420();
+        for (int rotation : ROTATIONS) {
+            for (boolean mirror : new boolean[]{false, true}) {
+                byte[] out = new byte[i420.length];
+
+                RokidCameraRotationUtils.rotateI420(i420, 36, 68, rotation, mirror, out);
+
+                assertArrayEquals("rotation " + rotation + " mirror " + mirror, reference(image, rotation, mirror, true), out);
+            }
+        }
+    }
+
+    @Test
+    public void fourQuarterTurns_giveOriginalFrame() {
+        SyntheticYuvImage image = new SyntheticYuvImage(40, 24, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+        byte[] frame = image.referenceNV21(0, 0, 40, 24);
+        byte[] other = new byte[frame.length];
+        int width = 40;
+        int height = 24;
+
+        for (int i = 0; i < 4; i++) {
+            RokidCameraRotationUtils.rotateNV21(frame, width, height, RokidCameraRotationUtils.ROTATION_90, false, other);
+            byte[] swap = frame;
+            frame = other;
+            other = swap;
+            int tmp = width;
+            width = height;
+            height = tmp;
+        }
+
+        assertArrayEquals(image.referenceNV21(0, 0, 40, 24), frame);
+    }
+
+    @Test
+    public void YUV_420_888toNV21_fusesConversionAndRotation() {
+        int[] layouts = {
+                SyntheticYuvImage.LAYOUT_PLANAR,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_SEPARATE
+        };
+        for (int layout : layouts) {
+            SyntheticYuvImage image = new SyntheticYuvImage(64, 36, layout, 16);
+            for (int rotation : ROTATIONS) {
+                byte[] out = new byte[64 * 36 * 3 / 2 + 3];
+
+                RokidCameraRotationUtils.YUV_420_888toNV21(image.planes(), rotation, true, out, 3);
+
+                byte[] expected = reference(image, rotation, true, false);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals("layout " + layout + " rotation " + rotation + " index " + i, expected[i], out[3 + i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void YUV_420_888toI420_fusesConversionAndRotation() {
+        SyntheticYuvImage image = new SyntheticYuvImage(48, 32, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 8);
+        byte[] out = new byte[48 * 32 * 3 / 2];
+
+        RokidCameraRotationUtils.YUV_420_888toI420(image.planes(), RokidCameraRotationUtils.ROTATION_270, false, out, 0);
+
+        assertArrayEquals(reference(image, RokidCameraRotationUtils.ROTATION_270, false, true), out);
+    }
+
+    @Test
+    public void rotatedSize_swapsForQuarterTurns() {
+        assertEquals(480, RokidCameraRotationUtils.getRotatedWidth(640, 480, RokidCameraRotationUtils.ROTATION_90));
+        assertEquals(640, RokidCameraRotationUtils.getRotatedHeight(640, 480, RokidCameraRotationUtils.ROTATION_270));
+        assertEquals(640, RokidCameraRotationUtils.getRotatedWidth(640, 480, RokidCameraRotationUtils.ROTATION_180));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void inPlaceRotation_isRejected() {
+        byte[] frame = new byte[8 * 8 * 3 / 2];
+
+        RokidCameraRotationUtils.rotateNV21(frame, 8, 8, RokidCameraRotationUtils.ROTATION_90, false, frame);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedRotation_isRejected() {
+        RokidCameraRotationUtils.getRotatedWidth(640, 480, 45);
+    }
+}
@@ -0,0 +1,108 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class RokidCameraScaleUtilsTest {
+
+    private interface Sampler {
+        int sample(int x, int y);
+    }
+
+    @Test
+    public void scaled_matchesReference_forModesFormatsAndLayouts() {
+        int[] layouts = {
+                SyntheticYuvImage.LAYOUT_PLANAR,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_SEPARATE
+        };
+        int[] modes = {RokidCameraScaleUtils.SCALE_MODE_NEAREST, RokidCameraScaleUtils.SCALE_MODE_BOX};
+        int[] formats = {RokidCameraScaleUtils.OUTPUT_FORMAT_NV21, RokidCameraScaleUtils.OUTPUT_FORMAT_I420};
+
+        for (int layout : layouts) {
+            SyntheticYuvImage image = new SyntheticYuvImage(128, 96, layout, 16);
+            for (int mode : modes) {
+                for (int format : formats) {
+                    RokidCameraYuvPlanes planes = image.planes().setCrop(8, 6, 96, 72);
+                    byte[] out = new byte[RokidCameraScaleUtils.getOutputSize(40, 30)];
+
+                    RokidCameraScaleUtils.YUV_420_888toScaled(planes, 40, 30, mode, format, out, 0);
+
+                    assertArrayEquals("layout " + layout + " mode " + mode + " format " + format,
+                            reference(image, 8, 6, 96, 72, 40, 30, mode, format), out);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void scaled_sameSizeIsPlainConversion() {
+        SyntheticYuvImage image = new SyntheticYuvImage(64, 48, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 0);
+        byte[] out = new byte[RokidCameraScaleUtils.getOutputSize(64, 48)];
+
+        RokidCameraScaleUtils.YUV_420_888toScaled(image.planes(), 64, 48,
+                RokidCameraScaleUtils.SCALE_MODE_BOX, RokidCameraScaleUtils.OUTPUT_FORMAT_NV21, out, 0);
+
+        assertArrayEquals(image.referenceNV21(0, 0, 64, 48), out);
+    }
+
+    private static byte[] reference(final SyntheticYuvImage image, final int left, final int top, int w, int h,
+                                    int tw, int th, int mode, int format) {
+        byte[] out = new byte[RokidCameraScaleUtils.getOutputSize(tw, th)];
+        Sampler y = new Sampler() {
+            @Override
+            public int sample(int x, int yy) {
+                return image.y(left + x, top + yy);
+            }
+        };
+        Sampler u = new Sampler() {
+            @Override
+            public int sample(int x, int yy) {
+                return image.u(left / 2 + x, top / 2 + yy);
+            }
+        };
+        Sampler v = new Sampler() {
+            @Override
+            public int sample(int x, int yy) {
+                return image.v(left / 2 + x, top / 2 + yy);
+            }
+        };
+        scale(y, w, h, tw, th, mode, out, 0, 1);
+        int chroma = tw * th;
+        if (format == RokidCameraScaleUtils.OUTPUT_FORMAT_NV21) {
+            scale(v, w / 2, h / 2, tw / 2, th / 2, mode, out, chroma, 2);
+            scale(u, w / 2, h / 2, tw / 2, th / 2, mode, out, chroma + 1, 2);
+        } else {
+            scale(u, w / 2, h / 2, tw / 2, th / 2, mode, out, chroma, 1);
+            scale(v, w / 2, h / 2, tw / 2, th / 2, mode, out, chroma + (tw / 2) * (th / 2), 1);
+        }
+        return out;
+    }
+
+    private static void scale(Sampler sampler, int w, int h, int tw, int th, int mode,
+                              byte[] out, int offset, int stride) {
+        for (int oy = 0; oy < th; oy++) {
+            for (int ox = 0; ox < tw; ox++) {
+                int value;
+                if (mode == RokidCameraScaleUtils.SCALE_MODE_NEAREST) {
+                    value = sampler.sample((2 * ox + 1) * w / (2 * tw), (2 * oy + 1) * h / (2 * th));
+                } else {
+                    int x0 = ox * w / tw;
+                    int x1 = Math.max(x0 + 1, (ox + 1) * w / tw);
+                    int y0 = oy * h / th;
+                    int y1 = Math.max(y0 + 1, (oy + 1) * h / th);
+                    int sum = 0;
+                    for (int yy = y0; yy < y1; yy++) {
+                        for (int xx = x0; xx < x1; xx++) {
+                            sum += sampler.sample(xx, yy);
+                        }
+                    }
+                    int area = (x1 - x0) * (y1 - y0);
+                    value = (sum + area / 2) / area;
+                }
+                out[offset + (oy * tw + ox) * stride] = (byte) value;
+            }
+        }
+    }
+}
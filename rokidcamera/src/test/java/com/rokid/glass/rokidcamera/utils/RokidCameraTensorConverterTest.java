@@ -0,0 +1,236 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RokidCameraTensorConverterTest {
+
+    // fixed-point conversion and 8-bit interpolation may be off by a couple of levels
+    private static final float TOLERANCE = 3f / 255f;
+
+    /**
+     * Double precision BT.601 video range conversion of one sample, as {r, g, b} in [0, 1].
+     */
+    private static double[] referenceRgb(double y, double u, double v) {
+        double luma = 1.164 * Math.max(0, y - 16);
+        double r = luma + 1.596 * (v - 128);
+        double g = luma - 0.813 * (v - 128) - 0.391 * (u - 128);
+        double b = luma + 2.018 * (u - 128);
+        return new double[]{clamp(r) / 255.0, clamp(g) / 255.0, clamp(b) / 255.0};
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static double bilinear(SyntheticYuvImage image, int plane, double x, double y, int sourceWidth, int sourceHeight) {
+        x = Math.max(0, x);
+        y = Math.max(0, y);
+        int x0 = Math.min((int) x, sourceWidth - 1);
+        int y0 = Math.min((int) y, sourceHeight - 1);
+        int x1 = Math.min(x0 + 1, sourceWidth - 1);
+        int y1 = Math.min(y0 + 1, sourceHeight - 1);
+        double fx = x - x0;
+        double fy = y - y0;
+        double top = sample(image, plane, x0, y0) * (1 - fx) + sample(image, plane, x1, y0) * fx;
+        double bottom = sample(image, plane, x0, y1) * (1 - fx) + sample(image, plane, x1, y1) * fx;
+        return top * (1 - fy) + bottom * fy;
+    }
+
+    private static int sample(SyntheticYuvImage image, int plane, int x, int y) {
+        if (plane == RokidCameraYuvPlanes.PLANE_Y) {
+            return image.y(x, y);
+        }
+        return plane == RokidCameraYuvPlanes.PLANE_U ? image.u(x, y) : image.v(x, y);
+    }
+
+    /**
+     * Reference CHW RGB tensor in [0, 1], straight from the sample formulas.
+     */
+    private static float[] reference(SyntheticYuvImage image, int targetWidth, int targetHeight, boolean nearest) {
+        int w = image.width;
+        int h = image.height;
+        float[] out = new float[3 * targetWidth * targetHeight];
+        int plane = targetWidth * targetHeight;
+        for (int oy = 0; oy < targetHeight; oy++) {
+            for (int ox = 0; ox < targetWidth; ox++) {
+                double y;
+                double u;
+                double v;
+                if (nearest) {
+                    int sx = (2 * ox + 1) * w / (2 * targetWidth);
+                    int sy = (2 * oy + 1) * h / (2 * targetHeight);
+                    int cx = (2 * ox + 1) * (w / 2) / (2 * targetWidth);
+                    int cy = (2 * oy + 1) * (h / 2) / (2 * targetHeight);
+                    y = image.y(sx, sy);
+                    u = image.u(cx, cy);
+                    v = image.v(cx, cy);
+                } else {
+                    double sx = (ox + 0.5) * w / targetWidth - 0.5;
+                    double sy = (oy + 0.5) * h / targetHeight - 0.5;
+                    double cx = (ox + 0.5) * (w / 2) / targetWidth - 0.5;
+                    double cy = (oy + 0.5) * (h / 2) / targetHeight - 0.5;
+                    y = bilinear(image, RokidCameraYuvPlanes.PLANE_Y, sx, sy, w, h);
+                    u = bilinear(image, RokidCameraYuvPlanes.PLANE_U, cx, cy, w / 2, h / 2);
+                    v = bilinear(image, RokidCameraYuvPlanes.PLANE_V, cx, cy, w / 2, h / 2);
+                }
+                double[] rgb = referenceRgb(y, u, v);
+                int index = oy * targetWidth + ox;
+                out[index] = (float) rgb[0];
+                out[plane + index] = (float) rgb[1];
+                out[2 * plane + index] = (float) rgb[2];
+            }
+        }
+        return out;
+    }
+
+    private static void assertTensor(float[] expected, FloatBuffer actual, float tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("index " + i, expected[i], actual.get(i), tolerance);
+        }
+    }
+
+    @Test
+    public void nearest_matchesReference_forEveryLayout() {
+        int[] layouts = {
+                SyntheticYuvImage.LAYOUT_PLANAR,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_UV,
+                SyntheticYuvImage.LAYOUT_SEMI_PLANAR_SEPARATE
+        };
+        for (int layout : layouts) {
+            SyntheticYuvImage image = new SyntheticYuvImage(64, 48, layout, 8);
+            RokidCameraTensorConverter converter = new RokidCameraTensorConverter(20, 12)
+                    .setResizeMode(RokidCameraTensorConverter.RESIZE_MODE_NEAREST);
+            FloatBuffer out = converter.createOutputBuffer();
+
+            converter.convert(image.planes(), out);
+
+            assertTensor(reference(image, 20, 12, true), out, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void bilinear_matchesReference() {
+        SyntheticYuvImage image = new SyntheticYuvImage(64, 48, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 0);
+        RokidCameraTensorConverter converter = new RokidCameraTensorConverter(24, 16);
+        FloatBuffer out = converter.createOutputBuffer();
+
+        converter.convert(image.planes(), out);
+
+        assertTensor(reference(image, 24, 16, false), out, TOLERANCE);
+    }
+
+    @Test
+    public void upscale_matchesReference() {
+        SyntheticYuvImage image = new SyntheticYuvImage(16, 8, SyntheticYuvImage.LAYOUT_PLANAR, 4);
+        RokidCameraTensorConverter converter = new RokidCameraTensorConverter(40, 20);
+        FloatBuffer out = converter.createOutputBuffer();
+
+        converter.convert(image.planes(), out);
+
+        assertTensor(reference(image, 40, 20, false), out, TOLERANCE);
+    }
+
+    @Test
+    public void hwcBgr_isPermutationOfChwRgb() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 24, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 0);
+        RokidCameraTensorConverter chw = new RokidCameraTensorConverter(10, 6);
+        RokidCameraTensorConverter hwc = new RokidCameraTensorConverter(10, 6)
+                .setLayout(RokidCameraTensorConverter.LAYOUT_HWC)
+                .setChannelOrder(RokidCameraTensorConverter.CHANNEL_ORDER_BGR);
+        FloatBuffer chwOut = chw.createOutputBuffer();
+        FloatBuffer hwcOut = hwc.createOutputBuffer();
+
+        chw.convert(image.planes(), chwOut);
+        hwc.convert(image.planes(), hwcOut);
+
+        int plane = 10 * 6;
+        for (int pixel = 0; pixel < plane; pixel++) {
+            assertEquals(chwOut.get(2 * plane + pixel), hwcOut.get(pixel * 3), 0f);
+            assertEquals(chwOut.get(plane + pixel), hwcOut.get(pixel * 3 + 1), 0f);
+            assertEquals(chwOut.get(pixel), hwcOut.get(pixel * 3 + 2), 0f);
+        }
+    }
+
+    @Test
+    public void normalization_appliesMeanAndStd() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 24, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+        float[] mean = {0.485f, 0.456f, 0.406f};
+        float[] std = {0.229f, 0.224f, 0.225f};
+        RokidCameraTensorConverter plain = new RokidCameraTensorConverter(8, 8);
+        RokidCameraTensorConverter normalized = new RokidCameraTensorConverter(8, 8).setNormalization(mean, std);
+        FloatBuffer plainOut = plain.createOutputBuffer();
+        FloatBuffer normalizedOut = normalized.createOutputBuffer();
+
+        plain.convert(image.planes(), plainOut);
+        normalized.convert(image.planes(), normalizedOut);
+
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < 64; i++) {
+                float expected = (plainOut.get(c * 64 + i) - mean[c]) / std[c];
+                assertEquals(expected, normalizedOut.get(c * 64 + i), 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void crop_usesOnlyCropRectangle() {
+        SyntheticYuvImage image = new SyntheticYuvImage(64, 48, SyntheticYuvImage.LAYOUT_SEMI_PLANAR_VU, 0);
+        RokidCameraTensorConverter converter = new RokidCameraTensorConverter(16, 16)
+                .setResizeMode(RokidCameraTensorConverter.RESIZE_MODE_NEAREST);
+        FloatBuffer out = converter.createOutputBuffer();
+
+        converter.convert(image.planes().setCrop(16, 8, 32, 32), out);
+
+        for (int oy = 0; oy < 16; oy++) {
+            for (int ox = 0; ox < 16; ox++) {
+                int sx = 16 + (2 * ox + 1) * 32 / 32;
+                int sy = 8 + (2 * oy + 1) * 32 / 32;
+                int cx = 8 + (2 * ox + 1) * 16 / 32;
+                int cy = 4 + (2 * oy + 1) * 16 / 32;
+                double[] rgb = referenceRgb(image.y(sx, sy), image.u(cx, cy), image.v(cx, cy));
+                assertEquals(rgb[0], out.get(oy * 16 + ox), TOLERANCE);
+                assertEquals(rgb[2], out.get(2 * 256 + oy * 16 + ox), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void output_startsAtPositionAndKeepsIt() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 24, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+        RokidCameraTensorConverter converter = new RokidCameraTensorConverter(8, 8);
+        FloatBuffer expected = converter.createOutputBuffer();
+        converter.convert(image.planes(), expected);
+
+        FloatBuffer batch = FloatBuffer.allocate(converter.getTensorSize() + 5);
+        batch.position(5);
+        converter.convert(image.planes(), batch);
+
+        assertEquals(5, batch.position());
+        assertEquals(0f, batch.get(4), 0f);
+        for (int i = 0; i < converter.getTensorSize(); i++) {
+            assertEquals(expected.get(i), batch.get(5 + i), 0f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallOutput_isRejected() {
+        SyntheticYuvImage image = new SyntheticYuvImage(32, 24, SyntheticYuvImage.LAYOUT_PLANAR, 0);
+        RokidCameraTensorConverter converter = new RokidCameraTensorConverter(8, 8);
+
+        converter.convert(image.planes(), FloatBuffer.allocate(converter.getTensorSize() - 1));
+    }
+
+    @Test
+    public void outputBuffer_isDirect() {
+        FloatBuffer out = new RokidCameraTensorConverter(4, 4).createOutputBuffer();
+
+        assertTrue(out.isDirect());
+        assertEquals(48, out.capacity());
+    }
+}
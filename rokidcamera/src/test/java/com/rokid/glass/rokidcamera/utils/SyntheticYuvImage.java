@@ -0,0 +1,169 @@
+package com.rokid.glass.rokidcamera.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Synthetic YUV_420_888 frame used in place of {@link android.media.Image} in JVM tests.
+ * <p>
+ * Every sample has a deterministic value derived from its coordinates, so expected output can be
+ * computed directly from {@link #y(int, int)}, {@link #u(int, int)} and {@link #v(int, int)}.
+ */
+class SyntheticYuvImage {
+
+    /** Separate U and V planes with pixelStride 1 (I420-like). */
+    static final int LAYOUT_PLANAR = 0;
+    /** pixelStride 2, V and U views of the same VUVU... memory, like most HALs return. */
+    static final int LAYOUT_SEMI_PLANAR_VU = 1;
+    /** pixelStride 2, U and V views of the same UVUV... memory. */
+    static final int LAYOUT_SEMI_PLANAR_UV = 2;
+    /** pixelStride 2, U and V in unrelated buffers. */
+    static final int LAYOUT_SEMI_PLANAR_SEPARATE = 3;
+
+    final int width;
+    final int height;
+    final int layout;
+    final int rowPadding;
+
+    SyntheticYuvImage(int width, int height, int layout, int rowPadding) {
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        this.rowPadding = rowPadding;
+    }
+
+    int y(int x, int y) {
+        return (x * 7 + y * 13) & 0xFF;
+    }
+
+    int u(int x, int y) {
+        return (x * 5 + y * 3 + 64) & 0xFF;
+    }
+
+    int v(int x, int y) {
+        return (x * 11 + y * 17 + 128) & 0xFF;
+    }
+
+    /**
+     * Build the planes for the whole frame, with the crop rectangle covering the full frame.
+     */
+    RokidCameraYuvPlanes planes() {
+        RokidCameraYuvPlanes planes = new RokidCameraYuvPlanes();
+        int cw = width / 2;
+        int ch = height / 2;
+
+        int yRowStride = width + rowPadding;
+        ByteBuffer yBuffer = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                yBuffer.put(row * yRowStride + col, (byte) y(col, row));
+            }
+        }
+        planes.setPlane(RokidCameraYuvPlanes.PLANE_Y, yBuffer, yRowStride, 1);
+
+        if (layout == LAYOUT_PLANAR) {
+            int rowStride = cw + rowPadding;
+            ByteBuffer uBuffer = ByteBuffer.allocateDirect(rowStride * (ch - 1) + cw);
+            ByteBuffer vBuffer = ByteBuffer.allocateDirect(rowStride * (ch - 1) + cw);
+            for (int row = 0; row < ch; row++) {
+                for (int col = 0; col < cw; col++) {
+                    uBuffer.put(row * rowStride + col, (byte) u(col, row));
+                    vBuffer.put(row * rowStride + col, (byte) v(col, row));
+                }
+            }
+            planes.setPlane(RokidCameraYuvPlanes.PLANE_U, uBuffer, rowStride, 1);
+            planes.setPlane(RokidCameraYuvPlanes.PLANE_V, vBuffer, rowStride, 1);
+        } else {
+            int rowStride = cw * 2 + rowPadding;
+            int length = rowStride * (ch - 1) + cw * 2 - 1;
+            ByteBuffer uBuffer;
+            ByteBuffer vBuffer;
+            if (layout == LAYOUT_SEMI_PLANAR_SEPARATE) {
+                uBuffer = ByteBuffer.allocateDirect(length);
+                vBuffer = ByteBuffer.allocateDirect(length);
+                for (int row = 0; row < ch; row++) {
+                    for (int col = 0; col < cw; col++) {
+                        uBuffer.put(row * rowStride + col * 2, (byte) u(col, row));
+                        vBuffer.put(row * rowStride + col * 2, (byte) v(col, row));
+                    }
+                }
+            } else {
+                boolean vFirst = layout == LAYOUT_SEMI_PLANAR_VU;
+                ByteBuffer shared = ByteBuffer.allocateDirect(length + 1);
+                for (int row = 0; row < ch; row++) {
+                    for (int col = 0; col < cw; col++) {
+                        int index = row * rowStride + col * 2;
+                        shared.put(index, (byte) (vFirst ? v(col, row) : u(col, row)));
+                        shared.put(index + 1, (byte) (vFirst ? u(col, row) : v(col, row)));
+                    }
+                }
+                ByteBuffer first = shared.duplicate();
+                first.limit(length);
+                ByteBuffer second = shared.duplicate();
+                second.position(1);
+                vBuffer = vFirst ? first.slice() : second.slice();
+                uBuffer = vFirst ? second.slice() : first.slice();
+            }
+            planes.setPlane(RokidCameraYuvPlanes.PLANE_U, uBuffer, rowStride, 2);
+            planes.setPlane(RokidCameraYuvPlanes.PLANE_V, vBuffer, rowStride, 2);
+        }
+
+        return planes.setCrop(0, 0, width, height);
+    }
+
+    /**
+     * Straightforward NV21 of the given crop rectangle.
+     */
+    byte[] referenceNV21(int left, int top, int w, int h) {
+        byte[] out = new byte[w * h * 3 / 2];
+        int index = 0;
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                out[index++] = (byte) y(left + col, top + row);
+            }
+        }
+        for (int row = 0; row < h / 2; row++) {
+            for (int col = 0; col < w / 2; col++) {
+                out[index++] = (byte) v(left / 2 + col, top / 2 + row);
+                out[index++] = (byte) u(left / 2 + col, top / 2 + row);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Straightforward I420 of the whole frame.
+     */
+    byte[] referenceI420() {
+        byte[] out = new byte[width * height * 3 / 2];
+        int index = 0;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                out[index++] = (byte) y(col, row);
+            }
+        }
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                out[index++] = (byte) u(col, row);
+            }
+        }
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                out[index++] = (byte) v(col, row);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Straightforward NV12 of the whole frame.
+     */
+    byte[] referenceNV12() {
+        byte[] out = referenceNV21(0, 0, width, height);
+        for (int i = width * height; i < out.length; i += 2) {
+            byte v = out[i];
+            out[i] = out[i + 1];
+            out[i + 1] = v;
+        }
+        return out;
+    }
+}